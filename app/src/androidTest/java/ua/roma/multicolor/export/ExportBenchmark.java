@@ -0,0 +1,72 @@
+package ua.roma.multicolor.export;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares file size and time of PNG and SVG exports of a large drawing.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExportBenchmark {
+
+    private static final String TAG = ExportBenchmark.class.getSimpleName();
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    @Test
+    public void svgAgainstPng() throws InterruptedException {
+        StrokeStore strokes = new StrokeStore();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            strokes.beginStroke(0xFF000000 | random.nextInt(0xFFFFFF), 2 + random.nextInt(20));
+            float x = random.nextFloat() * WIDTH;
+            float y = random.nextFloat() * HEIGHT;
+            for (int j = 0; j < 60; j++) {
+                x += random.nextFloat() * 10 - 5;
+                y += random.nextFloat() * 10 - 5;
+                strokes.addPoint(x, y);
+            }
+        }
+        File dir = InstrumentationRegistry.getTargetContext().getCacheDir();
+        ImageExporter exporter = new ImageExporter();
+        for (ImageExporter.Format format : new ImageExporter.Format[]{
+                ImageExporter.Format.PNG, ImageExporter.Format.SVG}) {
+            File file = new File(dir, "benchmark." + format.extension);
+            final CountDownLatch done = new CountDownLatch(1);
+            final Exception[] failure = new Exception[1];
+            long start = SystemClock.elapsedRealtime();
+            assertTrue(exporter.export(strokes, null, null, WIDTH, HEIGHT, file, format, 100,
+                    new ImageExporter.Callback() {
+                        @Override
+                        public void onExported(File file) {
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onExportFailed(Exception e) {
+                            failure[0] = e;
+                            done.countDown();
+                        }
+                    }));
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+            assertNull(failure[0]);
+            Log.i(TAG, format + ": " + file.length() + " bytes in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+            file.delete();
+        }
+    }
+}
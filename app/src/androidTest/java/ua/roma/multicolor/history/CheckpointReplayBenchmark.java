@@ -0,0 +1,98 @@
+package ua.roma.multicolor.history;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the cost of rebuilding the canvas after an undo by replaying the whole
+ * history against restoring the nearest checkpoint and replaying the remainder.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CheckpointReplayBenchmark {
+
+    private static final String TAG = CheckpointReplayBenchmark.class.getSimpleName();
+    private static final int SIZE = 1024;
+    private static final int INTERVAL = 25;
+
+    @Test
+    public void replayCostAgainstHistoryLength() {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(10);
+        Random random = new Random(42);
+        Bitmap target = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+
+        for (int length : new int[]{100, 500, 1000, 2000}) {
+            List<Path> paths = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                paths.add(randomPath(random));
+            }
+            Checkpoints<Bitmap> checkpoints = new Checkpoints<>(INTERVAL, Long.MAX_VALUE,
+                    new Checkpoints.Snapshots<Bitmap>() {
+                        @Override
+                        public long sizeOf(Bitmap snapshot) {
+                            return snapshot.getByteCount();
+                        }
+
+                        @Override
+                        public void release(Bitmap snapshot) {
+                            snapshot.recycle();
+                        }
+                    });
+            canvas.drawColor(Color.WHITE);
+            for (int i = 0; i < length; i++) {
+                canvas.drawPath(paths.get(i), paint);
+                if (checkpoints.wants(i + 1)) {
+                    checkpoints.put(i + 1, target.copy(Bitmap.Config.ARGB_8888, false));
+                }
+            }
+
+            int undoTo = length - 7;
+            long start = SystemClock.elapsedRealtimeNanos();
+            canvas.drawColor(Color.WHITE);
+            for (int i = 0; i < undoTo; i++) {
+                canvas.drawPath(paths.get(i), paint);
+            }
+            long full = SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            int from = checkpoints.floor(undoTo);
+            canvas.drawBitmap(checkpoints.get(from), 0, 0, null);
+            for (int i = from; i < undoTo; i++) {
+                canvas.drawPath(paths.get(i), paint);
+            }
+            long restored = SystemClock.elapsedRealtimeNanos() - start;
+
+            Log.i(TAG, "strokes=" + length + " fullReplayUs=" + full / 1000
+                    + " checkpointUs=" + restored / 1000 + " replayed=" + (undoTo - from));
+            assertTrue(undoTo - from < INTERVAL);
+            checkpoints.clear();
+        }
+        target.recycle();
+    }
+
+    private Path randomPath(Random random) {
+        Path path = new Path();
+        path.moveTo(random.nextInt(SIZE), random.nextInt(SIZE));
+        for (int i = 0; i < 30; i++) {
+            path.lineTo(random.nextInt(SIZE), random.nextInt(SIZE));
+        }
+        return path;
+    }
+}
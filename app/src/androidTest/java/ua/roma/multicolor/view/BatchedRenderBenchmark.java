@@ -0,0 +1,107 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frame time of redrawing a 5000 stroke drawing with one draw call per stroke against
+ * batched runs of strokes sharing color and width, as users tend to draw many strokes
+ * before switching the brush.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchedRenderBenchmark {
+
+    private static final String TAG = BatchedRenderBenchmark.class.getSimpleName();
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int STROKES = 5000;
+    private static final int FRAMES = 10;
+
+    @Test
+    public void perStrokeAgainstBatched() {
+        StrokeStore strokes = drawing(new Random(11));
+        StrokeRenderer renderer = new StrokeRenderer();
+        Bitmap single = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Bitmap batched = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas singleCanvas = new Canvas(single);
+        Canvas batchedCanvas = new Canvas(batched);
+
+        long perStroke = Long.MAX_VALUE;
+        long runs = Long.MAX_VALUE;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            singleCanvas.drawColor(Color.WHITE);
+            for (int i = 0; i < strokes.size(); i++) {
+                renderer.drawStroke(singleCanvas, strokes, i);
+            }
+            perStroke = Math.min(perStroke, SystemClock.elapsedRealtimeNanos() - start);
+
+            start = SystemClock.elapsedRealtimeNanos();
+            batchedCanvas.drawColor(Color.WHITE);
+            renderer.draw(batchedCanvas, strokes, 0, strokes.size());
+            runs = Math.min(runs, SystemClock.elapsedRealtimeNanos() - start);
+        }
+        Log.i(TAG, STROKES + " strokes: perStrokeMs=" + perStroke / 1000000.0
+                + " batchedMs=" + runs / 1000000.0);
+
+        // merged strokes only differ where their antialiased edges overlap
+        int[] a = new int[WIDTH];
+        int[] b = new int[WIDTH];
+        int differing = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            single.getPixels(a, 0, WIDTH, 0, y, WIDTH, 1);
+            batched.getPixels(b, 0, WIDTH, 0, y, WIDTH, 1);
+            for (int x = 0; x < WIDTH; x++) {
+                if (distance(a[x], b[x]) > 48) {
+                    differing++;
+                }
+            }
+        }
+        assertTrue(differing + " pixels differ", differing < WIDTH * HEIGHT / 100);
+        single.recycle();
+        batched.recycle();
+    }
+
+    /**
+     * Runs of 1 to 200 strokes with the same brush from a small palette, some of them
+     * translucent.
+     */
+    private static StrokeStore drawing(Random random) {
+        int[] palette = {0xFF000000, 0xFFE53935, 0xFF1E88E5, 0xFF43A047, 0x80FDD835};
+        StrokeStore strokes = new StrokeStore(STROKES, STROKES * 30);
+        while (strokes.size() < STROKES) {
+            int color = palette[random.nextInt(palette.length)];
+            int width = 4 + 4 * random.nextInt(4);
+            int run = Math.min(STROKES - strokes.size(), 1 + random.nextInt(200));
+            for (int i = 0; i < run; i++) {
+                strokes.beginStroke(color, width);
+                float x = random.nextFloat() * WIDTH;
+                float y = random.nextFloat() * HEIGHT;
+                for (int j = 0; j < 30; j++) {
+                    x += random.nextFloat() * 16 - 8;
+                    y += random.nextFloat() * 16 - 8;
+                    strokes.addPoint(x, y);
+                }
+            }
+        }
+        return strokes;
+    }
+
+    private static int distance(int a, int b) {
+        return Math.max(Math.abs(Color.red(a) - Color.red(b)), Math.max(
+                Math.abs(Color.green(a) - Color.green(b)), Math.abs(Color.blue(a) - Color.blue(b))));
+    }
+}
@@ -0,0 +1,98 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frame time of drawing and undoing on the top layer of a drawing whose two lower layers
+ * hold 4000 strokes. Only the top layer should replay anything; the others are one blit
+ * each.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LayerCompositeBenchmark {
+
+    private static final String TAG = LayerCompositeBenchmark.class.getSimpleName();
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int LOWER_STROKES = 4000;
+    private static final int TOP_STROKES = 100;
+
+    @Test
+    public void drawAndUndoOnTopLayer() {
+        Random random = new Random(21);
+        StrokeStore strokes = new StrokeStore();
+        for (int i = 0; i < LOWER_STROKES; i++) {
+            addStroke(strokes, random, i % 2);
+        }
+        for (int i = 0; i < TOP_STROKES; i++) {
+            addStroke(strokes, random, 2);
+        }
+        StrokeGrid index = new StrokeGrid();
+        index.addAll(strokes);
+        LayerSurface[] surfaces = new LayerSurface[3];
+        for (int layer = 0; layer < surfaces.length; layer++) {
+            surfaces[layer] = new LayerSurface(layer, strokes, index, null, 25, 8 * 1024 * 1024);
+            surfaces[layer].create(WIDTH, HEIGHT, WIDTH, HEIGHT, 0);
+        }
+        Bitmap screen = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(screen);
+        composite(canvas, surfaces, LOWER_STROKES);
+
+        long drawNanos = 0;
+        for (int committed = LOWER_STROKES + 1; committed <= strokes.size(); committed++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            assertEquals(1, composite(canvas, surfaces, committed));
+            drawNanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        long undoNanos = 0;
+        for (int committed = strokes.size() - 1; committed >= LOWER_STROKES; committed--) {
+            surfaces[2].rollback(committed);
+            long start = SystemClock.elapsedRealtimeNanos();
+            int replayed = composite(canvas, surfaces, committed);
+            undoNanos += SystemClock.elapsedRealtimeNanos() - start;
+            assertTrue(replayed + " strokes replayed", replayed < TOP_STROKES);
+        }
+        Log.i(TAG, LOWER_STROKES + " strokes below: drawFrameMs="
+                + drawNanos / TOP_STROKES / 1000000.0 + " undoFrameMs="
+                + undoNanos / TOP_STROKES / 1000000.0);
+        for (LayerSurface surface : surfaces) {
+            surface.release();
+        }
+        screen.recycle();
+    }
+
+    private static int composite(Canvas canvas, LayerSurface[] surfaces, int committed) {
+        canvas.drawColor(Color.WHITE);
+        int replayed = 0;
+        for (LayerSurface surface : surfaces) {
+            replayed += surface.draw(canvas, committed, 0, 0, WIDTH, HEIGHT, 1);
+        }
+        return replayed;
+    }
+
+    private static void addStroke(StrokeStore strokes, Random random, int layer) {
+        strokes.beginStroke(0xFF000000 | random.nextInt(0xFFFFFF), 4 + random.nextInt(12));
+        strokes.setLayer(layer);
+        float x = random.nextFloat() * WIDTH;
+        float y = random.nextFloat() * HEIGHT;
+        for (int j = 0; j < 30; j++) {
+            x += random.nextFloat() * 16 - 8;
+            y += random.nextFloat() * 16 - 8;
+            strokes.addPoint(x, y);
+        }
+    }
+}
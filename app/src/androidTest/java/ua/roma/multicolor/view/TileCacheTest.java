@@ -0,0 +1,56 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class TileCacheTest {
+
+    private static final int SIZE = 512;
+
+    @Test
+    public void clear_hidesTheBaseOfATileThatHeldOnlyDroppedStrokes() {
+        StrokeStore strokes = new StrokeStore();
+        strokes.beginStroke(Color.RED, 20);
+        strokes.addPoint(20, 100);
+        strokes.addPoint(200, 100);
+        StrokeGrid index = new StrokeGrid();
+        index.addAll(strokes);
+        BaseLayer base = new BaseLayer();
+        TileCache tiles = new TileCache(SIZE, SIZE, 16 * 1024 * 1024, index, base, 0, 0, null);
+        Bitmap screen = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(screen);
+
+        tiles.draw(canvas, strokes, 1, 0, 0, SIZE, SIZE);
+        assertEquals(Color.RED, screen.getPixel(100, 100));
+
+        // the stroke falls behind the history horizon, as PaintView.compactHistory does it
+        base.flatten(strokes, 1, 0);
+        strokes.dropFirst(1);
+        index.clear();
+        index.addAll(strokes);
+        tiles.dropFirst(1);
+        screen.eraseColor(Color.TRANSPARENT);
+        tiles.draw(canvas, strokes, 0, 0, 0, SIZE, SIZE);
+        assertEquals(Color.RED, screen.getPixel(100, 100));
+
+        strokes.beginClear();
+        index.addAll(strokes);
+        screen.eraseColor(Color.TRANSPARENT);
+        tiles.draw(canvas, strokes, 1, 0, 0, SIZE, SIZE);
+        assertEquals(Color.TRANSPARENT, screen.getPixel(100, 100));
+
+        tiles.release();
+        screen.recycle();
+    }
+}
@@ -0,0 +1,107 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeLod;
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frame times of panning across a dense 8192 x 8192 drawing at 1/8 zoom, from tiles of the
+ * matching level rendered with and without the simplified stroke levels.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ZoomedPanBenchmark {
+
+    private static final String TAG = ZoomedPanBenchmark.class.getSimpleName();
+    private static final int CANVAS = 8192;
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+    private static final float ZOOM = 1 / 8f;
+    private static final int STROKES = 20000;
+    private static final int FRAMES = 120;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void panZoomedOut() {
+        StrokeStore strokes = drawing(new Random(31));
+        StrokeGrid index = new StrokeGrid();
+        index.addAll(strokes);
+        StrokeLod lod = new StrokeLod(strokes, DIRECT, DIRECT);
+        for (int i = 0; i < strokes.size(); i++) {
+            lod.submit(i);
+        }
+        Bitmap screen = Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(screen);
+
+        double full = pan(canvas, strokes, index, null);
+        double simplified = pan(canvas, strokes, index, lod);
+        Log.i(TAG, STROKES + " strokes at 1/8: fullGeometryFrameMs=" + full
+                + " lodFrameMs=" + simplified);
+        assertTrue(simplified <= full * 1.1);
+        screen.recycle();
+    }
+
+    /**
+     * Pans diagonally across the canvas and returns the mean frame time in milliseconds.
+     */
+    private static double pan(Canvas canvas, StrokeStore strokes, StrokeGrid index,
+                              StrokeLod lod) {
+        TileCache tiles = new TileCache(CANVAS, CANVAS, 32 * 1024 * 1024, index,
+                new BaseLayer(), 0, StrokeLod.levelFor(ZOOM), lod);
+        int width = (int) (VIEW_WIDTH / ZOOM);
+        int height = (int) (VIEW_HEIGHT / ZOOM);
+        long total = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            int left = Math.min(frame * 48, CANVAS - width);
+            int top = Math.min(frame * 48, CANVAS - height);
+            long start = SystemClock.elapsedRealtimeNanos();
+            canvas.save();
+            canvas.drawColor(Color.WHITE);
+            canvas.scale(ZOOM, ZOOM);
+            canvas.translate(-left, -top);
+            tiles.draw(canvas, strokes, strokes.size(), left, top, left + width, top + height);
+            canvas.restore();
+            total += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        tiles.release();
+        return total / (double) FRAMES / 1000000.0;
+    }
+
+    /**
+     * Handwriting-like strokes of 40 to 200 points, a tenth of them tiny dots.
+     */
+    private static StrokeStore drawing(Random random) {
+        StrokeStore strokes = new StrokeStore(STROKES, STROKES * 120);
+        for (int i = 0; i < STROKES; i++) {
+            strokes.beginStroke(0xFF000000 | random.nextInt(0xFFFFFF), 2 + random.nextInt(10));
+            float x = random.nextFloat() * CANVAS;
+            float y = random.nextFloat() * CANVAS;
+            int points = random.nextInt(10) == 0 ? 3 : 40 + random.nextInt(160);
+            for (int j = 0; j < points; j++) {
+                x += random.nextFloat() * 8 - 4;
+                y += random.nextFloat() * 8 - 4;
+                strokes.addPoint(x, y);
+            }
+        }
+        return strokes;
+    }
+}
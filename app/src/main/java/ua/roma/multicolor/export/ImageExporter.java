@@ -0,0 +1,244 @@
+package ua.roma.multicolor.export;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Base64;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ua.roma.multicolor.io.SvgWriter;
+import ua.roma.multicolor.model.Layers;
+import ua.roma.multicolor.model.StrokeStore;
+import ua.roma.multicolor.view.DrawingSnapshot;
+import ua.roma.multicolor.view.StrokeRenderer;
+
+/**
+ * Renders a snapshot of the stroke model into its own bitmap and compresses it to a file,
+ * or streams it as SVG, on a single background thread. Only one export runs at a time; requests made while one
+ * is running are dropped, so repeated save taps produce a single file. A
+ * {@link DrawingSnapshot} is copied on that thread too, so saving costs the UI thread
+ * nothing however large the drawing is.
+ */
+public class ImageExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "image-export");
+        }
+    });
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean busy = new AtomicBoolean();
+
+    public ImageExporter() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts exporting {@code strokes}, which must not be modified afterwards, into
+     * {@code file}, composited as {@code layers} say. Each layer goes over its entry of
+     * {@code backgrounds}; the array and its entries may be null and are recycled once the
+     * export is done. Null layers export every stroke as one visible layer. Returns false
+     * when an export is already running. The callback is invoked on the main thread.
+     */
+    public boolean export(final StrokeStore strokes, final Layers layers,
+                          final Bitmap[] backgrounds, final int width, final int height,
+                          final File file, final Format format, final int quality,
+                          final Callback callback) {
+        if (!busy.compareAndSet(false, true)) {
+            recycle(backgrounds);
+            return false;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Exception failure = null;
+                try {
+                    write(strokes, layers, backgrounds, width, height, file, format, quality);
+                } catch (Exception e) {
+                    failure = e;
+                } finally {
+                    recycle(backgrounds);
+                }
+                finish(file, failure, callback);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Starts exporting the drawing of {@code snapshot} into {@code file}. The strokes and
+     * the backgrounds are copied on the export thread and the snapshot is released on the
+     * main thread as soon as they are, before the image is rendered; it is released right
+     * away when an export is already running, and false returned.
+     */
+    public boolean export(final DrawingSnapshot snapshot, final File file, final Format format,
+                          final int quality, final Callback callback) {
+        if (!busy.compareAndSet(false, true)) {
+            snapshot.release();
+            return false;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Exception failure = null;
+                Bitmap[] backgrounds = null;
+                try {
+                    StrokeStore strokes;
+                    try {
+                        strokes = snapshot.copyStrokes();
+                        backgrounds = snapshot.copyBackgrounds();
+                    } finally {
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                snapshot.release();
+                            }
+                        });
+                    }
+                    write(strokes, snapshot.getLayers(), backgrounds, snapshot.getCanvasWidth(),
+                            snapshot.getCanvasHeight(), file, format, quality);
+                } catch (Exception e) {
+                    failure = e;
+                } finally {
+                    recycle(backgrounds);
+                }
+                finish(file, failure, callback);
+            }
+        });
+        return true;
+    }
+
+    public boolean isBusy() {
+        return busy.get();
+    }
+
+    private void finish(final File file, final Exception failure, final Callback callback) {
+        busy.set(false);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (failure == null) {
+                    callback.onExported(file);
+                } else {
+                    callback.onExportFailed(failure);
+                }
+            }
+        });
+    }
+
+    private static void recycle(Bitmap[] backgrounds) {
+        if (backgrounds == null) {
+            return;
+        }
+        for (Bitmap background : backgrounds) {
+            if (background != null) {
+                background.recycle();
+            }
+        }
+    }
+
+    private void write(StrokeStore strokes, Layers layers, Bitmap[] backgrounds, int width,
+                       int height, File file, Format format, int quality) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        if (format == Format.SVG) {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                    "UTF-8"), BUFFER_SIZE)) {
+                SvgWriter writer = new SvgWriter(out);
+                writer.setLayers(layers);
+                for (int layer = 0; backgrounds != null && layer < backgrounds.length; layer++) {
+                    if (backgrounds[layer] == null) {
+                        continue;
+                    }
+                    ByteArrayOutputStream png = new ByteArrayOutputStream();
+                    backgrounds[layer].compress(Bitmap.CompressFormat.PNG, 100, png);
+                    writer.setBackground(layer, "data:image/png;base64,"
+                            + Base64.encodeToString(png.toByteArray(), Base64.NO_WRAP));
+                }
+                writer.write(strokes, 0, strokes.size(), width, height);
+            }
+            return;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(bitmap);
+            canvas.drawColor(Color.WHITE);
+            StrokeRenderer renderer = new StrokeRenderer();
+            int count = layers != null ? layers.size() : 1;
+            for (int layer = 0; layer < count; layer++) {
+                if (layers != null && !layers.isVisible(layer)) {
+                    continue;
+                }
+                int opacity = layers != null ? layers.getOpacity(layer) : 0xFF;
+                int saved = opacity < 0xFF
+                        ? canvas.saveLayerAlpha(0, 0, width, height, opacity)
+                        : -1;
+                if (backgrounds != null && layer < backgrounds.length
+                        && backgrounds[layer] != null) {
+                    canvas.drawBitmap(backgrounds[layer], 0, 0, null);
+                }
+                renderer.draw(canvas, strokes, 0, strokes.size(), layers != null ? layer : -1);
+                if (saved >= 0) {
+                    canvas.restoreToCount(saved);
+                }
+            }
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)) {
+                if (!bitmap.compress(format.compressFormat, quality, out)) {
+                    throw new IOException("can't encode " + format);
+                }
+            }
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    public enum Format {
+        PNG(Bitmap.CompressFormat.PNG, "png"),
+        WEBP(Bitmap.CompressFormat.WEBP, "webp"),
+        JPEG(Bitmap.CompressFormat.JPEG, "jpg"),
+        SVG(null, "svg");
+
+        final Bitmap.CompressFormat compressFormat;
+        public final String extension;
+
+        Format(Bitmap.CompressFormat compressFormat, String extension) {
+            this.compressFormat = compressFormat;
+            this.extension = extension;
+        }
+    }
+
+    public interface Callback {
+        void onExported(File file);
+
+        void onExportFailed(Exception e);
+    }
+}
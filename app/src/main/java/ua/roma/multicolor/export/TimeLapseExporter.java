@@ -0,0 +1,133 @@
+package ua.roma.multicolor.export;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ua.roma.multicolor.view.PlaybackRenderer;
+
+/**
+ * Writes the frames of a {@link PlaybackRenderer} as a numbered PNG sequence on a single
+ * background thread, one frame every 1 / fps seconds of the sped up playback. Like
+ * {@link ImageExporter} only one export runs at a time.
+ */
+public class TimeLapseExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "time-lapse-export");
+        }
+    });
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean busy = new AtomicBoolean();
+
+    public TimeLapseExporter() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts writing the frames of {@code renderer}, played {@code speed} times as fast as
+     * it was drawn, into {@code directory} as frame_00000.png and on. The renderer is used
+     * on the export thread only until the callback, which is invoked on the main thread.
+     * Returns false when an export is already running.
+     */
+    public boolean export(final PlaybackRenderer renderer, final File directory,
+                          final float speed, final int fps, final Callback callback) {
+        if (!busy.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Exception failure = null;
+                int frames = 0;
+                try {
+                    frames = write(renderer, directory, speed, fps);
+                } catch (Exception e) {
+                    failure = e;
+                }
+                busy.set(false);
+                final Exception result = failure;
+                final int written = frames;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result == null) {
+                            callback.onExported(directory, written);
+                        } else {
+                            callback.onExportFailed(result);
+                        }
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    public boolean isBusy() {
+        return busy.get();
+    }
+
+    private static int write(PlaybackRenderer renderer, File directory, float speed, int fps)
+            throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("can't create " + directory);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(renderer.getWidth(), renderer.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(bitmap);
+            int duration = renderer.getDuration();
+            int frames = 0;
+            long time = 0;
+            // the last frame always shows the finished drawing
+            while (true) {
+                renderer.draw(canvas, (int) Math.min(time, duration));
+                File file = new File(directory,
+                        String.format(Locale.US, "frame_%05d.png", frames++));
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file),
+                        BUFFER_SIZE)) {
+                    if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                        throw new IOException("can't encode " + file);
+                    }
+                }
+                if (time >= duration) {
+                    return frames;
+                }
+                time = (long) (frames * 1000L * speed / fps);
+            }
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    public interface Callback {
+        void onExported(File directory, int frames);
+
+        void onExportFailed(Exception e);
+    }
+}
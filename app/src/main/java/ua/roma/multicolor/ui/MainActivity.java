@@ -1,11 +1,10 @@
 package ua.roma.multicolor.ui;
 
 import android.Manifest;
+import android.content.Context;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 
 import android.graphics.Color;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Environment;
 import android.support.annotation.NonNull;
@@ -25,17 +24,33 @@ import android.widget.SeekBar;
 import android.widget.Toast;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 
+import ua.roma.multicolor.BuildConfig;
 import ua.roma.multicolor.R;
+import ua.roma.multicolor.export.ImageExporter;
+import ua.roma.multicolor.export.TimeLapseExporter;
+import ua.roma.multicolor.io.StrokeJournal;
+import ua.roma.multicolor.metrics.HistogramMetrics;
 import ua.roma.multicolor.view.ColorPickerView;
+import ua.roma.multicolor.view.DrawingSnapshot;
 import ua.roma.multicolor.view.PaintView;
+import ua.roma.multicolor.view.PlaybackRenderer;
 
 
 public class MainActivity extends AppCompatActivity implements View.OnClickListener{
 
     public static final String TAG = MainActivity.class.getCanonicalName();
     public static final int REQUEST_PERMISSION_CODE = 1;
+    public static final String JOURNAL_FILE = "drawing.journal";
+    public static final ImageExporter.Format EXPORT_FORMAT = ImageExporter.Format.PNG;
+    public static final int EXPORT_QUALITY = 100;
+    public static final float PLAYBACK_SPEED = 8;
+    public static final int TIME_LAPSE_FPS = 30;
+    // the development machine as seen from the emulator, running the SyncRelay of the core
+    // tests; there is no public relay, so drawing together is offered in debug builds only
+    public static final String SYNC_HOST = "10.0.2.2";
+    public static final int SYNC_PORT = 7070;
 
     private Toolbar toolbar;
     private PaintView paintView;
@@ -44,6 +59,12 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     private MenuItem undo, redo, clear;
     private BottomSheetBehavior bottomSheetBehavior;
     private ImageButton black,red,green,blue;
+    private HistogramMetrics metrics;
+    private StrokeJournal journal;
+    private final ImageExporter exporter = new ImageExporter();
+    private ImageExporter.Format saveFormat = EXPORT_FORMAT;
+    private final TimeLapseExporter timeLapseExporter = new TimeLapseExporter();
+    private boolean saveTimeLapse;
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
@@ -52,6 +73,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         undo = menu.findItem(R.id.undo);
         redo = menu.findItem(R.id.redo);
         clear = menu.findItem(R.id.clear);
+        menu.findItem(R.id.eraser).setChecked(paintView.isEraserMode());
+        menu.findItem(R.id.multiTouch).setChecked(paintView.isMultiTouchDrawing());
+        menu.findItem(R.id.coDraw).setChecked(paintView.isSyncing())
+                .setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -73,12 +98,60 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 bottomSheetBehavior.setState(BottomSheetBehavior.STATE_EXPANDED);
                 return true;
             case R.id.saveButton:
+                saveFormat = EXPORT_FORMAT;
+                saveTimeLapse = false;
                 tryToSaveImage();
                 return true;
+            case R.id.eraser:
+                item.setChecked(!item.isChecked());
+                paintView.setEraserMode(item.isChecked());
+                return true;
+            case R.id.multiTouch:
+                item.setChecked(!item.isChecked());
+                paintView.setMultiTouchDrawing(item.isChecked());
+                return true;
+            case R.id.saveSvg:
+                saveFormat = ImageExporter.Format.SVG;
+                saveTimeLapse = false;
+                tryToSaveImage();
+                return true;
+            case R.id.playback:
+                if (paintView.isPlayingBack()) {
+                    paintView.stopPlayback();
+                } else {
+                    paintView.startPlayback(PLAYBACK_SPEED);
+                }
+                return true;
+            case R.id.coDraw:
+                item.setChecked(!item.isChecked());
+                if (item.isChecked()) {
+                    paintView.startSync(SYNC_HOST, SYNC_PORT);
+                } else {
+                    paintView.stopSync();
+                }
+                return true;
+            case R.id.saveTimeLapse:
+                saveTimeLapse = true;
+                tryToSaveImage();
+                return true;
+            case R.id.newLayer:
+                paintView.addLayer();
+                showActiveLayer();
+                return true;
+            case R.id.nextLayer:
+                paintView.setActiveLayer((paintView.getActiveLayer() + 1)
+                        % paintView.getLayerCount());
+                showActiveLayer();
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    private void showActiveLayer() {
+        Toast.makeText(this, getString(R.string.layer, paintView.getActiveLayer() + 1,
+                paintView.getLayerCount()), Toast.LENGTH_SHORT).show();
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         switch (requestCode){
@@ -149,6 +222,22 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             }
         });
 
+        // the journal outlives configuration changes, the view state covers those
+        journal = (StrokeJournal) getLastCustomNonConfigurationInstance();
+        if (journal == null) {
+            journal = new StrokeJournal(new File(getFilesDir(), JOURNAL_FILE));
+        }
+        if (savedInstanceState == null) {
+            paintView.recover(journal);
+        } else {
+            paintView.setJournal(journal);
+        }
+
+        if (BuildConfig.DEBUG) {
+            metrics = new HistogramMetrics();
+            paintView.setMetrics(metrics);
+        }
+
         bottomSheetBehavior = BottomSheetBehavior.from(findViewById(R.id.bottom_sheet_layout));
 
         colorPickerView = findViewById(R.id.colorPicker);
@@ -188,12 +277,100 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         setSupportActionBar(toolbar);
     }
 
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return journal;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        paintView.stopSync();
+        if (isFinishing()) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                Log.w(TAG, "can't close journal", e);
+            }
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (metrics != null) {
+            Log.d(TAG, "paint metrics\n" + metrics.dump());
+        }
+    }
+
     private void saveImage() {
-        paintView.setDrawingCacheEnabled(true);
-        final Bitmap bitmap = paintView.getDrawingCache();
+        if (saveTimeLapse) {
+            saveTimeLapse();
+            return;
+        }
+        if (exporter.isBusy()) {
+            return;
+        }
+        if (!Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+            Toast.makeText(this, "failure", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File dir = new File(Environment.getExternalStorageDirectory(), getString(R.string.app_name));
+        File file = new File(dir, "image" + System.currentTimeMillis() + "." + saveFormat.extension);
+        final Context context = getApplicationContext();
+        DrawingSnapshot snapshot = paintView.lockSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        exporter.export(snapshot, file, saveFormat, EXPORT_QUALITY,
+                new ImageExporter.Callback() {
+                    @Override
+                    public void onExported(File file) {
+                        Toast.makeText(context, "image was saved", Toast.LENGTH_SHORT).show();
+                    }
 
-        SaveTask task =  new SaveTask(bitmap);
-        task.execute();
+                    @Override
+                    public void onExportFailed(Exception e) {
+                        Log.w(TAG, "can't save image", e);
+                        Toast.makeText(context, "failure", Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
+    private void saveTimeLapse() {
+        if (timeLapseExporter.isBusy()) {
+            return;
+        }
+        if (!Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+            Toast.makeText(this, "failure", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final PlaybackRenderer renderer = paintView.lockPlayback(paintView.getWidth(),
+                paintView.getHeight());
+        if (renderer == null) {
+            return;
+        }
+        File dir = new File(new File(Environment.getExternalStorageDirectory(),
+                getString(R.string.app_name)), "timelapse" + System.currentTimeMillis());
+        final Context context = getApplicationContext();
+        // the view outlives the export unless the activity is recreated meanwhile
+        final PaintView view = paintView;
+        timeLapseExporter.export(renderer, dir, PLAYBACK_SPEED, TIME_LAPSE_FPS,
+                new TimeLapseExporter.Callback() {
+                    @Override
+                    public void onExported(File directory, int frames) {
+                        view.unlockPlayback(renderer);
+                        Toast.makeText(context, frames + " frames were saved",
+                                Toast.LENGTH_SHORT).show();
+                    }
+
+                    @Override
+                    public void onExportFailed(Exception e) {
+                        view.unlockPlayback(renderer);
+                        Log.w(TAG, "can't save time-lapse", e);
+                        Toast.makeText(context, "failure", Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 
     private void tryToSaveImage() {
@@ -209,52 +386,4 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             saveImage();
         }
     }
-
-
-    private class SaveTask extends AsyncTask<Void,Void,String>{
-        private Bitmap bitmap;
-
-        public SaveTask(Bitmap bitmap) {
-            this.bitmap = bitmap;
-        }
-
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-        }
-
-        @Override
-        protected String doInBackground(Void... voids) {
-            try {
-                File f = null;
-                if (Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
-                    File file = new File(Environment.getExternalStorageDirectory()
-                            ,getString(R.string.app_name));
-                    if (!file.exists()) {
-                        file.mkdirs();
-                    }
-                    f = new File(file.getAbsolutePath()
-                            + file.separator
-                            + "image"
-                            +  System.currentTimeMillis()
-                            + ".png");
-                }
-                FileOutputStream ostream = new FileOutputStream(f);
-                bitmap.compress(Bitmap.CompressFormat.PNG, 100, ostream);
-                ostream.flush();
-                ostream.close();
-                return "image was saved";
-            } catch (Exception e) {
-                e.printStackTrace();
-                return "failure";
-            }
-        }
-
-        @Override
-        protected void onPostExecute(String s) {
-            super.onPostExecute(s);
-            Toast.makeText(MainActivity.this,s,Toast.LENGTH_SHORT).show();
-            paintView.setDrawingCacheEnabled(false);
-        }
-    }
 }
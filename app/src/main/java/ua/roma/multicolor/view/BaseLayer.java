@@ -0,0 +1,222 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Raster of the strokes that fell behind the undo horizon, drawn under everything the
+ * history still holds. It is kept in tiles of {@link TileCache#TILE_SIZE} created the
+ * first time a stroke reaches them, so it needs no canvas size and costs nothing where
+ * nothing was flattened; missing tiles are transparent. Each layer of the drawing has its own.
+ * {@link BaseLayerFiles} keeps a copy on disk, written from {@link #takeChanges()}.
+ */
+public class BaseLayer {
+
+    private static final int TILE_SIZE = TileCache.TILE_SIZE;
+
+    private Bitmap[] tiles = new Bitmap[0];
+    // tiles drawn on since the last changes were taken
+    private boolean[] changed = new boolean[0];
+    private boolean modified;
+    private int columns, rows;
+    private int count;
+    private final Canvas canvas = new Canvas();
+    // the base is drawn scaled into tiles of zoomed caches
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final StrokeRenderer renderer = new StrokeRenderer();
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long getByteCount() {
+        return count * (long) TILE_SIZE * TILE_SIZE * 4;
+    }
+
+    /**
+     * Draws the first {@code entries} entries of {@code strokes} on {@code layer} as they
+     * show at that position, on top of what the base holds.
+     */
+    public void flatten(StrokeStore strokes, int entries, int layer) {
+        for (int i = 0; i < entries; i++) {
+            if (strokes.isErase(i) || strokes.getLayer(i) != layer
+                    || !strokes.isVisible(i, entries)
+                    || strokes.getLeft(i) > strokes.getRight(i)) {
+                continue;
+            }
+            float pad = strokes.getWidth(i) / 2f + 1;
+            int firstColumn = Math.max(0, (int) Math.floor((strokes.getLeft(i) - pad) / TILE_SIZE));
+            int firstRow = Math.max(0, (int) Math.floor((strokes.getTop(i) - pad) / TILE_SIZE));
+            int lastColumn = (int) Math.floor((strokes.getRight(i) + pad) / TILE_SIZE);
+            int lastRow = (int) Math.floor((strokes.getBottom(i) + pad) / TILE_SIZE);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    canvas.setBitmap(obtain(column, row));
+                    canvas.save();
+                    canvas.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+                    renderer.drawStroke(canvas, strokes, i);
+                    canvas.restore();
+                }
+            }
+        }
+        canvas.setBitmap(null);
+    }
+
+    /**
+     * Draws the tiles covering the given canvas area.
+     */
+    public void draw(Canvas target, int left, int top, int right, int bottom) {
+        int lastColumn = Math.min(columns - 1, (right - 1) / TILE_SIZE);
+        int lastRow = Math.min(rows - 1, (bottom - 1) / TILE_SIZE);
+        for (int row = Math.max(0, top / TILE_SIZE); row <= lastRow; row++) {
+            for (int column = Math.max(0, left / TILE_SIZE); column <= lastColumn; column++) {
+                Bitmap tile = tiles[row * columns + column];
+                if (tile != null) {
+                    target.drawBitmap(tile, column * TILE_SIZE, row * TILE_SIZE, paint);
+                }
+            }
+        }
+    }
+
+    /**
+     * The base as one transparent {@code width} x {@code height} bitmap, or null while it
+     * is empty.
+     */
+    public Bitmap toBitmap(int width, int height) {
+        if (isEmpty()) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        draw(new Canvas(bitmap), 0, 0, width, height);
+        return bitmap;
+    }
+
+    public void clear() {
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                tiles[i].recycle();
+                tiles[i] = null;
+            }
+        }
+        Arrays.fill(changed, false);
+        modified |= count > 0;
+        count = 0;
+    }
+
+    /**
+     * What changed since the last call, or null if nothing did: copies of the tiles drawn
+     * on, which belong to the caller, and the keys of all tiles, {@code row << 16 | column}.
+     */
+    public Changes takeChanges() {
+        if (!modified) {
+            return null;
+        }
+        modified = false;
+        int drawn = 0;
+        for (boolean tile : changed) {
+            if (tile) {
+                drawn++;
+            }
+        }
+        int[] keys = new int[count];
+        int[] drawnKeys = new int[drawn];
+        Bitmap[] copies = new Bitmap[drawn];
+        for (int i = 0, k = 0, d = 0; i < tiles.length; i++) {
+            if (tiles[i] == null) {
+                continue;
+            }
+            keys[k++] = (i / columns) << 16 | i % columns;
+            if (changed[i]) {
+                drawnKeys[d] = keys[k - 1];
+                copies[d++] = tiles[i].copy(Bitmap.Config.ARGB_8888, false);
+                changed[i] = false;
+            }
+        }
+        return new Changes(columns, rows, keys, drawnKeys, copies);
+    }
+
+    /**
+     * Decodes a PNG encoded tile for {@link #setTiles(int, int, int[], Bitmap[])}, on any
+     * thread.
+     */
+    public static Bitmap decodeTile(byte[] png) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        Bitmap tile = BitmapFactory.decodeByteArray(png, 0, png.length, options);
+        if (tile == null) {
+            throw new IOException("unreadable base tile");
+        }
+        return tile;
+    }
+
+    /**
+     * Replaces the tiles with {@code decoded}, keyed like in {@link Changes}, in a grid of
+     * {@code columns} by {@code rows}. The bitmaps then belong to the base, and count as
+     * unchanged.
+     */
+    public void setTiles(int columns, int rows, int[] keys, Bitmap[] decoded) {
+        clear();
+        modified = false;
+        tiles = new Bitmap[columns * rows];
+        changed = new boolean[tiles.length];
+        this.columns = columns;
+        this.rows = rows;
+        for (int i = 0; i < keys.length; i++) {
+            tiles[(keys[i] >>> 16) * columns + (keys[i] & 0xFFFF)] = decoded[i];
+            count++;
+        }
+    }
+
+    private Bitmap obtain(int column, int row) {
+        if (column >= columns || row >= rows) {
+            grow(Math.max(columns, column + 1), Math.max(rows, row + 1));
+        }
+        int index = row * columns + column;
+        if (tiles[index] == null) {
+            tiles[index] = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+            count++;
+        }
+        changed[index] = true;
+        modified = true;
+        return tiles[index];
+    }
+
+    private void grow(int newColumns, int newRows) {
+        Bitmap[] grown = new Bitmap[newColumns * newRows];
+        boolean[] grownChanged = new boolean[grown.length];
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(tiles, row * columns, grown, row * newColumns, columns);
+            System.arraycopy(changed, row * columns, grownChanged, row * newColumns, columns);
+        }
+        tiles = grown;
+        changed = grownChanged;
+        columns = newColumns;
+        rows = newRows;
+    }
+
+    /**
+     * See {@link #takeChanges()}.
+     */
+    public static final class Changes {
+        public final int columns, rows;
+        public final int[] keys;
+        // the tiles drawn on and their keys
+        public final int[] drawnKeys;
+        public final Bitmap[] drawn;
+
+        Changes(int columns, int rows, int[] keys, int[] drawnKeys, Bitmap[] drawn) {
+            this.columns = columns;
+            this.rows = rows;
+            this.keys = keys;
+            this.drawnKeys = drawnKeys;
+            this.drawn = drawn;
+        }
+    }
+}
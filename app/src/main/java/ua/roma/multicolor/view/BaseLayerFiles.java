@@ -0,0 +1,281 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache files holding the {@link BaseLayer} of every layer, so that saving the instance
+ * state only has to name them. A base is written each time it changes, on one background
+ * thread shared by all views: the tiles drawn on since the last write are copied on the UI
+ * thread and encoded there, the others keep the PNG of their last write. A file is read
+ * back and decoded on that thread too, after the writes queued before, e.g. by the view
+ * the state was saved from, and the tiles handed to the base on the owner thread.
+ *
+ * <pre>
+ * file: columns:int rows:int tiles:int (index:int length:int png{length}){tiles}
+ * </pre>
+ */
+class BaseLayerFiles {
+
+    private static final String TAG = BaseLayerFiles.class.getSimpleName();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadPoolExecutor WRITER = createWriter();
+
+    private final File directory;
+    private final String prefix;
+    private final Executor owner;
+    // file of each layer, null while its base is empty
+    private final List<String> paths = new ArrayList<>();
+    // owned by the writer: PNG of each tile of each layer by key
+    private final List<Map<Integer, byte[]>> encoded = new ArrayList<>();
+    // bumped by reset(), bases read for an older one are not handed over
+    private int generation;
+
+    /**
+     * Files are named {@code prefix} followed by the layer.
+     *
+     * @param owner runs tasks on the thread that owns the bases
+     */
+    BaseLayerFiles(File directory, String prefix, Executor owner) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.owner = owner;
+    }
+
+    /**
+     * Queues writing {@code base} if it changed since the last call for {@code layer}.
+     */
+    void update(final int layer, BaseLayer base) {
+        final BaseLayer.Changes changes = base.takeChanges();
+        if (changes == null) {
+            return;
+        }
+        final File file = new File(directory, prefix + layer + ".bin");
+        setPath(layer, changes.keys.length == 0 ? null : file.getAbsolutePath());
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(layer, changes, file);
+                } catch (IOException e) {
+                    Log.w(TAG, "can't write background to " + file, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The file holding the base of {@code layer} as of the last update, null if it is
+     * empty. It may still be being written.
+     */
+    String getPath(int layer) {
+        return layer < paths.size() ? paths.get(layer) : null;
+    }
+
+    /**
+     * Forgets all layers, whose bases were cleared. The files stay until overwritten, a
+     * saved state may still name them.
+     */
+    void reset() {
+        paths.clear();
+        generation++;
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                encoded.clear();
+            }
+        });
+    }
+
+    /**
+     * Reads the base of {@code layer} from the file at {@code path} once the writes queued
+     * before are done, and writes {@code layer} there from now on. On the owner thread the
+     * tiles then replace those of {@code base} and {@code done} runs, unless
+     * {@link #reset()} was called meanwhile. A file that can't be read leaves the base
+     * empty and is no longer named.
+     */
+    void read(final int layer, final String path, final BaseLayer base, final Runnable done) {
+        final int submitted = generation;
+        setPath(layer, path);
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                Decoded read = null;
+                try {
+                    read = decode(layer, path);
+                } catch (IOException e) {
+                    Log.w(TAG, "can't read background from " + path, e);
+                }
+                final Decoded decoded = read;
+                owner.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (submitted != generation) {
+                            if (decoded != null) {
+                                decoded.recycle();
+                            }
+                            return;
+                        }
+                        if (decoded != null) {
+                            base.setTiles(decoded.columns, decoded.rows, decoded.keys,
+                                    decoded.tiles);
+                        } else if (path.equals(getPath(layer))) {
+                            setPath(layer, null);
+                        }
+                        done.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs on the writer.
+     */
+    private Decoded decode(int layer, String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            int columns = in.readInt();
+            int rows = in.readInt();
+            int count = in.readInt();
+            if (columns < 0 || rows < 0 || columns > 0xFFFF || count < 0
+                    || count > (long) columns * rows) {
+                throw new IOException("corrupt base layer");
+            }
+            Map<Integer, byte[]> pngs = new HashMap<>();
+            Decoded decoded = new Decoded(columns, rows, count);
+            try {
+                for (int i = 0; i < count; i++) {
+                    int index = in.readInt();
+                    int length = in.readInt();
+                    if (index < 0 || index >= columns * rows || length < 0) {
+                        throw new IOException("corrupt base layer");
+                    }
+                    decoded.keys[i] = (index / columns) << 16 | index % columns;
+                    byte[] png = new byte[length];
+                    in.readFully(png);
+                    if (pngs.put(decoded.keys[i], png) != null) {
+                        throw new IOException("corrupt base layer");
+                    }
+                    decoded.tiles[i] = BaseLayer.decodeTile(png);
+                }
+            } catch (IOException e) {
+                decoded.recycle();
+                throw e;
+            }
+            setEncoded(layer, pngs);
+            return decoded;
+        }
+    }
+
+    private void setPath(int layer, String path) {
+        while (paths.size() <= layer) {
+            paths.add(null);
+        }
+        paths.set(layer, path);
+    }
+
+    private void setEncoded(int layer, Map<Integer, byte[]> tiles) {
+        while (encoded.size() <= layer) {
+            encoded.add(new HashMap<Integer, byte[]>());
+        }
+        encoded.set(layer, tiles);
+    }
+
+    /**
+     * Runs on the writer.
+     */
+    private void write(int layer, BaseLayer.Changes changes, File file) throws IOException {
+        if (layer >= encoded.size()) {
+            setEncoded(layer, new HashMap<Integer, byte[]>());
+        }
+        Map<Integer, byte[]> tiles = encoded.get(layer);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        for (int i = 0; i < changes.drawn.length; i++) {
+            png.reset();
+            changes.drawn[i].compress(Bitmap.CompressFormat.PNG, 100, png);
+            changes.drawn[i].recycle();
+            tiles.put(changes.drawnKeys[i], png.toByteArray());
+        }
+        Map<Integer, byte[]> kept = new HashMap<>();
+        for (int key : changes.keys) {
+            kept.put(key, tiles.get(key));
+        }
+        encoded.set(layer, kept);
+        if (kept.isEmpty()) {
+            if (file.exists() && !file.delete()) {
+                throw new IOException("can't delete " + file);
+            }
+            return;
+        }
+        // a file cut short by a kill would lose the whole base, replace it in one step
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+            out.writeInt(changes.columns);
+            out.writeInt(changes.rows);
+            out.writeInt(changes.keys.length);
+            for (int key : changes.keys) {
+                byte[] tile = kept.get(key);
+                out.writeInt((key >>> 16) * changes.columns + (key & 0xFFFF));
+                out.writeInt(tile.length);
+                out.write(tile);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("can't replace " + file);
+        }
+    }
+
+    private static final class Decoded {
+        final int columns, rows;
+        final int[] keys;
+        final Bitmap[] tiles;
+
+        Decoded(int columns, int rows, int count) {
+            this.columns = columns;
+            this.rows = rows;
+            keys = new int[count];
+            tiles = new Bitmap[count];
+        }
+
+        void recycle() {
+            for (Bitmap tile : tiles) {
+                if (tile != null) {
+                    tile.recycle();
+                }
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createWriter() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "base-layer-writer");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -4,7 +4,6 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.ColorMatrix;
 import android.graphics.Paint;
 import android.graphics.SweepGradient;
 import android.support.annotation.Nullable;
@@ -13,16 +12,21 @@ import android.view.MotionEvent;
 import android.view.View;
 
 import ua.roma.multicolor.R;
+import ua.roma.multicolor.color.ColorMath;
 
 public class ColorPickerView extends View {
 
     public static final String TAG = ColorPickerView.class.getCanonicalName();
     private static final float PI = 3.1415926f;
+    private static final int HUE_TABLE_SIZE = 2048;
     private int centerRadius;
     private int paletteWidth;
     private Paint palettePaint;
     private Paint selectedPaint;
     private int[] colors;
+    private int[] hueTable;
+    private final float[] hueMatrix = new float[9];
+    private float centerX, centerY, paletteRadius;
     private OnColorChangedListener listener;
 
     public ColorPickerView(Context context) {
@@ -60,6 +64,8 @@ public class ColorPickerView extends View {
         selectedPaint.setColor(Color.WHITE);
         selectedPaint.setStyle(Paint.Style.FILL);
         selectedPaint.setStrokeWidth(5);
+
+        hueTable = ColorMath.buildTable(colors, HUE_TABLE_SIZE);
     }
 
     public int getCenterRadius() {
@@ -76,14 +82,18 @@ public class ColorPickerView extends View {
         listener.colorChanged(palettePaint.getColor());
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        centerX = w / 2 + getPaddingStart() - getPaddingEnd();
+        centerY = h / 2 + getPaddingTop() - getPaddingBottom();
+        paletteRadius = Math.min(centerX, centerY) - paletteWidth / 2;
+        palettePaint.setShader(new SweepGradient(centerX, centerY, colors, null));
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
-        float centerX = getWidth() / 2 + getPaddingStart() - getPaddingEnd();
-        float centerY = getHeight() / 2 + getPaddingTop() - getPaddingBottom();
-        float r = Math.min(centerX, centerY) - paletteWidth / 2;
-        SweepGradient gradient = new SweepGradient(centerX, centerY, colors, null);
-        palettePaint.setShader(gradient);
-        canvas.drawCircle(centerX, centerY, r, palettePaint);
+        canvas.drawCircle(centerX, centerY, paletteRadius, palettePaint);
         canvas.drawCircle(centerX, centerY, centerRadius, selectedPaint);
     }
 
@@ -111,70 +121,9 @@ public class ColorPickerView extends View {
         return result;
     }
 
-    private int floatToByte(float x) {
-        int n = Math.round(x);
-        return n;
-    }
-
-    private int pinToByte(int n) {
-        if (n < 0) {
-            n = 0;
-        } else if (n > 255) {
-            n = 255;
-        }
-        return n;
-    }
-
-    private int ave(int s, int d, float p) {
-        return s + java.lang.Math.round(p * (d - s));
-    }
-
-    private int interpColor(int colors[], float unit) {
-        if (unit <= 0) {
-            return colors[0];
-        }
-        if (unit >= 1) {
-            return colors[colors.length - 1];
-        }
-
-        float p = unit * (colors.length - 1);
-        int i = (int) p;
-        p -= i;
-
-        // now p is just the fractional part [0...1) and i is the index
-        int c0 = colors[i];
-        int c1 = colors[i + 1];
-        int a = ave(Color.alpha(c0), Color.alpha(c1), p);
-        int r = ave(Color.red(c0), Color.red(c1), p);
-        int g = ave(Color.green(c0), Color.green(c1), p);
-        int b = ave(Color.blue(c0), Color.blue(c1), p);
-
-        return Color.argb(a, r, g, b);
-    }
-
     private int rotateColor(int color, float rad) {
-        float deg = rad * 180 / 3.1415927f;
-        int r = Color.red(color);
-        int g = Color.green(color);
-        int b = Color.blue(color);
-
-        ColorMatrix cm = new ColorMatrix();
-        ColorMatrix tmp = new ColorMatrix();
-
-        cm.setRGB2YUV();
-        tmp.setRotate(0, deg);
-        cm.postConcat(tmp);
-        tmp.setYUV2RGB();
-        cm.postConcat(tmp);
-
-        final float[] a = cm.getArray();
-
-        int ir = floatToByte(a[0] * r + a[1] * g + a[2] * b);
-        int ig = floatToByte(a[5] * r + a[6] * g + a[7] * b);
-        int ib = floatToByte(a[10] * r + a[11] * g + a[12] * b);
-
-        return Color.argb(Color.alpha(color), pinToByte(ir),
-                pinToByte(ig), pinToByte(ib));
+        ColorMath.hueRotation(rad, hueMatrix);
+        return ColorMath.transform(color, hueMatrix);
     }
 
     @Override
@@ -197,7 +146,7 @@ public class ColorPickerView extends View {
                     if (unit < 0) {
                         unit += 1;
                     }
-                    selectedPaint.setColor(interpColor(colors, unit));
+                    selectedPaint.setColor(ColorMath.lookup(hueTable, unit));
                     listener.colorChanged(selectedPaint.getColor());
                     invalidate();
                 }
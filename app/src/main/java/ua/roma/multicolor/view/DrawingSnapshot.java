@@ -0,0 +1,82 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+
+import ua.roma.multicolor.model.Layers;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * The visible drawing of a {@link PaintView} as of {@link PaintView#lockSnapshot()}. Taking
+ * it only counts the entries and copies the layer settings; the strokes and the bases are
+ * read in place, so the copies may be made on a background thread, while the view ignores
+ * touches and keeps its history until {@link #release()} is called.
+ */
+public class DrawingSnapshot {
+
+    private final PaintView view;
+    private final StrokeStore strokes;
+    private final int position;
+    private final Layers layers;
+    private final BaseLayer[] bases;
+    private final int canvasWidth, canvasHeight;
+    private boolean released;
+
+    DrawingSnapshot(PaintView view, StrokeStore strokes, int position, Layers layers,
+                    BaseLayer[] bases, int canvasWidth, int canvasHeight) {
+        this.view = view;
+        this.strokes = strokes;
+        this.position = position;
+        this.layers = layers;
+        this.bases = bases;
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+    }
+
+    /**
+     * Copy of the visible strokes, which stays valid once the snapshot is released.
+     */
+    public StrokeStore copyStrokes() {
+        return strokes.copyOf(position);
+    }
+
+    /**
+     * The strokes flattened out of the history as a transparent canvas sized bitmap per
+     * layer, which the visible strokes of the layer go on top of; null where nothing was
+     * flattened or a clear hides it.
+     */
+    public Bitmap[] copyBackgrounds() {
+        Bitmap[] backgrounds = new Bitmap[bases.length];
+        if (strokes.getVisibleStart(position) == 0) {
+            for (int layer = 0; layer < backgrounds.length; layer++) {
+                backgrounds[layer] = bases[layer].toBitmap(canvasWidth, canvasHeight);
+            }
+        }
+        return backgrounds;
+    }
+
+    /**
+     * Copy of the layer visibility and opacity.
+     */
+    public Layers getLayers() {
+        return layers;
+    }
+
+    public int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    /**
+     * Lets the view change its strokes again. Must be called on the UI thread, once the
+     * copies are made; later calls do nothing.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            view.unfreeze();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+
+import ua.roma.multicolor.history.Checkpoints;
+import ua.roma.multicolor.model.IntList;
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeLod;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Raster of one layer of a {@link PaintView}: a transparent view sized bitmap with
+ * checkpoints when the canvas fits the view, tiles when it is larger, and the strokes of
+ * the layer flattened out of the history. The history is shared by all layers; a surface
+ * only replays the entries of its own layer, so drawing, undoing or erasing on one layer
+ * leaves the rasters of the others as they are.
+ *
+ * <p>Zoomed in, or zoomed out on a canvas larger than the view, the layer is drawn from a
+ * {@link TileCache} of the level matching the zoom, so each tile pixel shows up at half
+ * to one screen pixel.
+ */
+class LayerSurface {
+
+    // undoing or erasing at most this many entries repaints just the area they covered
+    private static final int MAX_PARTIAL_REPAINT = 64;
+    // tile level for the largest zoom, 4 tile pixels per canvas pixel
+    private static final int MIN_LEVEL = -2;
+
+    private final int layer;
+    private final StrokeStore strokes;
+    private final StrokeGrid index;
+    private final StrokeLod lod;
+    private final IntList hits = new IntList();
+    private final StrokeRenderer renderer = new StrokeRenderer();
+    // strokes of this layer flattened out of the history, drawn under the others
+    private final BaseLayer base = new BaseLayer();
+    private final Checkpoints<Bitmap> checkpoints;
+    private Bitmap cacheBitmap;
+    private Canvas cacheCanvas;
+    // number of entries already rasterized into cacheBitmap, -1 when it must be rebuilt
+    private int cachedCount = -1;
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private int canvasWidth, canvasHeight;
+    private long tileBudget;
+    // created for the level of the zoom once the cache bitmap can't show it
+    private TileCache tiles;
+
+    LayerSurface(int layer, StrokeStore strokes, StrokeGrid index, StrokeLod lod,
+                 int checkpointInterval, long checkpointBudget) {
+        this.layer = layer;
+        this.strokes = strokes;
+        this.index = index;
+        this.lod = lod;
+        checkpoints = new Checkpoints<>(checkpointInterval, checkpointBudget,
+                new Checkpoints.Snapshots<Bitmap>() {
+                    @Override
+                    public long sizeOf(Bitmap snapshot) {
+                        return snapshot.getByteCount();
+                    }
+
+                    @Override
+                    public void release(Bitmap snapshot) {
+                        snapshot.recycle();
+                    }
+                });
+    }
+
+    BaseLayer getBase() {
+        return base;
+    }
+
+    void setCheckpointPolicy(int interval, long budget) {
+        checkpoints.setPolicy(interval, budget);
+    }
+
+    void setTileBudget(long budget) {
+        tileBudget = budget;
+        if (tiles != null) {
+            tiles.setBudget(budget);
+        }
+    }
+
+    /**
+     * Allocates the raster for a {@code canvasWidth} x {@code canvasHeight} canvas shown in
+     * a {@code viewWidth} x {@code viewHeight} view, dropping the old one. A canvas larger
+     * than the view is kept in tiles.
+     */
+    void create(int viewWidth, int viewHeight, int canvasWidth, int canvasHeight,
+                long tileBudget) {
+        release();
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.tileBudget = tileBudget;
+        if (canvasWidth <= viewWidth && canvasHeight <= viewHeight
+                && viewWidth > 0 && viewHeight > 0) {
+            cacheBitmap = Bitmap.createBitmap(viewWidth, viewHeight, Bitmap.Config.ARGB_8888);
+            cacheCanvas = new Canvas(cacheBitmap);
+        }
+    }
+
+    void release() {
+        checkpoints.clear();
+        if (cacheBitmap != null) {
+            cacheBitmap.recycle();
+            cacheBitmap = null;
+            cacheCanvas = null;
+        }
+        if (tiles != null) {
+            tiles.release();
+            tiles = null;
+        }
+        cachedCount = -1;
+    }
+
+    /**
+     * Draws the layer as it shows at {@code committed} over the given area of
+     * {@code canvas}, which is in canvas coordinates and scaled by {@code zoom}. Returns
+     * the number of strokes rasterized.
+     */
+    int draw(Canvas canvas, int committed, int left, int top, int right, int bottom,
+             float zoom) {
+        if (cacheCanvas != null && zoom <= 1) {
+            if (tiles != null) {
+                tiles.release();
+                tiles = null;
+            }
+            int replayed = updateCache(committed);
+            canvas.drawBitmap(cacheBitmap, 0, 0, zoom == 1 ? null : bitmapPaint);
+            return replayed;
+        }
+        if (canvasWidth <= 0 || canvasHeight <= 0) {
+            if (strokes.getVisibleStart(committed) == 0) {
+                base.draw(canvas, left, top, right, bottom);
+            }
+            renderer.draw(canvas, strokes, 0, committed, layer);
+            return committed;
+        }
+        int level = levelFor(zoom);
+        if (tiles == null || tiles.getLevel() != level) {
+            if (tiles != null) {
+                tiles.release();
+            }
+            tiles = new TileCache(canvasWidth, canvasHeight, tileBudget, index, base, layer,
+                    level, lod);
+        }
+        return tiles.draw(canvas, strokes, committed, left, top, right, bottom);
+    }
+
+    /**
+     * Level of the tiles drawn at {@code zoom}: the finest whose tiles are not enlarged.
+     */
+    private static int levelFor(float zoom) {
+        int level = (int) Math.floor(Math.log(1 / zoom) / Math.log(2) + 1e-4);
+        return Math.max(MIN_LEVEL, Math.min(level, StrokeLod.LEVELS));
+    }
+
+    /**
+     * Called before the entries from {@code from} on leave the visible history.
+     */
+    void rollback(int from) {
+        if (tiles != null) {
+            tiles.rollback(strokes, from);
+        }
+    }
+
+    /**
+     * Called before the entries from {@code position} on are removed from the store.
+     */
+    void truncate(int position) {
+        rollback(position);
+        checkpoints.truncate(position);
+        if (cachedCount > position) {
+            cachedCount = -1;
+        }
+    }
+
+    /**
+     * Forgets everything rasterized after the strokes were replaced wholesale.
+     */
+    void reset() {
+        checkpoints.clear();
+        if (tiles != null) {
+            tiles.invalidateAll();
+        }
+        cachedCount = -1;
+    }
+
+    /**
+     * Flattens the strokes of this layer among the first {@code count} entries into the
+     * base, before they are dropped from the store.
+     */
+    void flatten(int count) {
+        if (strokes.getVisibleStart(count) > 0) {
+            // a clear among the dropped entries hides what was flattened before
+            base.clear();
+        }
+        base.flatten(strokes, count, layer);
+    }
+
+    /**
+     * Called after the first {@code count} entries were dropped from the store.
+     */
+    void dropFirst(int count) {
+        checkpoints.dropFirst(count);
+        if (tiles != null) {
+            tiles.dropFirst(count);
+        }
+        cachedCount = cachedCount >= count ? cachedCount - count : -1;
+    }
+
+    private int updateCache(int committed) {
+        // a clear between the two positions changes everything
+        if (cachedCount >= 0
+                && strokes.getVisibleStart(cachedCount) != strokes.getVisibleStart(committed)) {
+            cachedCount = -1;
+        }
+        // drawing on top only works forward, and not across erase entries
+        int lastErase = cachedCount >= 0 ? lastErase(cachedCount, committed) : -1;
+        if (cachedCount > committed || lastErase >= 0) {
+            int from = Math.min(cachedCount, committed);
+            int to = Math.max(cachedCount, committed);
+            int replayed = count(from, to) <= MAX_PARTIAL_REPAINT
+                    ? repaint(from, to, committed)
+                    : -1;
+            if (replayed >= 0) {
+                cachedCount = committed;
+                return replayed;
+            }
+            cachedCount = -1;
+        }
+        if (cachedCount < 0) {
+            int from = checkpoints.floor(committed);
+            // a checkpoint still shows the strokes erased after it
+            lastErase = lastErase(from, committed);
+            if (lastErase >= 0) {
+                from = 0;
+            }
+            // nothing before the last clear shows
+            int start = strokes.getVisibleStart(committed);
+            cacheBitmap.eraseColor(Color.TRANSPARENT);
+            if (from > start) {
+                cacheCanvas.drawBitmap(checkpoints.get(from), 0, 0, null);
+            } else {
+                if (start == 0) {
+                    base.draw(cacheCanvas, 0, 0, cacheBitmap.getWidth(), cacheBitmap.getHeight());
+                }
+                from = start;
+            }
+            cachedCount = from;
+        }
+        int replayed = 0;
+        int lastOwn = -1;
+        for (int i = cachedCount; i < committed; i++) {
+            if (strokes.getLayer(i) == layer) {
+                lastOwn = i;
+                if (strokes.isVisible(i, committed)) {
+                    renderer.queue(cacheCanvas, strokes, i);
+                    replayed++;
+                }
+            }
+            // a layer nobody drew on since the last snapshot needs no new one
+            if (i + 1 > lastErase && checkpoints.wants(i + 1)
+                    && lastOwn >= checkpoints.floor(i + 1)) {
+                renderer.flush();
+                checkpoints.put(i + 1, cacheBitmap.copy(Bitmap.Config.ARGB_8888, false));
+            }
+        }
+        renderer.flush();
+        cachedCount = committed;
+        return replayed;
+    }
+
+    /**
+     * Last erase entry of this layer between {@code from} and {@code to}, or -1.
+     */
+    private int lastErase(int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (strokes.isErase(i) && strokes.getLayer(i) == layer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of entries of this layer between {@code from} and {@code to}.
+     */
+    private int count(int from, int to) {
+        int count = 0;
+        for (int i = from; i < to && count <= MAX_PARTIAL_REPAINT; i++) {
+            if (strokes.getLayer(i) == layer) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Erases the area covered by the entries of this layer from {@code from} to
+     * {@code to}, which were undone, redone or erased something, and redraws what shows
+     * there at {@code committed}. Returns the strokes drawn, or -1 if the area is so large
+     * that restoring a checkpoint is cheaper.
+     */
+    private int repaint(int from, int to, int committed) {
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            if (strokes.getLayer(i) != layer || strokes.getLeft(i) > strokes.getRight(i)) {
+                continue;
+            }
+            float pad = strokes.getWidth(i) / 2f + 1;
+            left = Math.min(left, strokes.getLeft(i) - pad);
+            top = Math.min(top, strokes.getTop(i) - pad);
+            right = Math.max(right, strokes.getRight(i) + pad);
+            bottom = Math.max(bottom, strokes.getBottom(i) + pad);
+        }
+        if (left > right) {
+            return 0;
+        }
+        left = (float) Math.floor(Math.max(left, 0));
+        top = (float) Math.floor(Math.max(top, 0));
+        right = (float) Math.ceil(Math.min(right, cacheBitmap.getWidth()));
+        bottom = (float) Math.ceil(Math.min(bottom, cacheBitmap.getHeight()));
+        if ((right - left) * (bottom - top)
+                > cacheBitmap.getWidth() * (float) cacheBitmap.getHeight() / 2) {
+            return -1;
+        }
+        index.query(strokes, left, top, right, bottom, committed, hits);
+        cacheCanvas.save();
+        cacheCanvas.clipRect(left, top, right, bottom);
+        cacheCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        if (strokes.getVisibleStart(committed) == 0) {
+            base.draw(cacheCanvas, (int) left, (int) top, (int) right, (int) bottom);
+        }
+        int replayed = 0;
+        for (int i = 0; i < hits.size(); i++) {
+            int stroke = hits.get(i);
+            if (strokes.getLayer(stroke) == layer && strokes.isVisible(stroke, committed)) {
+                renderer.queue(cacheCanvas, strokes, stroke);
+                replayed++;
+            }
+        }
+        renderer.flush();
+        cacheCanvas.restore();
+        return replayed;
+    }
+}
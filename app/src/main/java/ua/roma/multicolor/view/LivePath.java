@@ -0,0 +1,84 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Curves of a stroke being drawn, extended as its points come in. Finished quads go to
+ * {@link #path}; the last one, which still moves with the tail, is rebuilt in
+ * {@link #tailPath}, the same curve {@link StrokeRenderer} draws. One instance serves
+ * every stroke captured in the same buffer.
+ */
+class LivePath {
+
+    final Path path = new Path();
+    final Path tailPath = new Path();
+    // last sample of the pointer, where the next repaint starts
+    float lastX, lastY;
+    private int quads;
+    private float tailStartX, tailStartY, tailControlX, tailControlY;
+
+    void begin(float x, float y) {
+        path.rewind();
+        path.moveTo(x, y);
+        tailPath.rewind();
+        quads = 0;
+        tailStartX = tailControlX = lastX = x;
+        tailStartY = tailControlY = lastY = y;
+    }
+
+    /**
+     * Extends the curves to the points of stroke 0 of {@code buffer} and grows
+     * {@code dirty} by the part that changed.
+     */
+    void update(StrokeStore buffer, RectF dirty) {
+        // the old tail has to be repainted too
+        include(dirty, tailStartX, tailStartY);
+        include(dirty, tailControlX, tailControlY);
+        float[] coords = buffer.getCoords();
+        int first = buffer.getOffset(0) * 2;
+        int length = buffer.getLength(0);
+        // points 1 to length - 2 are control points, the quad of point j ends halfway to j + 1
+        while (quads + 1 < length - 2) {
+            int j = first + (quads + 1) * 2;
+            path.quadTo(coords[j], coords[j + 1], (coords[j] + coords[j + 2]) / 2,
+                    (coords[j + 1] + coords[j + 3]) / 2);
+            quads++;
+        }
+        tailPath.rewind();
+        if (length < 2) {
+            return;
+        }
+        int start = first + quads * 2;
+        if (quads > 0) {
+            tailStartX = (coords[start] + coords[start + 2]) / 2;
+            tailStartY = (coords[start + 1] + coords[start + 3]) / 2;
+        } else {
+            tailStartX = coords[first];
+            tailStartY = coords[first + 1];
+        }
+        tailPath.moveTo(tailStartX, tailStartY);
+        int tail = first + (length - 1) * 2;
+        if (length > 2) {
+            tailControlX = coords[tail - 2];
+            tailControlY = coords[tail - 1];
+            tailPath.quadTo(tailControlX, tailControlY, (tailControlX + coords[tail]) / 2,
+                    (tailControlY + coords[tail + 1]) / 2);
+        } else {
+            tailControlX = tailStartX;
+            tailControlY = tailStartY;
+        }
+        tailPath.lineTo(coords[tail], coords[tail + 1]);
+        include(dirty, tailStartX, tailStartY);
+        include(dirty, tailControlX, tailControlY);
+    }
+
+    static void include(RectF dirty, float x, float y) {
+        dirty.left = Math.min(dirty.left, x);
+        dirty.right = Math.max(dirty.right, x);
+        dirty.top = Math.min(dirty.top, y);
+        dirty.bottom = Math.max(dirty.bottom, y);
+    }
+}
@@ -1,35 +1,136 @@
 package ua.roma.multicolor.view;
 
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RectF;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.io.Serializable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+
+import ua.roma.multicolor.R;
+import ua.roma.multicolor.history.HistoryPolicy;
+import ua.roma.multicolor.io.ByteFiles;
+import ua.roma.multicolor.io.StrokeCodec;
+import ua.roma.multicolor.io.StrokeJournal;
+import ua.roma.multicolor.metrics.PaintMetrics;
+import ua.roma.multicolor.model.BackgroundSimplifier;
+import ua.roma.multicolor.model.Layers;
+import ua.roma.multicolor.model.PointerStrokes;
+import ua.roma.multicolor.model.StrokeEraser;
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeLod;
+import ua.roma.multicolor.model.StrokeSmoother;
+import ua.roma.multicolor.model.StrokeStore;
+import ua.roma.multicolor.sync.StrokeSync;
+import ua.roma.multicolor.sync.SyncClient;
 
 public class PaintView extends View {
 
     public static final String TAG = PaintView.class.getCanonicalName();
 
     private final int DEFAULT_STROKE_WIDTH = 10;
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 25;
+    private static final int DEFAULT_CHECKPOINT_BUDGET_KB = 24 * 1024;
+    private static final int DEFAULT_TILE_BUDGET_KB = 32 * 1024;
+    private static final int DEFAULT_HISTORY_LIMIT = 500;
+    private static final int DEFAULT_HISTORY_BUDGET_KB = 8 * 1024;
+    // larger states go to a cache file so the parcel stays far below the binder limit
+    private static final int MAX_PARCEL_STATE = 64 * 1024;
+    private static final int DEFAULT_ERASER_WIDTH = 40;
+    public static final float MIN_ZOOM = 1 / 16f;
+    public static final float MAX_ZOOM = 4;
+    // layers the user can add, and the most other peers may draw on while syncing
+    public static final int MAX_LAYERS = 16;
     private int strokeWidth = DEFAULT_STROKE_WIDTH;
     private Paint paint;
-    private SerializablePath path;
-    private List<SerializablePath> pathList = new ArrayList<>();
-    private List<Integer> colorList = new ArrayList<>();
-    private List<Integer> strokeWidthList = new ArrayList<>();
+    // strokes being drawn, one per pointer, and the curves drawn for them
+    private PointerStrokes live = new PointerStrokes();
+    private LivePath[] livePaths = new LivePath[PointerStrokes.MAX_POINTERS];
+    private Paint livePaint;
+    private boolean multiTouch;
+    private BackgroundSimplifier simplifier;
+    private StrokeLod lod;
+    private float simplifyTolerance = BackgroundSimplifier.DEFAULT_TOLERANCE;
+    private StrokeStore strokes = new StrokeStore();
+    // every committed stroke, undone ones included until they are truncated
+    private StrokeGrid index = new StrokeGrid();
+    private StrokeEraser eraser = new StrokeEraser();
+    private boolean eraserMode;
+    private int eraserWidth = DEFAULT_ERASER_WIDTH;
+    private Paint eraserPaint;
+    private Paint backgroundPaint;
+    private boolean erasing;
+    // whether the current eraser gesture already erased something
+    private boolean eraseContinued;
+    // eraser positions not applied yet, starting with the last applied one
+    private float[] eraserPath = new float[64];
+    private int eraserCount;
     private int position;
     private StateListener listener;
+    private float lastX, lastY;
+    // area touched by the segments added since the last invalidate
+    private RectF dirty = new RectF(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    private PaintMetrics metrics;
+    private StrokeJournal journal;
+    // event time of the oldest input not drawn yet, -1 when everything is on screen
+    private long pendingEventTime = -1;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private int checkpointBudgetKb = DEFAULT_CHECKPOINT_BUDGET_KB;
+    // canvas size, 0 follows the view; a canvas larger than the view is kept in tiles
+    private int canvasWidth, canvasHeight;
+    private int tileBudgetKb = DEFAULT_TILE_BUDGET_KB;
+    private HistoryPolicy history = new HistoryPolicy(DEFAULT_HISTORY_LIMIT,
+            DEFAULT_HISTORY_BUDGET_KB * 1024L);
+    // entries flattened so far; the journal keeps counting them
+    private int dropped;
+    // every entry is tagged with its layer, the history itself is shared
+    private Layers layers = new Layers();
+    private List<LayerSurface> surfaces = new ArrayList<>();
+    // the bases of the surfaces on disk for the saved state, written as they change
+    private BaseLayerFiles baseFiles;
+    // bases still being read back from disk; nothing is flattened into them meanwhile
+    private int restoring;
+    private int activeLayer;
+    // canvas pixels are drawn zoom view pixels wide, the scroll offset is in view pixels
+    private float zoom = 1;
+    // a two finger pan or pinch in progress, with its focus and finger span so far
+    private boolean navigating;
+    private float focusX, focusY, span;
+    // point times are milliseconds since the view was created
+    private final long clockOrigin = SystemClock.uptimeMillis();
+    // time-lapse shown instead of the drawing, started at playbackStart uptime
+    private PlaybackRenderer playback;
+    private long playbackStart;
+    private float playbackSpeed;
+    // playbacks and exports reading the strokes in place; nothing may change them meanwhile
+    private int frozen;
+    // co-drawing session, the numbers live strokes are shared under, and the frames that
+    // came in while the strokes could not change
+    private StrokeSync sync;
+    private SyncClient syncClient;
+    private final int[] syncIds = new int[PointerStrokes.MAX_POINTERS];
+    private final List<byte[]> deferredFrames = new ArrayList<>();
+    private final Path syncPath = new Path();
+    // left the session while the strokes could not change, finished once they can
+    private boolean syncStopping;
+    private Executor owner;
 
     public PaintView(Context context) {
         super(context);
@@ -38,6 +139,31 @@ public class PaintView extends View {
 
     public PaintView(Context context, AttributeSet attr) {
         super(context, attr);
+        TypedArray array = context.getTheme().obtainStyledAttributes(attr, R.styleable.PaintView,
+                0, 0);
+        try {
+            checkpointInterval = array.getInteger(R.styleable.PaintView_checkpoint_interval,
+                    DEFAULT_CHECKPOINT_INTERVAL);
+            checkpointBudgetKb = array.getInteger(R.styleable.PaintView_checkpoint_budget_kb,
+                    DEFAULT_CHECKPOINT_BUDGET_KB);
+            canvasWidth = array.getInteger(R.styleable.PaintView_canvas_width, 0);
+            canvasHeight = array.getInteger(R.styleable.PaintView_canvas_height, 0);
+            tileBudgetKb = array.getInteger(R.styleable.PaintView_tile_budget_kb,
+                    DEFAULT_TILE_BUDGET_KB);
+            history.setLimits(
+                    array.getInteger(R.styleable.PaintView_history_limit, DEFAULT_HISTORY_LIMIT),
+                    array.getInteger(R.styleable.PaintView_history_budget_kb,
+                            DEFAULT_HISTORY_BUDGET_KB) * 1024L);
+            live.setTolerance(
+                    array.getFloat(R.styleable.PaintView_smoothing_min_distance,
+                            StrokeSmoother.DEFAULT_MIN_DISTANCE),
+                    array.getFloat(R.styleable.PaintView_smoothing_tolerance,
+                            StrokeSmoother.DEFAULT_TOLERANCE));
+            simplifyTolerance = array.getFloat(R.styleable.PaintView_simplify_tolerance,
+                    BackgroundSimplifier.DEFAULT_TOLERANCE);
+        } finally {
+            array.recycle();
+        }
         init();
     }
 
@@ -46,40 +172,307 @@ public class PaintView extends View {
     }
 
     public void undo() {
-        if (position >= 1) {
-            --position;
+        if (position >= 1 && sync == null) {
+            position = strokes.getActionStart(position - 1);
+            for (LayerSurface surface : surfaces) {
+                surface.rollback(position);
+            }
             invalidate();
+            if (journal != null) {
+                journal.appendPosition(position + dropped);
+            }
         }
         notifyListener();
     }
 
     public void redo() {
-        if (pathList.size() > position) {
-            position++;
+        if (strokes.size() > position && sync == null) {
+            position = strokes.getActionEnd(position);
             invalidate();
+            if (journal != null) {
+                journal.appendPosition(position + dropped);
+            }
         }
         notifyListener();
     }
 
+    /**
+     * Removes everything from all layers as one undoable action; undoing it just moves the
+     * history position back over the clear entry.
+     */
     public void clear() {
-        pathList.clear();
-        colorList.clear();
-        strokeWidthList.clear();
-        position = 0;
+        if (live.size() > 0 || erasing || frozen > 0 || sync != null || isClear()) {
+            return;
+        }
+        invalidateListPath();
+        strokes.beginClear();
+        position = strokes.size();
+        index.addAll(strokes);
         invalidate();
-       notifyListener();
+        if (journal != null) {
+            journal.appendClear();
+        }
+        compactHistory();
+        notifyListener();
     }
 
     public boolean isUndo() {
-        return position > 0;
+        return position > 0 && sync == null;
     }
 
     public boolean isRedo() {
-        return position < pathList.size();
+        return position < strokes.size() && sync == null;
     }
 
+    /**
+     * Whether nothing shows on the canvas at the current history position.
+     */
     public boolean isClear() {
-        return pathList.isEmpty();
+        int start = strokes.getVisibleStart(position);
+        if (start == 0) {
+            for (LayerSurface surface : surfaces) {
+                if (!surface.getBase().isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        for (int i = position - 1; i >= start; i--) {
+            if (strokes.isVisible(i, position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Snapshot the canvas every {@code interval} strokes, keeping at most {@code budgetKb}
+     * kilobytes of snapshots, so undo replays only the strokes after the nearest snapshot.
+     * An interval of 0 disables snapshots.
+     */
+    public void setCheckpointPolicy(int interval, int budgetKb) {
+        checkpointInterval = interval;
+        checkpointBudgetKb = budgetKb;
+        updateBudgets();
+    }
+
+    /**
+     * Keeps at most {@code maxEntries} undoable entries taking at most {@code budgetKb}
+     * kilobytes; older strokes are flattened into the background and can no longer be
+     * undone or erased. 0 lifts a limit.
+     */
+    public void setHistoryLimit(int maxEntries, int budgetKb) {
+        history.setLimits(maxEntries, budgetKb * 1024L);
+        compactHistory();
+        invalidate();
+    }
+
+    /**
+     * Reports draw and input timings to {@code metrics}; null turns measuring off.
+     */
+    public void setMetrics(PaintMetrics metrics) {
+        this.metrics = metrics;
+        pendingEventTime = -1;
+    }
+
+    /**
+     * Appends every committed stroke and history change to {@code journal}.
+     */
+    public void setJournal(StrokeJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Replaces the drawing with the one recorded in {@code journal}, e.g. after the
+     * process was killed, and keeps journaling into it.
+     */
+    public void recover(StrokeJournal journal) {
+        try {
+            position = journal.recover(strokes);
+        } catch (IOException e) {
+            Log.w(TAG, "can't recover drawing", e);
+            strokes.clear();
+            position = 0;
+        }
+        this.journal = journal;
+        dropped = 0;
+        resetLayers();
+        resetSurfaces();
+        compactHistory();
+        invalidate();
+        notifyListener();
+    }
+
+    /**
+     * Makes the canvas {@code width} x {@code height} pixels, 0 meaning the view size. A
+     * canvas larger than the view is scrolled with {@link #scrollTo(int, int)} and backed by
+     * tiles using at most {@code tileBudgetKb} kilobytes for all layers, plus whatever is on
+     * screen.
+     */
+    public void setCanvasSize(int width, int height, int tileBudgetKb) {
+        canvasWidth = width;
+        canvasHeight = height;
+        this.tileBudgetKb = tileBudgetKb;
+        if (getWidth() > 0 && getHeight() > 0) {
+            createSurfaces(getWidth(), getHeight());
+            scrollTo(getScrollX(), getScrollY());
+            invalidate();
+        }
+    }
+
+    /**
+     * Adds a layer on top of the others and returns its index; it becomes active. Returns
+     * -1 when there are {@link #MAX_LAYERS} already.
+     */
+    public int addLayer() {
+        if (layers.size() >= MAX_LAYERS) {
+            return -1;
+        }
+        int layer = layers.add();
+        addSurface();
+        setActiveLayer(layer);
+        return layer;
+    }
+
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * New strokes go to {@code layer}, and the eraser only erases strokes on it.
+     */
+    public void setActiveLayer(int layer) {
+        if (layer < 0 || layer >= layers.size()) {
+            throw new IndexOutOfBoundsException("layer " + layer + " of " + layers.size());
+        }
+        if (live.size() > 0 || erasing) {
+            return;
+        }
+        activeLayer = layer;
+    }
+
+    public int getActiveLayer() {
+        return activeLayer;
+    }
+
+    public void setLayerVisible(int layer, boolean visible) {
+        layers.setVisible(layer, visible);
+        invalidate();
+    }
+
+    public boolean isLayerVisible(int layer) {
+        return layers.isVisible(layer);
+    }
+
+    /**
+     * Opacity the layer is composited with, 0 to 255.
+     */
+    public void setLayerOpacity(int layer, int opacity) {
+        layers.setOpacity(layer, opacity);
+        invalidate();
+    }
+
+    public int getLayerOpacity(int layer) {
+        return layers.getOpacity(layer);
+    }
+
+    public int getCanvasWidth() {
+        return canvasWidth > 0 ? canvasWidth : getWidth();
+    }
+
+    public int getCanvasHeight() {
+        return canvasHeight > 0 ? canvasHeight : getHeight();
+    }
+
+    @Override
+    public void scrollTo(int x, int y) {
+        super.scrollTo(clampScroll(x, getCanvasWidth(), getWidth()),
+                clampScroll(y, getCanvasHeight(), getHeight()));
+    }
+
+    /**
+     * Scales the canvas by {@code zoom}, clamped to {@link #MIN_ZOOM} and {@link #MAX_ZOOM},
+     * keeping the canvas point under the view point {@code focusX}, {@code focusY} in place.
+     */
+    public void setZoom(float zoom, float focusX, float focusY) {
+        zoom = Math.max(MIN_ZOOM, Math.min(zoom, MAX_ZOOM));
+        float canvasX = toCanvasX(focusX);
+        float canvasY = toCanvasY(focusY);
+        this.zoom = zoom;
+        scrollTo(Math.round(canvasX * zoom - focusX), Math.round(canvasY * zoom - focusY));
+        invalidate();
+    }
+
+    public float getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Scroll offset that keeps the zoomed canvas on screen; one smaller than the view is
+     * centered.
+     */
+    private int clampScroll(int scroll, int canvasSize, int viewSize) {
+        int size = Math.round(canvasSize * zoom);
+        if (size <= viewSize) {
+            return (size - viewSize) / 2;
+        }
+        return Math.max(0, Math.min(scroll, size - viewSize));
+    }
+
+    private float toCanvasX(float viewX) {
+        return (viewX + getScrollX()) / zoom;
+    }
+
+    private float toCanvasY(float viewY) {
+        return (viewY + getScrollY()) / zoom;
+    }
+
+    /**
+     * Touch samples closer than {@code minDistance} pixels to the previous kept point are
+     * skipped, and so are samples the stroke passes within {@code tolerance} pixels of
+     * anyway; zero for both keeps every sample.
+     */
+    public void setSmoothing(float minDistance, float tolerance) {
+        live.setTolerance(minDistance, tolerance);
+    }
+
+    /**
+     * Committed strokes are simplified in the background, dropping points that lie within
+     * {@code tolerance} pixels of the rest; 0 keeps them all.
+     */
+    public void setSimplifyTolerance(float tolerance) {
+        simplifier.setTolerance(tolerance);
+    }
+
+    /**
+     * In eraser mode touches remove the parts of strokes they pass over instead of drawing.
+     */
+    public void setEraserMode(boolean eraserMode) {
+        this.eraserMode = eraserMode;
+    }
+
+    public boolean isEraserMode() {
+        return eraserMode;
+    }
+
+    public void setEraserWidth(int eraserWidth) {
+        this.eraserWidth = eraserWidth;
+    }
+
+    public int getEraserWidth() {
+        return eraserWidth;
+    }
+
+    /**
+     * With multi-touch drawing every finger draws its own stroke, up to
+     * {@link PointerStrokes#MAX_POINTERS} at once, instead of two fingers zooming and
+     * panning the canvas.
+     */
+    public void setMultiTouchDrawing(boolean multiTouch) {
+        this.multiTouch = multiTouch;
+    }
+
+    public boolean isMultiTouchDrawing() {
+        return multiTouch;
     }
 
     public int getStrokeWidth() {
@@ -93,28 +486,239 @@ public class PaintView extends View {
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        float x = event.getX();
-        float y = event.getY();
-        switch (event.getAction()) {
+        if (playback != null && event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            // a tap ends the playback
+            stopPlayback();
+            return true;
+        }
+        if (frozen > 0) {
+            return false;
+        }
+        if (!multiTouch && onNavigationEvent(event)) {
+            return true;
+        }
+        if (eraserMode && sync != null && !erasing) {
+            // erasing is not shared with the other peers
+            return true;
+        }
+        if (eraserMode || erasing) {
+            // strokes live in canvas coordinates
+            return onEraserEvent(event, toCanvasX(event.getX()), toCanvasY(event.getY()));
+        }
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
-                Log.d(TAG, "onTouchEvent action down");
-                touchStart(x, y);
-                invalidate();
+            case MotionEvent.ACTION_POINTER_DOWN:
+                int down = event.getActionIndex();
+                touchStart(event.getPointerId(down), toCanvasX(event.getX(down)),
+                        toCanvasY(event.getY(down)), pointTime(event.getEventTime()));
+                if (metrics != null) {
+                    onInput(event, 1);
+                }
+                invalidateDirty();
+                sendLive();
                 return true;
             case MotionEvent.ACTION_MOVE:
-                Log.d(TAG, "onTouchEvent action move");
-                touchMove(x, y);
-                invalidate();
+                // fast strokes arrive batched, replay every sample before the current one
+                int historySize = event.getHistorySize();
+                int points = 0;
+                for (int p = 0; p < event.getPointerCount(); p++) {
+                    int pointerId = event.getPointerId(p);
+                    int slot = live.find(pointerId);
+                    if (slot < 0) {
+                        continue;
+                    }
+                    LivePath livePath = livePaths[slot];
+                    LivePath.include(dirty, livePath.lastX, livePath.lastY);
+                    for (int h = 0; h < historySize; h++) {
+                        touchMove(pointerId, livePath, toCanvasX(event.getHistoricalX(p, h)),
+                                toCanvasY(event.getHistoricalY(p, h)),
+                                pointTime(event.getHistoricalEventTime(h)));
+                    }
+                    touchMove(pointerId, livePath, toCanvasX(event.getX(p)),
+                            toCanvasY(event.getY(p)), pointTime(event.getEventTime()));
+                    livePath.update(live.getBuffer(slot), dirty);
+                    points += historySize + 1;
+                }
+                if (points > 0) {
+                    if (metrics != null) {
+                        onInput(event, points);
+                    }
+                    invalidateDirty();
+                    sendLive();
+                }
                 return true;
             case MotionEvent.ACTION_UP:
-                Log.d(TAG, "onTouchEvent action up");
-                touchEnd();
+            case MotionEvent.ACTION_POINTER_UP:
+                touchEnd(event.getPointerId(event.getActionIndex()));
+                invalidate();
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                for (int i = 0; sync != null && i < live.size(); i++) {
+                    if (!live.isEnded(live.getSlot(i))) {
+                        sync.cancel(syncIds[live.getSlot(i)]);
+                    }
+                }
+                live.cancel();
+                commitStrokes();
                 invalidate();
                 return true;
         }
         return super.onTouchEvent(event);
     }
 
+    private boolean onEraserEvent(MotionEvent event, float x, float y) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                invalidateListPath();
+                erasing = true;
+                eraseContinued = false;
+                eraserCount = 0;
+                addEraserPoint(x, y);
+                erase();
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (!erasing) {
+                    return true;
+                }
+                int historySize = event.getHistorySize();
+                for (int h = 0; h < historySize; h++) {
+                    addEraserPoint(toCanvasX(event.getHistoricalX(h)),
+                            toCanvasY(event.getHistoricalY(h)));
+                }
+                addEraserPoint(x, y);
+                erase();
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                // what was erased so far stays erased
+                endErase();
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    private void endErase() {
+        erasing = false;
+        compactHistory();
+        invalidate();
+        notifyListener();
+        applyDeferredFrames();
+    }
+
+    /**
+     * Two fingers pan and pinch-zoom the canvas. A stroke in progress when the second
+     * finger lands is dropped, an erase gesture ends there; the rest of the gesture only
+     * navigates.
+     */
+    private boolean onNavigationEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (!navigating) {
+                    if (live.size() > 0) {
+                        live.cancel();
+                        commitStrokes();
+                    } else if (erasing) {
+                        endErase();
+                    }
+                    navigating = true;
+                }
+                trackFingers(event, -1);
+                invalidate();
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (!navigating) {
+                    return false;
+                }
+                if (event.getPointerCount() > 1) {
+                    float canvasX = toCanvasX(focusX);
+                    float canvasY = toCanvasY(focusY);
+                    float lastSpan = span;
+                    trackFingers(event, -1);
+                    zoom = Math.max(MIN_ZOOM, Math.min(zoom * span / lastSpan, MAX_ZOOM));
+                    // the canvas point under the old focus follows the fingers
+                    scrollTo(Math.round(canvasX * zoom - focusX),
+                            Math.round(canvasY * zoom - focusY));
+                    invalidate();
+                }
+                return true;
+            case MotionEvent.ACTION_POINTER_UP:
+                if (navigating) {
+                    trackFingers(event, event.getActionIndex());
+                }
+                return navigating;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (navigating) {
+                    navigating = false;
+                    return true;
+                }
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * Takes the focus and span of the fingers down, leaving out the one at {@code skip}.
+     */
+    private void trackFingers(MotionEvent event, int skip) {
+        int count = event.getPointerCount();
+        float sumX = 0, sumY = 0;
+        int fingers = 0;
+        for (int i = 0; i < count; i++) {
+            if (i != skip) {
+                sumX += event.getX(i);
+                sumY += event.getY(i);
+                fingers++;
+            }
+        }
+        focusX = sumX / fingers;
+        focusY = sumY / fingers;
+        float distance = 0;
+        for (int i = 0; i < count; i++) {
+            if (i != skip) {
+                distance += Math.hypot(event.getX(i) - focusX, event.getY(i) - focusY);
+            }
+        }
+        // one finger left has no span, keep zooming from a nonzero one
+        span = Math.max(distance / fingers, 1);
+    }
+
+    private void addEraserPoint(float x, float y) {
+        if (eraserCount * 2 + 2 > eraserPath.length) {
+            eraserPath = Arrays.copyOf(eraserPath, eraserPath.length * 2);
+        }
+        eraserPath[eraserCount * 2] = x;
+        eraserPath[eraserCount * 2 + 1] = y;
+        eraserCount++;
+        lastX = x;
+        lastY = y;
+    }
+
+    /**
+     * Erases along the pending eraser positions. Everything one gesture erases is a single
+     * action for undo.
+     */
+    private void erase() {
+        int from = strokes.size();
+        if (eraser.erase(strokes, index, eraserPath, eraserCount, eraserWidth / 2f,
+                eraseContinued, activeLayer) > 0) {
+            position = strokes.size();
+            index.addAll(strokes);
+            eraseContinued = true;
+            if (journal != null) {
+                journal.appendErase(strokes, from, position, dropped);
+            }
+            for (int i = from; i < position; i++) {
+                lod.submit(i);
+            }
+            notifyListener();
+        }
+        eraserPath[0] = lastX;
+        eraserPath[1] = lastY;
+        eraserCount = 1;
+        invalidate();
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         int width = getSuggestedMinimumWidth() + getPaddingStart() + getPaddingEnd();
@@ -122,15 +726,176 @@ public class PaintView extends View {
         setMeasuredDimension(measureDimension(width, widthMeasureSpec), measureDimension(height, heightMeasureSpec));
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        createSurfaces(w, h);
+        scrollTo(getScrollX(), getScrollY());
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        Log.d(TAG, "size list = " + pathList.size());
-        canvas.drawColor(Color.WHITE);
-        for (int i = 0; i < position; i++) {
-            paint.setColor(colorList.get(i));
-            paint.setStrokeWidth(strokeWidthList.get(i));
-            canvas.drawPath(pathList.get(i),paint);
+        if (playback != null) {
+            drawPlayback(canvas);
+            return;
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        // the part of the canvas on screen, in canvas coordinates
+        int left = Math.max(0, (int) Math.floor(toCanvasX(0)));
+        int top = Math.max(0, (int) Math.floor(toCanvasY(0)));
+        int right = Math.min(getCanvasWidth(), (int) Math.ceil(toCanvasX(getWidth())));
+        int bottom = Math.min(getCanvasHeight(), (int) Math.ceil(toCanvasY(getHeight())));
+        if (getCanvasWidth() * zoom < getScrollX() + getWidth()
+                || getCanvasHeight() * zoom < getScrollY() + getHeight()
+                || getScrollX() < 0 || getScrollY() < 0) {
+            canvas.drawColor(Color.LTGRAY);
+        }
+        canvas.save();
+        canvas.scale(zoom, zoom);
+        canvas.clipRect(left, top, right, bottom);
+        canvas.drawRect(left, top, right, bottom, backgroundPaint);
+        // each layer is one blit of its raster; only layers with new entries replay any
+        int replayed = 0;
+        for (int layer = 0; layer < surfaces.size(); layer++) {
+            if (!layers.isVisible(layer)) {
+                continue;
+            }
+            int opacity = layers.getOpacity(layer);
+            int saved = opacity < 0xFF
+                    ? canvas.saveLayerAlpha(left, top, right, bottom, opacity)
+                    : -1;
+            replayed += surfaces.get(layer).draw(canvas, position, left, top, right, bottom,
+                    zoom);
+            // strokes of other peers and our own the relay has not ordered yet
+            for (int i = 0; sync != null && i < sync.size(); i++) {
+                StrokeStore buffer = sync.getBuffer(i);
+                if (buffer.getLayer(0) == layer) {
+                    livePaint.setColor(buffer.getColor(0));
+                    livePaint.setStrokeWidth(buffer.getWidth(0));
+                    syncPath.rewind();
+                    StrokeRenderer.appendPath(buffer.getCoords(), buffer.getOffset(0),
+                            buffer.getLength(0), syncPath);
+                    canvas.drawPath(syncPath, livePaint);
+                }
+            }
+            // strokes being drawn stack in the order they will be committed in
+            for (int i = 0; i < live.size(); i++) {
+                int slot = live.getSlot(i);
+                StrokeStore buffer = live.getBuffer(slot);
+                if (buffer.getLayer(0) == layer) {
+                    livePaint.setColor(buffer.getColor(0));
+                    livePaint.setStrokeWidth(buffer.getWidth(0));
+                    canvas.drawPath(livePaths[slot].path, livePaint);
+                    canvas.drawPath(livePaths[slot].tailPath, livePaint);
+                }
+            }
+            if (saved >= 0) {
+                canvas.restoreToCount(saved);
+            }
+        }
+        if (erasing) {
+            canvas.drawCircle(lastX, lastY, eraserWidth / 2f, eraserPaint);
+        }
+        canvas.restore();
+        if (metrics != null) {
+            metrics.onFrame(System.nanoTime() - start, replayed);
+            if (pendingEventTime >= 0) {
+                metrics.onTouchToDraw(SystemClock.uptimeMillis() - pendingEventTime);
+                pendingEventTime = -1;
+            }
+        }
+    }
+
+    /**
+     * Draws the time-lapse frame due now. Frames follow the clock, so when drawing falls
+     * behind the next frame skips the strokes it missed instead of slowing playback down.
+     */
+    private void drawPlayback(Canvas canvas) {
+        long elapsed = (long) ((SystemClock.uptimeMillis() - playbackStart) * playbackSpeed);
+        int time = (int) Math.min(elapsed, playback.getDuration());
+        canvas.save();
+        canvas.translate(getScrollX(), getScrollY());
+        playback.draw(canvas, time);
+        canvas.restore();
+        if (time < playback.getDuration()) {
+            postInvalidateOnAnimation();
+        } else {
+            stopPlayback();
+        }
+    }
+
+    /**
+     * Replays the visible drawing stroke by stroke in place of it, {@code speed} times as
+     * fast as it was drawn. Drawing is disabled until playback ends or is stopped.
+     */
+    public void startPlayback(float speed) {
+        if (playback != null || live.size() > 0 || erasing || restoring > 0
+                || getWidth() == 0) {
+            return;
+        }
+        playback = lockPlayback(getWidth(), getHeight(), lod);
+        playbackStart = SystemClock.uptimeMillis();
+        playbackSpeed = speed;
+        invalidate();
+    }
+
+    public void stopPlayback() {
+        if (playback == null) {
+            return;
+        }
+        // the last frame may still reference the layer bitmaps, they are left to the gc
+        unlockPlayback(null);
+        playback = null;
+        invalidate();
+    }
+
+    public boolean isPlayingBack() {
+        return playback != null;
+    }
+
+    /**
+     * Renderer of the visible drawing in {@code width} x {@code height} frames, which may be
+     * used on a background thread. The strokes are read in place, so the view ignores
+     * touches and keeps its history until {@link #unlockPlayback(PlaybackRenderer)} is
+     * called. Returns null while a stroke is being drawn or the bases are being restored.
+     */
+    public PlaybackRenderer lockPlayback(int width, int height) {
+        if (live.size() > 0 || erasing || restoring > 0) {
+            return null;
+        }
+        return lockPlayback(width, height, null);
+    }
+
+    private PlaybackRenderer lockPlayback(int width, int height, StrokeLod lod) {
+        invalidateListPath();
+        // simplified points would be written into strokes the renderer is reading
+        simplifier.invalidate();
+        BaseLayer[] bases = new BaseLayer[surfaces.size()];
+        for (int layer = 0; layer < bases.length; layer++) {
+            bases[layer] = surfaces.get(layer).getBase();
+        }
+        frozen++;
+        return new PlaybackRenderer(strokes, position, layers.copy(), bases, getCanvasWidth(),
+                getCanvasHeight(), width, height, lod);
+    }
+
+    /**
+     * Lets the view change its strokes again once the renderer from
+     * {@link #lockPlayback(int, int)} is no longer used, and releases it if not null.
+     */
+    public void unlockPlayback(PlaybackRenderer renderer) {
+        if (renderer != null) {
+            renderer.release();
+        }
+        unfreeze();
+    }
+
+    void unfreeze() {
+        if (--frozen == 0) {
+            compactHistory();
+            notifyListener();
+            applyDeferredFrames();
         }
     }
 
@@ -139,10 +904,29 @@ public class PaintView extends View {
     protected Parcelable onSaveInstanceState() {
         Parcelable savedState = super.onSaveInstanceState();
         SavedState ss = new SavedState(savedState);
-        ss.savedList = pathList;
-        ss.savedPosition = position;
-        ss.savedColorList = colorList;
-        ss.savedStrokeWidthList = strokeWidthList;
+        ss.dropped = dropped;
+        ss.activeLayer = activeLayer;
+        ss.zoom = zoom;
+        ss.visible = new boolean[layers.size()];
+        ss.opacity = new int[layers.size()];
+        ss.baseFiles = new String[layers.size()];
+        for (int layer = 0; layer < layers.size(); layer++) {
+            ss.visible[layer] = layers.isVisible(layer);
+            ss.opacity[layer] = layers.getOpacity(layer);
+            ss.baseFiles[layer] = baseFiles.getPath(layer);
+        }
+        byte[] data = StrokeCodec.encode(strokes, position);
+        if (data.length > MAX_PARCEL_STATE) {
+            File file = new File(getContext().getCacheDir(), "paint_state_" + getId() + ".bin");
+            try {
+                ByteFiles.write(file, data, data.length);
+                ss.savedFile = file.getAbsolutePath();
+                return ss;
+            } catch (IOException e) {
+                Log.w(TAG, "can't write state to " + file, e);
+            }
+        }
+        ss.savedData = data;
         return ss;
     }
 
@@ -150,10 +934,43 @@ public class PaintView extends View {
     protected void onRestoreInstanceState(Parcelable state) {
         SavedState savedState = (SavedState) state;
         super.onRestoreInstanceState(savedState.getSuperState());
-        pathList = savedState.savedList;
-        colorList = savedState.savedColorList;
-        position = savedState.savedPosition;
-        strokeWidthList = savedState.savedStrokeWidthList;
+        try {
+            byte[] data = savedState.savedFile != null
+                    ? ByteFiles.read(new File(savedState.savedFile))
+                    : savedState.savedData;
+            position = StrokeCodec.decode(data, 0, data.length, strokes);
+            resetLayers();
+            layers.ensureSize(savedState.baseFiles.length);
+            ensureSurfaces();
+            for (int layer = 0; layer < savedState.baseFiles.length; layer++) {
+                layers.setVisible(layer, savedState.visible[layer]);
+                layers.setOpacity(layer, savedState.opacity[layer]);
+                if (savedState.baseFiles[layer] != null) {
+                    final LayerSurface surface = surfaces.get(layer);
+                    restoring++;
+                    baseFiles.read(layer, savedState.baseFiles[layer], surface.getBase(),
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    restoring--;
+                                    surface.reset();
+                                    invalidate();
+                                    compactHistory();
+                                }
+                            });
+                }
+            }
+            activeLayer = Math.min(savedState.activeLayer, layers.size() - 1);
+            zoom = Math.max(MIN_ZOOM, Math.min(savedState.zoom, MAX_ZOOM));
+            dropped = savedState.dropped;
+        } catch (IOException e) {
+            Log.w(TAG, "can't restore drawing", e);
+            strokes.clear();
+            position = 0;
+            resetLayers();
+            dropped = 0;
+        }
+        resetSurfaces();
         notifyListener();
     }
 
@@ -174,45 +991,362 @@ public class PaintView extends View {
         return result;
     }
 
+    /**
+     * Back to a single empty layer, before the strokes are replaced wholesale.
+     */
+    private void resetLayers() {
+        layers.reset();
+        activeLayer = 0;
+        for (int layer = surfaces.size() - 1; layer >= 0; layer--) {
+            surfaces.get(layer).getBase().clear();
+            if (layer > 0) {
+                surfaces.remove(layer).release();
+            }
+        }
+        baseFiles.reset();
+        restoring = 0;
+        updateBudgets();
+    }
+
+    /**
+     * Adds the layers the strokes refer to but the view has no surface for yet.
+     */
+    private void ensureSurfaces() {
+        layers.ensureSize(strokes.getLayerCount());
+        while (surfaces.size() < layers.size()) {
+            addSurface();
+        }
+    }
+
+    private void addSurface() {
+        LayerSurface surface = new LayerSurface(surfaces.size(), strokes, index, lod,
+                checkpointInterval, 0);
+        surfaces.add(surface);
+        if (getWidth() > 0 && getHeight() > 0) {
+            surface.create(getWidth(), getHeight(), getCanvasWidth(), getCanvasHeight(), 0);
+        }
+        updateBudgets();
+    }
+
+    /**
+     * Splits the checkpoint and tile budgets evenly between the layers.
+     */
+    private void updateBudgets() {
+        for (LayerSurface surface : surfaces) {
+            surface.setCheckpointPolicy(checkpointInterval,
+                    checkpointBudgetKb * 1024L / surfaces.size());
+            surface.setTileBudget(tileBudgetKb * 1024L / surfaces.size());
+        }
+    }
+
+    private void createSurfaces(int viewWidth, int viewHeight) {
+        for (LayerSurface surface : surfaces) {
+            surface.create(viewWidth, viewHeight, getCanvasWidth(), getCanvasHeight(),
+                    tileBudgetKb * 1024L / surfaces.size());
+        }
+    }
+
+    /**
+     * Forgets everything rasterized after the strokes were replaced wholesale.
+     */
+    private void resetSurfaces() {
+        simplifier.invalidate();
+        live.clear();
+        erasing = false;
+        index.clear();
+        index.addAll(strokes);
+        lod.clear();
+        for (int i = 0; i < strokes.size(); i++) {
+            lod.submit(i);
+        }
+        ensureSurfaces();
+        for (LayerSurface surface : surfaces) {
+            surface.reset();
+        }
+    }
+
+    /**
+     * Flattens the entries the history policy no longer keeps into the base of their layer
+     * and drops them, renumbering everything that refers to entries by index.
+     */
+    private void compactHistory() {
+        if (frozen > 0 || restoring > 0) {
+            return;
+        }
+        int count = history.horizon(strokes, position);
+        if (count == 0) {
+            return;
+        }
+        for (int layer = 0; layer < surfaces.size(); layer++) {
+            surfaces.get(layer).flatten(count);
+            baseFiles.update(layer, surfaces.get(layer).getBase());
+        }
+        simplifier.invalidate();
+        strokes.dropFirst(count);
+        position -= count;
+        dropped += count;
+        index.clear();
+        index.addAll(strokes);
+        lod.dropFirst(count);
+        for (LayerSurface surface : surfaces) {
+            surface.dropFirst(count);
+        }
+    }
+
     private void init() {
         paint = new Paint();
         paint.setColor(Color.BLACK);
         paint.setStrokeWidth(DEFAULT_STROKE_WIDTH);
         paint.setAntiAlias(true);
         paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        livePaint = new Paint(paint);
+        owner = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                post(command);
+            }
+        };
+        simplifier = new BackgroundSimplifier(strokes, owner);
+        lod = new StrokeLod(strokes, owner);
+        simplifier.setTolerance(simplifyTolerance);
+        eraserPaint = new Paint();
+        eraserPaint.setColor(Color.GRAY);
+        eraserPaint.setStrokeWidth(2);
+        eraserPaint.setAntiAlias(true);
+        eraserPaint.setStyle(Paint.Style.STROKE);
+        backgroundPaint = new Paint();
+        backgroundPaint.setColor(Color.WHITE);
+        baseFiles = new BaseLayerFiles(getContext().getCacheDir(), "paint_base_" + getId() + "_",
+                owner);
+        addSurface();
+    }
+
+    private int pointTime(long eventTime) {
+        return (int) (eventTime - clockOrigin);
+    }
+
+    private void touchStart(int pointerId, float x, float y, int time) {
+        invalidateListPath();
+        int slot = live.begin(pointerId, paint.getColor(), strokeWidth, activeLayer, x, y,
+                time);
+        if (slot < 0) {
+            return;
+        }
+        if (livePaths[slot] == null) {
+            livePaths[slot] = new LivePath();
+        }
+        livePaths[slot].begin(x, y);
+        LivePath.include(dirty, x, y);
+        if (sync != null) {
+            syncIds[slot] = sync.begin(live.getBuffer(slot));
+        }
+    }
+
+    private void touchMove(int pointerId, LivePath livePath, float x, float y, int time) {
+        live.add(pointerId, x, y, time);
+        LivePath.include(dirty, x, y);
+        livePath.lastX = x;
+        livePath.lastY = y;
+    }
+
+    private void onInput(MotionEvent event, int points) {
+        metrics.onPointsIngested(points, event.getEventTime());
+        if (pendingEventTime < 0) {
+            pendingEventTime = event.getEventTime();
+        }
+    }
+
+    private void invalidateDirty() {
+        if (dirty.left > dirty.right) {
+            return;
+        }
+        int width = 0;
+        for (int i = 0; i < live.size(); i++) {
+            width = Math.max(width, live.getBuffer(live.getSlot(i)).getWidth(0));
+        }
+        float pad = width / 2f + 2;
+        invalidate((int) Math.floor((dirty.left - pad) * zoom),
+                (int) Math.floor((dirty.top - pad) * zoom),
+                (int) Math.ceil((dirty.right + pad) * zoom),
+                (int) Math.ceil((dirty.bottom + pad) * zoom));
+        // each pointer's next batch starts from its last sample, see onTouchEvent
+        dirty.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    }
+
+    private void touchEnd(int pointerId) {
+        int slot = live.end(pointerId);
+        if (slot < 0) {
+            return;
+        }
+        // a stroke waiting for an earlier one keeps being drawn live, with its last point
+        livePaths[slot].update(live.getBuffer(slot), dirty);
+        commitStrokes();
+    }
+
+    /**
+     * Moves the finished strokes that no longer wait for an earlier one into the drawing.
+     */
+    private void commitStrokes() {
+        if (sync != null) {
+            // finished strokes wait for the relay to order them among those of the others
+            for (int slot = live.poll(); slot >= 0; slot = live.poll()) {
+                sync.end(syncIds[slot], live.getBuffer(slot));
+            }
+            syncClient.send(sync.takeOutgoing());
+            if (sync.getReady() == 0) {
+                return;
+            }
+        }
+        invalidateListPath();
+        int from = strokes.size();
+        int count = sync != null ? sync.commit(strokes) : live.commit(strokes);
+        if (count == 0) {
+            return;
+        }
+        if (sync != null) {
+            // other peers may draw on layers we do not have yet
+            ensureSurfaces();
+        }
+        position = strokes.size();
+        index.addAll(strokes);
+        for (int i = from; i < position; i++) {
+            if (journal != null) {
+                journal.appendStroke(strokes, i);
+            }
+            lod.submit(i);
+        }
+        compactHistory();
+        for (int i = Math.max(0, position - count); i < position; i++) {
+            simplifier.submit(i);
+        }
+        notifyListener();
+    }
 
+    /**
+     * Shares the points the live strokes got since the last call, at most one message per
+     * stroke and one write per touch event.
+     */
+    private void sendLive() {
+        if (sync == null) {
+            return;
+        }
+        for (int i = 0; i < live.size(); i++) {
+            int slot = live.getSlot(i);
+            if (!live.isEnded(slot)) {
+                sync.update(syncIds[slot], live.getBuffer(slot));
+            }
+        }
+        syncClient.send(sync.takeOutgoing());
     }
 
-    private void touchStart(float x, float y) {
+    /**
+     * Starts drawing together with the other peers of the relay at host:port. Strokes are
+     * shared as they are drawn and every peer commits them in the order the relay saw
+     * them finish. Erasing, clearing, undo and redo are not shared, so they are off until
+     * the session ends and what could be redone is dropped: the history only grows by
+     * the strokes every peer commits alike.
+     */
+    public void startSync(String host, int port) {
+        if (sync != null) {
+            return;
+        }
         invalidateListPath();
-        path = new SerializablePath();
-        pathList.add(path);
-        colorList.add(paint.getColor());
-        strokeWidthList.add(strokeWidth);
-        position++;
-        path.reset();
-        path.moveTo(x, y);
+        sync = new StrokeSync();
+        sync.setLayerLimit(Math.max(MAX_LAYERS, layers.size()));
+        syncClient = new SyncClient(owner, new SyncClient.Listener() {
+            @Override
+            public void onFrame(byte[] payload) {
+                if (frozen > 0 || erasing) {
+                    deferredFrames.add(payload);
+                } else {
+                    applyFrame(payload);
+                }
+            }
+
+            @Override
+            public void onDisconnected(IOException e) {
+                Log.w(TAG, "sync disconnected", e);
+                stopSync();
+            }
+        });
+        syncClient.connect(host, port);
+        notifyListener();
+    }
+
+    /**
+     * Leaves the session; finished strokes still waiting for the relay are committed in
+     * the order they were drawn, those of the others that were being drawn are dropped.
+     */
+    public void stopSync() {
+        if (sync == null || syncStopping) {
+            return;
+        }
+        syncClient.close();
+        if (frozen > 0 || erasing) {
+            syncStopping = true;
+            return;
+        }
+        finishSync();
     }
 
-    private void touchMove(float x, float y) {
-        path.lineTo(x, y);
+    public boolean isSyncing() {
+        return sync != null && !syncStopping;
     }
 
-    private void touchEnd() {
+    private void finishSync() {
+        deferredFrames.clear();
+        sync.detach();
+        commitStrokes();
+        sync = null;
+        syncClient = null;
+        syncStopping = false;
+        invalidate();
         notifyListener();
     }
 
+    private void applyFrame(byte[] payload) {
+        try {
+            sync.receive(payload);
+        } catch (IOException e) {
+            Log.w(TAG, "bad sync frame", e);
+            stopSync();
+            return;
+        }
+        commitStrokes();
+        invalidate();
+    }
+
+    private void applyDeferredFrames() {
+        for (int i = 0; sync != null && i < deferredFrames.size(); i++) {
+            applyFrame(deferredFrames.get(i));
+        }
+        deferredFrames.clear();
+        if (syncStopping) {
+            finishSync();
+        }
+    }
+
     private void notifyListener() {
         if (listener != null) {
             listener.onUndo(isUndo());
-            listener.onClear(isClear());
+            // clearing is off while drawing together, like for a clear canvas
+            listener.onClear(isClear() || sync != null);
             listener.onRedo(isRedo());
         }
     }
 
     private void invalidateListPath() {
-        if (position < pathList.size()) {
-            pathList.subList(position, pathList.size()).clear();
+        if (position < strokes.size()) {
+            for (LayerSurface surface : surfaces) {
+                surface.truncate(position);
+            }
+            simplifier.truncate(position);
+            lod.truncate(position);
+            index.truncate(strokes, position);
+            strokes.truncate(position);
         }
     }
 
@@ -220,11 +1354,34 @@ public class PaintView extends View {
         this.paint.setColor(paintColor);
     }
 
+    /**
+     * The visible drawing, to be copied on a background thread; the view ignores touches
+     * and keeps its history until {@link DrawingSnapshot#release()} is called. Returns null
+     * while a stroke is being drawn or the bases are being restored.
+     */
+    public DrawingSnapshot lockSnapshot() {
+        if (live.size() > 0 || erasing || restoring > 0) {
+            return null;
+        }
+        // simplified points would be written into strokes the copy is reading
+        simplifier.invalidate();
+        BaseLayer[] bases = new BaseLayer[surfaces.size()];
+        for (int layer = 0; layer < bases.length; layer++) {
+            bases[layer] = surfaces.get(layer).getBase();
+        }
+        frozen++;
+        return new DrawingSnapshot(this, strokes, position, layers.copy(), bases,
+                getCanvasWidth(), getCanvasHeight());
+    }
+
     public int getCurrentColor() {
-        if (colorList.size()<1){
-            return Color.BLACK;
+        // pieces left by the eraser keep the color of the stroke they came from
+        for (int i = strokes.size() - 1; i >= 0; i--) {
+            if (!strokes.isErase(i) && !strokes.isContinued(i)) {
+                return strokes.getColor(i);
+            }
         }
-        return colorList.get(colorList.size()-1);
+        return Color.BLACK;
     }
 
 
@@ -250,18 +1407,27 @@ public class PaintView extends View {
                         return new SavedState[size];
                     }
                 };
-        List<SerializablePath> savedList;
-        List<Integer> savedColorList;
-        List<Integer> savedStrokeWidthList;
-        int savedPosition;
+        // either the encoded drawing or the path of the cache file holding it
+        byte[] savedData;
+        String savedFile;
+        // the flattened strokes of each layer, kept in a cache file when there are any
+        String[] baseFiles;
+        int dropped;
+        boolean[] visible;
+        int[] opacity;
+        int activeLayer;
+        float zoom = 1;
 
         public SavedState(Parcel source) {
             super(source);
-            source.readList(savedList, null);
-            source.readList(savedColorList,null);
-            source.readList(savedStrokeWidthList,null);
-            savedPosition = source.readInt();
-
+            savedFile = source.readString();
+            savedData = source.createByteArray();
+            baseFiles = source.createStringArray();
+            dropped = source.readInt();
+            visible = source.createBooleanArray();
+            opacity = source.createIntArray();
+            activeLayer = source.readInt();
+            zoom = source.readFloat();
         }
 
         public SavedState(Parcelable savedState) {
@@ -271,13 +1437,14 @@ public class PaintView extends View {
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
-            out.writeList(savedList);
-            out.writeList(savedColorList);
-            out.writeList(savedStrokeWidthList);
-            out.writeInt(savedPosition);
+            out.writeString(savedFile);
+            out.writeByteArray(savedData);
+            out.writeStringArray(baseFiles);
+            out.writeInt(dropped);
+            out.writeBooleanArray(visible);
+            out.writeIntArray(opacity);
+            out.writeInt(activeLayer);
+            out.writeFloat(zoom);
         }
     }
-
-    static class SerializablePath extends Path implements Serializable {
-    }
 }
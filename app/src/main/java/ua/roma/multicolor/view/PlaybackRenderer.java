@@ -0,0 +1,205 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+
+import java.util.Arrays;
+
+import ua.roma.multicolor.history.PlaybackTimeline;
+import ua.roma.multicolor.model.Layers;
+import ua.roma.multicolor.model.StrokeLod;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Draws a drawing as it was at a time of its {@link PlaybackTimeline}, scaled to fit a
+ * {@code width} x {@code height} frame. Every layer is rasterized into a frame sized bitmap
+ * as playback moves forward, so a frame only draws the entries reached since the one
+ * before, plus the part of the stroke being drawn. Passing an erase redraws the layer it
+ * erased on, a clear or going back redraws them all.
+ *
+ * <p>The strokes and the bases are read in place and must not change while the renderer
+ * is in use; it may be used from any one thread.
+ */
+public class PlaybackRenderer {
+
+    private final StrokeStore strokes;
+    private final PlaybackTimeline timeline;
+    private final Layers layers;
+    private final BaseLayer[] bases;
+    private final int canvasWidth, canvasHeight;
+    private final int width, height;
+    // canvas to frame transform
+    private final float scale, left, top;
+    private final Bitmap[] bitmaps;
+    private final Canvas[] canvases;
+    // layers an erase passed since the last frame, to be drawn from scratch
+    private final boolean[] stale;
+    private final StrokeRenderer renderer = new StrokeRenderer();
+    private final Paint paint = new Paint();
+    private final Paint backgroundPaint = new Paint();
+    private final Path path = new Path();
+    // entries rasterized into the layer bitmaps
+    private int shown;
+
+    /**
+     * Replays the first {@code end} entries of {@code strokes} over the flattened
+     * {@code bases}, composited as {@code layers} say. {@code lod} may be null, and must
+     * be when the renderer is used off the thread that owns it.
+     */
+    public PlaybackRenderer(StrokeStore strokes, int end, Layers layers, BaseLayer[] bases,
+                            int canvasWidth, int canvasHeight, int width, int height,
+                            StrokeLod lod) {
+        this.strokes = strokes;
+        this.layers = layers;
+        this.bases = bases;
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.width = width;
+        this.height = height;
+        timeline = new PlaybackTimeline(strokes, end);
+        scale = Math.min(width / (float) canvasWidth, height / (float) canvasHeight);
+        left = (width - canvasWidth * scale) / 2;
+        top = (height - canvasHeight * scale) / 2;
+        bitmaps = new Bitmap[layers.size()];
+        canvases = new Canvas[layers.size()];
+        stale = new boolean[layers.size()];
+        renderer.setScale(scale, lod);
+        paint.setAntiAlias(true);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        backgroundPaint.setColor(Color.WHITE);
+        for (int layer = 0; layer < bitmaps.length; layer++) {
+            redraw(layer, 0);
+        }
+    }
+
+    /**
+     * Milliseconds of playback at normal speed.
+     */
+    public int getDuration() {
+        return timeline.getDuration();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Draws the frame at playback time {@code time} with its top left corner at 0, 0.
+     */
+    public void draw(Canvas target, int time) {
+        int position = timeline.positionAt(time);
+        advance(position);
+        float right = left + canvasWidth * scale;
+        float bottom = top + canvasHeight * scale;
+        target.drawColor(Color.LTGRAY);
+        target.drawRect(left, top, right, bottom, backgroundPaint);
+        int partial = position < timeline.getEnd() ? timeline.pointsAt(position, time) : 0;
+        for (int layer = 0; layer < bitmaps.length; layer++) {
+            if (!layers.isVisible(layer)) {
+                continue;
+            }
+            int opacity = layers.getOpacity(layer);
+            int saved = opacity < 0xFF
+                    ? target.saveLayerAlpha(left, top, right, bottom, opacity)
+                    : -1;
+            if (bitmaps[layer] != null) {
+                target.drawBitmap(bitmaps[layer], 0, 0, null);
+            }
+            if (partial > 0 && strokes.getLayer(position) == layer) {
+                paint.setColor(strokes.getColor(position));
+                paint.setStrokeWidth(strokes.getWidth(position));
+                path.rewind();
+                StrokeRenderer.appendPath(strokes.getCoords(), strokes.getOffset(position),
+                        partial, path);
+                target.save();
+                target.translate(left, top);
+                target.scale(scale, scale);
+                target.drawPath(path, paint);
+                target.restore();
+            }
+            if (saved >= 0) {
+                target.restoreToCount(saved);
+            }
+        }
+    }
+
+    public void release() {
+        for (int layer = 0; layer < bitmaps.length; layer++) {
+            if (bitmaps[layer] != null) {
+                bitmaps[layer].recycle();
+                bitmaps[layer] = null;
+            }
+        }
+    }
+
+    /**
+     * Brings the layer bitmaps to history position {@code position}.
+     */
+    private void advance(int position) {
+        if (position == shown) {
+            return;
+        }
+        boolean all = position < shown;
+        for (int i = shown; i < position && !all; i++) {
+            if (strokes.isClear(i)) {
+                all = true;
+            } else if (strokes.isErase(i)) {
+                stale[strokes.getLayer(i)] = true;
+            }
+        }
+        if (all) {
+            Arrays.fill(stale, true);
+        } else {
+            for (int i = shown; i < position; i++) {
+                int layer = strokes.getLayer(i);
+                if (!stale[layer] && strokes.isVisible(i, position)) {
+                    renderer.queue(obtain(layer), strokes, i);
+                }
+            }
+            renderer.flush();
+        }
+        for (int layer = 0; layer < stale.length; layer++) {
+            if (stale[layer]) {
+                redraw(layer, position);
+                stale[layer] = false;
+            }
+        }
+        shown = position;
+    }
+
+    /**
+     * Draws {@code layer} from scratch as it is at {@code position}.
+     */
+    private void redraw(int layer, int position) {
+        boolean empty = bases[layer] == null || bases[layer].isEmpty();
+        if (bitmaps[layer] == null && empty && position == 0) {
+            return;
+        }
+        Canvas canvas = obtain(layer);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        if (!empty && strokes.getVisibleStart(position) == 0) {
+            bases[layer].draw(canvas, 0, 0, canvasWidth, canvasHeight);
+        }
+        renderer.draw(canvas, strokes, 0, position, layer);
+    }
+
+    private Canvas obtain(int layer) {
+        if (bitmaps[layer] == null) {
+            bitmaps[layer] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            canvases[layer] = new Canvas(bitmaps[layer]);
+            canvases[layer].translate(left, top);
+            canvases[layer].scale(scale, scale);
+        }
+        return canvases[layer];
+    }
+}
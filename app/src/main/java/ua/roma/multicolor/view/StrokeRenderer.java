@@ -0,0 +1,175 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import ua.roma.multicolor.model.StrokeLod;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Draws strokes of a {@link StrokeStore}, building each {@link Path} on demand into a
+ * single reused instance. Strokes are drawn as quadratic curves through the midpoints of
+ * their segments, with the points in between as control points, so the few points the
+ * {@link ua.roma.multicolor.model.StrokeSmoother} keeps still give round strokes.
+ *
+ * <p>Strokes passed to {@link #queue} are batched: a run of consecutive opaque strokes of
+ * the same color and width goes into one path and one draw call when the style changes or
+ * {@link #flush()} is called. Translucent strokes are drawn one by one, so that where they
+ * overlap they still blend like separate strokes.
+ *
+ * <p>Drawing zoomed out, see {@link #setScale}, skips strokes smaller than a pixel and
+ * takes the others from their {@link StrokeLod} level where it is built.
+ */
+public class StrokeRenderer {
+
+    // bounds the path a batch builds; longer runs take several draw calls
+    private static final int MAX_BATCH_POINTS = 8192;
+    // strokes whose bounds stay below this many pixels at the current scale are skipped
+    private static final float CULL_PIXELS = 1;
+
+    private final Paint paint;
+    private final Path path = new Path();
+    private final Path batch = new Path();
+    private Canvas batchCanvas;
+    private int batchColor;
+    private int batchWidth;
+    private int batchPoints;
+    private int batchStrokes;
+    private float scale = 1;
+    private StrokeLod lod;
+    private int level;
+
+    public StrokeRenderer() {
+        paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+    }
+
+    /**
+     * Strokes are drawn onto a canvas scaled by {@code scale}; below 1 tiny strokes are
+     * skipped and the geometry comes from {@code lod}, which may be null.
+     */
+    public void setScale(float scale, StrokeLod lod) {
+        this.scale = scale;
+        this.lod = lod;
+        level = lod != null ? StrokeLod.levelFor(scale) : 0;
+    }
+
+    /**
+     * Draws the strokes between {@code from} and {@code to} that show at position
+     * {@code to}.
+     */
+    public void draw(Canvas canvas, StrokeStore store, int from, int to) {
+        draw(canvas, store, from, to, -1);
+    }
+
+    /**
+     * Like {@link #draw(Canvas, StrokeStore, int, int)} but only the strokes on
+     * {@code layer}; -1 draws all layers.
+     */
+    public void draw(Canvas canvas, StrokeStore store, int from, int to, int layer) {
+        for (int i = Math.max(from, store.getVisibleStart(to)); i < to; i++) {
+            if (store.isVisible(i, to) && (layer < 0 || store.getLayer(i) == layer)) {
+                queue(canvas, store, i);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Draws {@code stroke} now or adds it to the pending batch. Anything drawn on
+     * {@code canvas} by other means, and any change to its clip or matrix, must wait for
+     * {@link #flush()}.
+     */
+    public void queue(Canvas canvas, StrokeStore store, int stroke) {
+        int color = store.getColor(stroke);
+        int width = store.getWidth(stroke);
+        if (scale < 1 && (Math.max(store.getRight(stroke) - store.getLeft(stroke),
+                store.getBottom(stroke) - store.getTop(stroke)) + width) * scale < CULL_PIXELS) {
+            return;
+        }
+        int length = store.getLength(stroke);
+        if (batchStrokes > 0 && (canvas != batchCanvas || color != batchColor
+                || width != batchWidth || batchPoints + length > MAX_BATCH_POINTS)) {
+            flush();
+        }
+        if (color >>> 24 != 0xFF) {
+            drawStroke(canvas, store, stroke);
+            return;
+        }
+        batchCanvas = canvas;
+        batchColor = color;
+        batchWidth = width;
+        appendScaledPath(store, stroke, batch);
+        batchPoints += length;
+        batchStrokes++;
+    }
+
+    /**
+     * Draws the pending batch.
+     */
+    public void flush() {
+        if (batchStrokes == 0) {
+            return;
+        }
+        paint.setColor(batchColor);
+        paint.setStrokeWidth(batchWidth);
+        batchCanvas.drawPath(batch, paint);
+        batch.rewind();
+        batchCanvas = null;
+        batchPoints = 0;
+        batchStrokes = 0;
+    }
+
+    public void drawStroke(Canvas canvas, StrokeStore store, int stroke) {
+        paint.setColor(store.getColor(stroke));
+        paint.setStrokeWidth(store.getWidth(stroke));
+        path.rewind();
+        appendScaledPath(store, stroke, path);
+        canvas.drawPath(path, paint);
+    }
+
+    private void appendScaledPath(StrokeStore store, int stroke, Path out) {
+        int length = lod != null ? lod.getLength(stroke, level) : 0;
+        if (length > 0) {
+            appendPath(lod.getCoords(), lod.getOffset(stroke, level), length, out);
+        } else {
+            appendPath(store, stroke, out);
+        }
+    }
+
+    public static void buildPath(StrokeStore store, int stroke, Path out) {
+        out.rewind();
+        appendPath(store, stroke, out);
+    }
+
+    /**
+     * Adds the curve of {@code stroke} to {@code out} as a new contour.
+     */
+    public static void appendPath(StrokeStore store, int stroke, Path out) {
+        appendPath(store.getCoords(), store.getOffset(stroke), store.getLength(stroke), out);
+    }
+
+    /**
+     * Adds the curve through {@code length} points of {@code coords} starting at point
+     * {@code offset} to {@code out} as a new contour.
+     */
+    public static void appendPath(float[] coords, int offset, int length, Path out) {
+        if (length == 0) {
+            return;
+        }
+        int index = offset * 2;
+        int end = index + length * 2;
+        out.moveTo(coords[index], coords[index + 1]);
+        for (index += 2; index < end - 2; index += 2) {
+            out.quadTo(coords[index], coords[index + 1], (coords[index] + coords[index + 2]) / 2,
+                    (coords[index + 1] + coords[index + 3]) / 2);
+        }
+        if (length > 1) {
+            out.lineTo(coords[end - 2], coords[end - 1]);
+        }
+    }
+}
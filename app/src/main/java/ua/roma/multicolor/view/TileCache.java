@@ -0,0 +1,353 @@
+package ua.roma.multicolor.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import ua.roma.multicolor.model.IntList;
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeLod;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Backing store for canvases larger than the view. The canvas is split into square tiles
+ * that are rasterized only when they become visible and kept in an LRU list bounded by a
+ * byte budget. Each tile remembers how many strokes it already holds, so new strokes are
+ * drawn into it incrementally and an evicted tile is simply re-rendered from the strokes
+ * the {@link StrokeGrid} finds under it. A cache holds the strokes of one layer on a
+ * transparent background.
+ *
+ * <p>A cache of level {@code k} holds the canvas at scale {@code 1 / 2^k}, each tile
+ * covering {@code 2^k} times as much of it, for drawing zoomed out or, with negative
+ * levels, zoomed in. Zoomed out, strokes come from their {@link StrokeLod} level and those
+ * smaller than a pixel are skipped.
+ */
+public class TileCache {
+
+    public static final int TILE_SIZE = 256;
+    private static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+    // catching up on more strokes than this asks the grid instead of testing each one
+    private static final int MAX_SCAN = 32;
+
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    private final Tile[] grid;
+    private final int level;
+    // tile pixels per canvas pixel, and canvas pixels a tile covers
+    private final float scale;
+    private final float span;
+    private final RectF target = new RectF();
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final StrokeGrid index;
+    private final BaseLayer base;
+    private final int layer;
+    private final IntList hits = new IntList();
+    private final StrokeRenderer renderer = new StrokeRenderer();
+    private long budget;
+    // most recently used tile first
+    private Tile head, tail;
+    private int count;
+    private int frame;
+
+    /**
+     * @param index kept up to date with every committed stroke by the caller
+     * @param base   drawn under the strokes whenever a tile is redrawn from scratch
+     * @param layer  the layer whose strokes the tiles hold
+     * @param lod    levels of the strokes for drawing zoomed out, may be null
+     */
+    public TileCache(int width, int height, long budget, StrokeGrid index, BaseLayer base,
+                     int layer, int level, StrokeLod lod) {
+        this.width = width;
+        this.index = index;
+        this.base = base;
+        this.layer = layer;
+        this.height = height;
+        this.budget = budget;
+        this.level = level;
+        scale = (float) Math.scalb(1.0, -level);
+        span = TILE_SIZE / scale;
+        columns = (int) Math.ceil(width / span);
+        rows = (int) Math.ceil(height / span);
+        grid = new Tile[columns * rows];
+        renderer.setScale(scale, lod);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    public long getUsedBytes() {
+        return count * TILE_BYTES;
+    }
+
+    /**
+     * Draws the tiles covering the given area of {@code canvas}, which is in canvas
+     * coordinates, bringing each one up to the first {@code committed} strokes. Returns the
+     * number of strokes rasterized.
+     */
+    public int draw(Canvas canvas, StrokeStore strokes, int committed, int left, int top,
+                    int right, int bottom) {
+        frame++;
+        int replayed = 0;
+        int firstColumn = Math.max(0, (int) (left / span));
+        int lastColumn = Math.min(columns - 1, (int) Math.ceil(right / span) - 1);
+        int firstRow = Math.max(0, (int) (top / span));
+        int lastRow = Math.min(rows - 1, (int) Math.ceil(bottom / span) - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Tile tile = obtain(column, row);
+                replayed += update(tile, strokes, committed);
+                if (level == 0) {
+                    canvas.drawBitmap(tile.bitmap, column * TILE_SIZE, row * TILE_SIZE, null);
+                } else {
+                    target.set(column * span, row * span, (column + 1) * span, (row + 1) * span);
+                    canvas.drawBitmap(tile.bitmap, null, target, bitmapPaint);
+                }
+            }
+        }
+        trim();
+        return replayed;
+    }
+
+    /**
+     * Called before the strokes from {@code from} on leave the visible history. Tiles
+     * the strokes of this layer cross are re-rendered on next use, the others just forget
+     * about them.
+     */
+    public void rollback(StrokeStore strokes, int from) {
+        for (Tile tile = head; tile != null; tile = tile.next) {
+            if (tile.rendered <= from) {
+                continue;
+            }
+            if (strokes.getVisibleStart(tile.rendered) != strokes.getVisibleStart(from)) {
+                // undoing a clear brings back everything before it
+                tile.rendered = -1;
+                continue;
+            }
+            if (tile.rendered - from > MAX_SCAN) {
+                query(strokes, tile, tile.rendered);
+                for (int i = hits.size() - 1; i >= 0 && hits.get(i) >= from; i--) {
+                    if (strokes.getLayer(hits.get(i)) == layer) {
+                        tile.rendered = -1;
+                        break;
+                    }
+                }
+            } else {
+                for (int i = from; i < tile.rendered; i++) {
+                    if (strokes.getLayer(i) == layer && intersects(strokes, i, tile)) {
+                        tile.rendered = -1;
+                        break;
+                    }
+                }
+            }
+            if (tile.rendered > from) {
+                tile.rendered = from;
+            }
+        }
+    }
+
+    /**
+     * Called after the first {@code count} strokes were flattened into the base layer and
+     * dropped from the store, so the others moved down by {@code count}.
+     */
+    public void dropFirst(int count) {
+        for (Tile tile = head; tile != null; tile = tile.next) {
+            tile.rendered = tile.rendered >= count ? tile.rendered - count : -1;
+        }
+    }
+
+    public void invalidateAll() {
+        for (Tile tile = head; tile != null; tile = tile.next) {
+            tile.rendered = -1;
+        }
+    }
+
+    public void release() {
+        for (Tile tile = head; tile != null; tile = tile.next) {
+            tile.bitmap.recycle();
+        }
+        head = tail = null;
+        count = 0;
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = null;
+        }
+    }
+
+    private void trim() {
+        while (count * TILE_BYTES > budget && tail != null && tail.frame != frame) {
+            Tile tile = tail;
+            unlink(tile);
+            grid[tile.row * columns + tile.column] = null;
+            tile.bitmap.recycle();
+            count--;
+        }
+    }
+
+    private int update(Tile tile, StrokeStore strokes, int committed) {
+        int start = strokes.getVisibleStart(committed);
+        if (tile.rendered >= 0 && (strokes.getVisibleStart(tile.rendered) != start
+                || erasedSince(tile, strokes, committed))) {
+            tile.rendered = -1;
+        }
+        if (tile.rendered < 0) {
+            tile.bitmap.eraseColor(Color.TRANSPARENT);
+            if (start == 0) {
+                int left = (int) (tile.column * span);
+                int top = (int) (tile.row * span);
+                base.draw(tile.canvas, left, top, (int) Math.ceil(left + span),
+                        (int) Math.ceil(top + span));
+            }
+            // nothing before the last clear shows
+            tile.rendered = start;
+        }
+        int replayed = 0;
+        if (committed - tile.rendered > MAX_SCAN) {
+            query(strokes, tile, committed);
+            for (int i = 0; i < hits.size(); i++) {
+                int stroke = hits.get(i);
+                if (stroke >= tile.rendered && strokes.getLayer(stroke) == layer
+                        && strokes.isVisible(stroke, committed)) {
+                    renderer.queue(tile.canvas, strokes, stroke);
+                    replayed++;
+                }
+            }
+        } else {
+            for (int i = tile.rendered; i < committed; i++) {
+                if (strokes.getLayer(i) == layer && strokes.isVisible(i, committed)
+                        && intersects(strokes, i, tile)) {
+                    renderer.queue(tile.canvas, strokes, i);
+                    replayed++;
+                }
+            }
+        }
+        renderer.flush();
+        tile.rendered = committed;
+        return replayed;
+    }
+
+    /**
+     * Whether an erase entry added since the tile was rendered removed something from it,
+     * which drawing on top cannot undo.
+     */
+    private boolean erasedSince(Tile tile, StrokeStore strokes, int committed) {
+        if (committed - tile.rendered > MAX_SCAN) {
+            query(strokes, tile, committed);
+            for (int i = hits.size() - 1; i >= 0 && hits.get(i) >= tile.rendered; i--) {
+                int entry = hits.get(i);
+                if (strokes.isErase(entry) && strokes.getLayer(entry) == layer) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int i = tile.rendered; i < committed; i++) {
+            if (strokes.isErase(i) && strokes.getLayer(i) == layer
+                    && intersects(strokes, i, tile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void query(StrokeStore strokes, Tile tile, int limit) {
+        float left = tile.column * span;
+        float top = tile.row * span;
+        index.query(strokes, left, top, left + span, top + span, limit, hits);
+    }
+
+    private boolean intersects(StrokeStore strokes, int stroke, Tile tile) {
+        float left = tile.column * span;
+        float top = tile.row * span;
+        return strokes.intersects(stroke, left, top, left + span, top + span);
+    }
+
+    private Tile obtain(int column, int row) {
+        int index = row * columns + column;
+        Tile tile = grid[index];
+        if (tile != null) {
+            unlink(tile);
+        } else {
+            tile = evictOrCreate();
+            tile.column = column;
+            tile.row = row;
+            tile.rendered = -1;
+            tile.canvas.restoreToCount(1);
+            tile.canvas.save();
+            tile.canvas.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+            tile.canvas.scale(scale, scale);
+            grid[index] = tile;
+            count++;
+        }
+        tile.frame = frame;
+        pushFront(tile);
+        return tile;
+    }
+
+    private Tile evictOrCreate() {
+        // never reuse a tile already drawn in this frame, the canvas still references it
+        if ((count + 1) * TILE_BYTES > budget && tail != null && tail.frame != frame) {
+            Tile tile = tail;
+            unlink(tile);
+            grid[tile.row * columns + tile.column] = null;
+            count--;
+            return tile;
+        }
+        Tile tile = new Tile();
+        tile.bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        tile.canvas = new Canvas(tile.bitmap);
+        return tile;
+    }
+
+    private void pushFront(Tile tile) {
+        tile.previous = null;
+        tile.next = head;
+        if (head != null) {
+            head.previous = tile;
+        }
+        head = tile;
+        if (tail == null) {
+            tail = tile;
+        }
+    }
+
+    private void unlink(Tile tile) {
+        if (tile.previous != null) {
+            tile.previous.next = tile.next;
+        } else {
+            head = tile.next;
+        }
+        if (tile.next != null) {
+            tile.next.previous = tile.previous;
+        } else {
+            tail = tile.previous;
+        }
+        tile.previous = tile.next = null;
+    }
+
+    private static class Tile {
+        Bitmap bitmap;
+        Canvas canvas;
+        int column;
+        int row;
+        // strokes already drawn into the tile, -1 when it has to be redrawn from scratch
+        int rendered;
+        int frame;
+        Tile previous, next;
+    }
+}
@@ -0,0 +1,45 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Model side of clearing a large drawing, undoing the clear and drawing on, which drops
+ * the clear entry again. None of it should depend on the number of strokes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClearUndoBenchmark {
+
+    @Param({"1000", "50000"})
+    public int strokes;
+
+    private StrokeStore store;
+
+    @Setup
+    public void setUp() {
+        store = Drawings.random(strokes, 20, 5);
+    }
+
+    @Benchmark
+    public boolean clearUndoAndTruncate() {
+        int clear = store.beginClear();
+        int cleared = clear + 1;
+        boolean hidden = !store.isVisible(clear - 1, cleared);
+        int position = store.getActionStart(cleared - 1);
+        boolean back = store.isVisible(clear - 1, position);
+        store.truncate(position);
+        return hidden && back;
+    }
+}
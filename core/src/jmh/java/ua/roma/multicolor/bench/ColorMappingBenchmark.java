@@ -0,0 +1,74 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.color.ColorMath;
+
+/**
+ * Cost per color of the mappings behind the color picker: the gradient interpolation, the
+ * table lookup that replaces it while dragging, and the hue rotation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ColorMappingBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    // the palette and table size of ColorPickerView
+    private static final int[] COLORS = {
+            0xFFFF0000, 0xFFFF00FF, 0xFF0000FF, 0xFF00FFFF, 0xFF00FF00, 0xFFFFFF00, 0xFFFF0000
+    };
+
+    private final float[] units = new float[SAMPLES];
+    private final float[] matrix = new float[9];
+    private int[] table;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < SAMPLES; i++) {
+            units[i] = (i * 0.618034f) % 1f;
+        }
+        table = ColorMath.buildTable(COLORS, 2048);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int interpColor() {
+        int hash = 0;
+        for (float unit : units) {
+            hash += ColorMath.interpColor(COLORS, unit);
+        }
+        return hash;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int lookup() {
+        int hash = 0;
+        for (float unit : units) {
+            hash += ColorMath.lookup(table, unit);
+        }
+        return hash;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int rotateColor() {
+        int hash = 0;
+        for (float unit : units) {
+            ColorMath.hueRotation(unit * (float) (2 * Math.PI), matrix);
+            hash += ColorMath.transform(0xFF3366CC, matrix);
+        }
+        return hash;
+    }
+}
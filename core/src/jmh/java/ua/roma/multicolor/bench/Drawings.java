@@ -0,0 +1,97 @@
+package ua.roma.multicolor.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ua.roma.multicolor.model.StrokeSmoother;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Deterministic inputs shared by the benchmarks.
+ */
+final class Drawings {
+
+    static final int WIDTH = 1080;
+    static final int HEIGHT = 1920;
+
+    private Drawings() {
+    }
+
+    /**
+     * A drawing of {@code strokes} random walks with {@code pointsPerStroke} points each.
+     */
+    static StrokeStore random(int strokes, int pointsPerStroke, long seed) {
+        return random(strokes, pointsPerStroke, seed, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Like {@link #random(int, int, long)} with strokes starting within a
+     * {@code width * height} canvas.
+     */
+    static StrokeStore random(int strokes, int pointsPerStroke, long seed, int width,
+                              int height) {
+        Random random = new Random(seed);
+        StrokeStore store = new StrokeStore(strokes, strokes * pointsPerStroke);
+        for (int i = 0; i < strokes; i++) {
+            store.beginStroke(0xFF000000 | random.nextInt(0xFFFFFF), 1 + random.nextInt(64));
+            float x = random.nextFloat() * width;
+            float y = random.nextFloat() * height;
+            for (int j = 0; j < pointsPerStroke; j++) {
+                x += random.nextFloat() * 12 - 6;
+                y += random.nextFloat() * 12 - 6;
+                store.addPoint(x, y);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Touch samples of {@code strokes} handwriting-like strokes as x,y pairs, one array per
+     * stroke, sampled at 120 Hz and reported in whole pixels.
+     */
+    static float[][] touchTraces(int strokes, long seed) {
+        return touchTraces(strokes, seed, WIDTH, HEIGHT);
+    }
+
+    static float[][] touchTraces(int strokes, long seed, int width, int height) {
+        Random random = new Random(seed);
+        float[][] traces = new float[strokes][];
+        for (int s = 0; s < strokes; s++) {
+            float originX = random.nextFloat() * (width - 400);
+            float originY = 100 + random.nextFloat() * (height - 200);
+            float length = 300 + random.nextFloat() * 1200;
+            float[] samples = new float[4096];
+            int count = 0;
+            float t = 0;
+            while (t <= length && count < samples.length) {
+                float x = originX + t * 0.3f + 40 * (float) Math.sin(t / 25);
+                float y = originY + 60 * (float) Math.sin(t / 17) * (float) Math.cos(t / 61);
+                samples[count++] = Math.round(x + random.nextGaussian() * 0.3);
+                samples[count++] = Math.round(y + random.nextGaussian() * 0.3);
+                t += 0.5f + 7.5f * Math.abs((float) Math.cos(Math.PI * t / length));
+            }
+            traces[s] = Arrays.copyOf(samples, count);
+        }
+        return traces;
+    }
+
+    /**
+     * A session of {@code strokes} touch strokes in random colors and widths, kept as
+     * {@code PaintView} keeps them after the {@link StrokeSmoother}.
+     */
+    static StrokeStore sketch(int strokes, long seed, int width, int height) {
+        Random random = new Random(seed);
+        StrokeStore store = new StrokeStore();
+        StrokeSmoother smoother = new StrokeSmoother();
+        for (float[] samples : touchTraces(strokes, seed, width, height)) {
+            store.beginStroke(0xFF000000 | random.nextInt(0xFFFFFF), 2 + random.nextInt(40));
+            store.addPoint(samples[0], samples[1]);
+            smoother.begin(samples[0], samples[1]);
+            for (int i = 2; i < samples.length; i += 2) {
+                smoother.add(store, samples[i], samples[i + 1]);
+            }
+            smoother.finish(store);
+        }
+        return store;
+    }
+}
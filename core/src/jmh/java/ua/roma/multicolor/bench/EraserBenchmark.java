@@ -0,0 +1,51 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.model.StrokeEraser;
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * One batch of an eraser gesture, as a touch event delivers it, through the middle of a
+ * drawing of 100 point strokes; undone again so every invocation erases the same strokes.
+ * It has to stay well within a frame however large the drawing is.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EraserBenchmark {
+
+    @Param({"4000", "40000"})
+    public int strokes;
+
+    private StrokeStore store;
+    private final StrokeGrid grid = new StrokeGrid();
+    private final StrokeEraser eraser = new StrokeEraser();
+    private final float[] path = {
+            Drawings.WIDTH / 2f, Drawings.HEIGHT / 2f,
+            Drawings.WIDTH / 2f + 10, Drawings.HEIGHT / 2f + 10};
+
+    @Setup
+    public void setUp() {
+        store = Drawings.random(strokes, 100, 3);
+        grid.addAll(store);
+    }
+
+    @Benchmark
+    public int eraseBatchAndTruncate() {
+        int entries = eraser.erase(store, grid, path, 2, 20, false);
+        grid.truncate(store, strokes);
+        store.truncate(strokes);
+        return entries;
+    }
+}
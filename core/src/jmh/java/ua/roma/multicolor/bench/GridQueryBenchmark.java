@@ -0,0 +1,69 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.model.IntList;
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Cost of finding the strokes under the screen and under a dirty rectangle of a large
+ * canvas as the drawing grows, with the linear scan the grid replaced as baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GridQueryBenchmark {
+
+    private static final int CANVAS = 8192;
+    // a screen in the middle of the canvas, and a dirty rectangle within it
+    private static final float LEFT = (CANVAS - Drawings.WIDTH) / 2f;
+    private static final float TOP = (CANVAS - Drawings.HEIGHT) / 2f;
+    private static final float DIRTY = 256;
+
+    @Param({"10000", "100000", "1000000"})
+    public int strokes;
+
+    private StrokeStore store;
+    private final StrokeGrid grid = new StrokeGrid();
+    private final IntList hits = new IntList();
+
+    @Setup
+    public void setUp() {
+        store = Drawings.random(strokes, 8, 9, CANVAS, CANVAS);
+        grid.addAll(store);
+    }
+
+    @Benchmark
+    public int queryScreen() {
+        grid.query(store, LEFT, TOP, LEFT + Drawings.WIDTH, TOP + Drawings.HEIGHT,
+                store.size(), hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public int queryDirtyRect() {
+        grid.query(store, LEFT, TOP, LEFT + DIRTY, TOP + DIRTY, store.size(), hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public int scanDirtyRect() {
+        int found = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (store.intersects(i, LEFT, TOP, LEFT + DIRTY, TOP + DIRTY)) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,54 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.io.StrokeJournal;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Cost of replaying the journal of a drawing of 4000 strokes of 250 points at launch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JournalRecoveryBenchmark {
+
+    private File file;
+    private StrokeJournal journal;
+    private final StrokeStore recovered = new StrokeStore();
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("journal", ".bin");
+        StrokeStore store = Drawings.random(4000, 250, 4);
+        StrokeJournal writer = new StrokeJournal(file);
+        for (int i = 0; i < store.size(); i++) {
+            writer.appendStroke(store, i);
+        }
+        writer.close();
+        journal = new StrokeJournal(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        return journal.recover(recovered);
+    }
+}
@@ -0,0 +1,59 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.model.StrokeStore;
+import ua.roma.multicolor.raster.SoftwareRasterizer;
+
+/**
+ * Software rendering throughput. Each operation renders a session of 100 touch strokes
+ * into a 1000x1000 buffer, so the score is in megapixels per second; divided by {@code threads}
+ * it is the throughput per core.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RasterBenchmark {
+
+    private static final int SIZE = 1000;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private StrokeStore store;
+    private ForkJoinPool pool;
+    private SoftwareRasterizer rasterizer;
+    private final int[] pixels = new int[SIZE * SIZE];
+
+    @Setup
+    public void setUp() {
+        store = Drawings.sketch(100, 5, SIZE, SIZE);
+        pool = new ForkJoinPool(threads);
+        rasterizer = new SoftwareRasterizer(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int[] render() {
+        Arrays.fill(pixels, 0xFFFFFFFF);
+        rasterizer.render(store, store.size(), 1, pixels, SIZE, SIZE);
+        return pixels;
+    }
+}
@@ -0,0 +1,87 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.io.StrokeCodec;
+import ua.roma.multicolor.io.SvgWriter;
+import ua.roma.multicolor.io.VarintOutput;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Cost of saving and restoring a drawing of 1000 strokes of 150 points and of writing it
+ * out as SVG.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    private StrokeStore store;
+    private byte[] encoded;
+    private final VarintOutput out = new VarintOutput(1 << 16);
+    private final StrokeStore decoded = new StrokeStore();
+    private final CountingWriter svg = new CountingWriter();
+
+    @Setup
+    public void setUp() {
+        store = Drawings.random(1000, 150, 1);
+        encoded = StrokeCodec.encode(store, store.size());
+    }
+
+    @Benchmark
+    public int encode() {
+        out.reset();
+        StrokeCodec.encode(store, store.size(), out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        decoded.clear();
+        return StrokeCodec.decode(encoded, 0, encoded.length, decoded);
+    }
+
+    @Benchmark
+    public long writeSvg() throws IOException {
+        svg.count = 0;
+        new SvgWriter(svg).write(store, 0, store.size(), Drawings.WIDTH, Drawings.HEIGHT);
+        return svg.count;
+    }
+
+    private static class CountingWriter extends Writer {
+        long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
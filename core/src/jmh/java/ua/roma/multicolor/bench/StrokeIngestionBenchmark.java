@@ -0,0 +1,62 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeSmoother;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Cost of taking in a session of touch strokes the way {@code PaintView} does: samples go
+ * through the smoother into the store and each finished stroke is added to the grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StrokeIngestionBenchmark {
+
+    @Param({"true", "false"})
+    public boolean smoothing;
+
+    private float[][] traces;
+    private final StrokeStore store = new StrokeStore();
+    private final StrokeGrid index = new StrokeGrid();
+    private final StrokeSmoother smoother = new StrokeSmoother();
+
+    @Setup
+    public void setUp() {
+        traces = Drawings.touchTraces(200, 1);
+        if (smoothing) {
+            smoother.setTolerance(StrokeSmoother.DEFAULT_MIN_DISTANCE,
+                    StrokeSmoother.DEFAULT_TOLERANCE);
+        } else {
+            smoother.setTolerance(0, 0);
+        }
+    }
+
+    @Benchmark
+    public int ingestSession() {
+        store.clear();
+        index.clear();
+        for (float[] samples : traces) {
+            store.beginStroke(0xFF000000, 8);
+            store.addPoint(samples[0], samples[1]);
+            smoother.begin(samples[0], samples[1]);
+            for (int i = 2; i < samples.length; i += 2) {
+                smoother.add(store, samples[i], samples[i + 1]);
+            }
+            smoother.finish(store);
+            index.addAll(store);
+        }
+        return store.getPointCount();
+    }
+}
@@ -0,0 +1,120 @@
+package ua.roma.multicolor.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.history.Checkpoints;
+import ua.roma.multicolor.model.StrokeEraser;
+import ua.roma.multicolor.model.StrokeGrid;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Cost of the model side of an undo: finding the action to step back over and walking the
+ * strokes still visible before it, from the start of the history or from the nearest
+ * checkpoint. Each walked stroke is flattened into the quads the renderer would draw.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UndoReplayBenchmark {
+
+    private static final int INTERVAL = 25;
+
+    @Param({"500", "2000"})
+    public int history;
+
+    private StrokeStore store;
+    private Checkpoints<Object> checkpoints;
+    private float[] quads = new float[1024];
+
+    @Setup
+    public void setUp() {
+        store = Drawings.random(history, 60, 2);
+        StrokeGrid index = new StrokeGrid();
+        index.addAll(store);
+        // every tenth action wipes part of the drawing
+        StrokeEraser eraser = new StrokeEraser();
+        Random random = new Random(3);
+        float[] path = new float[4];
+        for (int i = 0; i < history / 10; i++) {
+            path[0] = random.nextFloat() * Drawings.WIDTH;
+            path[1] = random.nextFloat() * Drawings.HEIGHT;
+            path[2] = path[0] + random.nextFloat() * 200 - 100;
+            path[3] = path[1] + random.nextFloat() * 200 - 100;
+            eraser.erase(store, index, path, 2, 20, false);
+            index.addAll(store);
+        }
+        checkpoints = new Checkpoints<>(INTERVAL, Long.MAX_VALUE,
+                new Checkpoints.Snapshots<Object>() {
+                    @Override
+                    public long sizeOf(Object snapshot) {
+                        return 1;
+                    }
+
+                    @Override
+                    public void release(Object snapshot) {
+                    }
+                });
+        for (int position = 1; position <= store.size(); position++) {
+            if (checkpoints.wants(position)) {
+                checkpoints.put(position, this);
+            }
+        }
+    }
+
+    @Benchmark
+    public float undoFullReplay() {
+        int position = store.getActionStart(store.size() - 1);
+        return replay(0, position);
+    }
+
+    @Benchmark
+    public float undoFromCheckpoint() {
+        int position = store.getActionStart(store.size() - 1);
+        return replay(checkpoints.floor(position), position);
+    }
+
+    private float replay(int from, int to) {
+        float sum = 0;
+        for (int i = from; i < to; i++) {
+            if (!store.isVisible(i, to)) {
+                continue;
+            }
+            int count = flatten(i);
+            for (int k = 0; k < count; k++) {
+                sum += quads[k];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Control and end points of the quads through the segment midpoints of a stroke.
+     */
+    private int flatten(int stroke) {
+        int offset = store.getOffset(stroke);
+        int length = store.getLength(stroke);
+        if (length * 4 > quads.length) {
+            quads = new float[length * 4];
+        }
+        int count = 0;
+        for (int k = offset + 1; k < offset + length; k++) {
+            float x = store.getX(k - 1);
+            float y = store.getY(k - 1);
+            quads[count++] = x;
+            quads[count++] = y;
+            quads[count++] = (x + store.getX(k)) / 2;
+            quads[count++] = (y + store.getY(k)) / 2;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,131 @@
+package ua.roma.multicolor.color;
+
+/**
+ * ARGB color helpers that work on packed ints and never allocate.
+ */
+public final class ColorMath {
+
+    private static final float[] RGB_TO_YUV = {
+            0.299f, 0.587f, 0.114f,
+            -0.16874f, -0.33126f, 0.5f,
+            0.5f, -0.41869f, -0.08131f
+    };
+    private static final float[] YUV_TO_RGB = {
+            1, 0, 1.402f,
+            1, -0.34414f, -0.71414f,
+            1, 1.772f, 0
+    };
+
+    private ColorMath() {
+    }
+
+    public static int alpha(int color) {
+        return color >>> 24;
+    }
+
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    public static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Color at {@code unit} in [0..1] along a gradient through {@code colors}.
+     */
+    public static int interpColor(int[] colors, float unit) {
+        if (unit <= 0) {
+            return colors[0];
+        }
+        if (unit >= 1) {
+            return colors[colors.length - 1];
+        }
+
+        float p = unit * (colors.length - 1);
+        int i = (int) p;
+        p -= i;
+
+        // now p is just the fractional part [0...1) and i is the index
+        int c0 = colors[i];
+        int c1 = colors[i + 1];
+        return argb(ave(alpha(c0), alpha(c1), p), ave(red(c0), red(c1), p),
+                ave(green(c0), green(c1), p), ave(blue(c0), blue(c1), p));
+    }
+
+    /**
+     * Samples the gradient through {@code colors} at {@code size} evenly spaced units so that
+     * {@link #lookup(int[], float)} can replace {@link #interpColor(int[], float)}.
+     */
+    public static int[] buildTable(int[] colors, int size) {
+        int[] table = new int[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = interpColor(colors, (float) i / (size - 1));
+        }
+        return table;
+    }
+
+    public static int lookup(int[] table, float unit) {
+        if (unit <= 0) {
+            return table[0];
+        }
+        if (unit >= 1) {
+            return table[table.length - 1];
+        }
+        return table[(int) (unit * (table.length - 1) + 0.5f)];
+    }
+
+    /**
+     * Fills {@code out} with the 3x3 matrix rotating hue by {@code rad} in YUV space, the
+     * same transform as {@code ColorMatrix} RGB2YUV, rotate around red, YUV2RGB.
+     */
+    public static void hueRotation(float rad, float[] out) {
+        float cos = (float) Math.cos(rad);
+        float sin = (float) Math.sin(rad);
+        float[] y = RGB_TO_YUV;
+        float[] r = YUV_TO_RGB;
+        for (int col = 0; col < 3; col++) {
+            float y0 = y[col];
+            float u = cos * y[3 + col] + sin * y[6 + col];
+            float v = -sin * y[3 + col] + cos * y[6 + col];
+            out[col] = r[0] * y0 + r[1] * u + r[2] * v;
+            out[3 + col] = r[3] * y0 + r[4] * u + r[5] * v;
+            out[6 + col] = r[6] * y0 + r[7] * u + r[8] * v;
+        }
+    }
+
+    /**
+     * Applies a 3x3 matrix from {@link #hueRotation(float, float[])} to the color channels,
+     * keeping alpha.
+     */
+    public static int transform(int color, float[] matrix) {
+        int r = red(color);
+        int g = green(color);
+        int b = blue(color);
+        int ir = Math.round(matrix[0] * r + matrix[1] * g + matrix[2] * b);
+        int ig = Math.round(matrix[3] * r + matrix[4] * g + matrix[5] * b);
+        int ib = Math.round(matrix[6] * r + matrix[7] * g + matrix[8] * b);
+        return argb(alpha(color), pinToByte(ir), pinToByte(ig), pinToByte(ib));
+    }
+
+    private static int pinToByte(int n) {
+        if (n < 0) {
+            n = 0;
+        } else if (n > 255) {
+            n = 255;
+        }
+        return n;
+    }
+
+    private static int ave(int s, int d, float p) {
+        return s + Math.round(p * (d - s));
+    }
+}
@@ -0,0 +1,139 @@
+package ua.roma.multicolor.history;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps a snapshot of the rendered history every {@code interval} strokes so that
+ * jumping back to any position only replays the strokes after the nearest snapshot.
+ * Snapshots are evicted oldest first once {@code budget} bytes are used.
+ */
+public class Checkpoints<S> {
+
+    private final TreeMap<Integer, S> snapshots = new TreeMap<>();
+    private final Snapshots<S> helper;
+    private int interval;
+    private long budget;
+    private long usedBytes;
+    // positions at or below the horizon were evicted and are not captured again
+    private int horizon;
+
+    public Checkpoints(int interval, long budget, Snapshots<S> helper) {
+        this.interval = interval;
+        this.budget = budget;
+        this.helper = helper;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public void setPolicy(int interval, long budget) {
+        if (interval != this.interval) {
+            clear();
+        }
+        this.interval = interval;
+        this.budget = budget;
+        trim();
+    }
+
+    public boolean wants(int position) {
+        return interval > 0 && position > horizon && position % interval == 0
+                && !snapshots.containsKey(position);
+    }
+
+    public void put(int position, S snapshot) {
+        long size = helper.sizeOf(snapshot);
+        if (size > budget) {
+            helper.release(snapshot);
+            return;
+        }
+        S old = snapshots.put(position, snapshot);
+        if (old != null) {
+            usedBytes -= helper.sizeOf(old);
+            helper.release(old);
+        }
+        usedBytes += size;
+        trim();
+    }
+
+    /**
+     * Returns the position of the latest snapshot not after {@code position}, or 0 when
+     * the history has to be replayed from the beginning.
+     */
+    public int floor(int position) {
+        Integer key = snapshots.floorKey(position);
+        return key == null ? 0 : key;
+    }
+
+    public S get(int position) {
+        return snapshots.get(position);
+    }
+
+    /**
+     * Drops every snapshot taken after {@code position}, used when the redo tail is discarded.
+     */
+    public void truncate(int position) {
+        while (!snapshots.isEmpty() && snapshots.lastKey() > position) {
+            remove(snapshots.pollLastEntry());
+        }
+        if (horizon > position) {
+            horizon = position;
+        }
+    }
+
+    /**
+     * Follows the history dropping its first {@code count} strokes: snapshots up to there
+     * are released and the later ones move down by {@code count}.
+     */
+    public void dropFirst(int count) {
+        while (!snapshots.isEmpty() && snapshots.firstKey() <= count) {
+            remove(snapshots.pollFirstEntry());
+        }
+        TreeMap<Integer, S> kept = new TreeMap<>();
+        for (Map.Entry<Integer, S> entry : snapshots.entrySet()) {
+            kept.put(entry.getKey() - count, entry.getValue());
+        }
+        snapshots.clear();
+        snapshots.putAll(kept);
+        horizon = Math.max(0, horizon - count);
+    }
+
+    public void clear() {
+        while (!snapshots.isEmpty()) {
+            remove(snapshots.pollFirstEntry());
+        }
+        horizon = 0;
+    }
+
+    public int size() {
+        return snapshots.size();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private void trim() {
+        while (usedBytes > budget && !snapshots.isEmpty()) {
+            Map.Entry<Integer, S> oldest = snapshots.pollFirstEntry();
+            horizon = Math.max(horizon, oldest.getKey());
+            remove(oldest);
+        }
+    }
+
+    private void remove(Map.Entry<Integer, S> entry) {
+        usedBytes -= helper.sizeOf(entry.getValue());
+        helper.release(entry.getValue());
+    }
+
+    public interface Snapshots<S> {
+        long sizeOf(S snapshot);
+
+        void release(S snapshot);
+    }
+}
@@ -0,0 +1,78 @@
+package ua.roma.multicolor.history;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Bounds the undo history by entry count and by the bytes its geometry takes. Once the
+ * history outgrows a bound by a batch of entries, {@link #horizon} names how many of the
+ * oldest entries should be flattened into the background and dropped, so memory levels
+ * off however long the session runs. A limit of 0 means no bound.
+ */
+public class HistoryPolicy {
+
+    // flatten at least this many entries at a time, each flattening replays the rest
+    static final int BATCH = 16;
+    // offsets, lengths, colors, widths, bounds, flags, layers, removedBy, erasedEnd and
+    // visibleFrom
+    private static final int ENTRY_BYTES = 46;
+
+    private int maxEntries;
+    private long maxBytes;
+
+    public HistoryPolicy(int maxEntries, long maxBytes) {
+        setLimits(maxEntries, maxBytes);
+    }
+
+    public void setLimits(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Number of leading entries of {@code strokes} to flatten now, 0 while the history is
+     * within bounds. Entries at or after {@code position} are never included, and the
+     * result is always a valid argument for {@link StrokeStore#dropFirst(int)}.
+     */
+    public int horizon(StrokeStore strokes, int position) {
+        int size = strokes.size();
+        int target = 0;
+        if (maxEntries > 0) {
+            target = size - maxEntries;
+        }
+        if (maxBytes > 0) {
+            long bytes = 0;
+            for (int i = size - 1; i >= target && i >= 0; i--) {
+                bytes += sizeOf(strokes, i);
+                if (bytes > maxBytes) {
+                    target = i + 1;
+                    break;
+                }
+            }
+        }
+        target = Math.min(target, position);
+        if (target < BATCH) {
+            return 0;
+        }
+        // an erase of an old stroke holds the horizon back until it falls behind it too
+        int horizon = strokes.findHorizon(target);
+        return horizon >= BATCH ? horizon : 0;
+    }
+
+    /**
+     * Bytes the entry takes in a {@link StrokeStore}.
+     */
+    public static long sizeOf(StrokeStore strokes, int entry) {
+        // x and y, plus the time of each point of timed strokes
+        int pointBytes = strokes.isTimed(entry) ? 12 : 8;
+        return ENTRY_BYTES + strokes.getLength(entry) * (long) pointBytes
+                + strokes.getErasedCount(entry) * 4L;
+    }
+}
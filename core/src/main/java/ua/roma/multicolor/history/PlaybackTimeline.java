@@ -0,0 +1,127 @@
+package ua.roma.multicolor.history;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * When each entry of a {@link StrokeStore} shows up while replaying how the drawing was
+ * made. Playback goes through the entries in history order. A timed stroke takes as long
+ * as it took to draw, and the pause before it is the time since the previous timed stroke
+ * ended, cut to {@link #MAX_PAUSE} so idle minutes and strokes of earlier sessions don't
+ * stall playback. Entries without times, erases, clears and the pieces an erase leaves,
+ * show up at once.
+ *
+ * <p>Only the start of each entry is kept, an int per entry; the points are read from the
+ * store as playback reaches them, so the store must not change while the timeline is in
+ * use.
+ */
+public class PlaybackTimeline {
+
+    // milliseconds
+    public static final int MAX_PAUSE = 500;
+
+    private final StrokeStore store;
+    private final int[] starts;
+    private final int duration;
+
+    /**
+     * Timeline of the first {@code end} entries of {@code store}.
+     */
+    public PlaybackTimeline(StrokeStore store, int end) {
+        this.store = store;
+        starts = new int[end];
+        int time = 0;
+        int lastTime = 0;
+        boolean started = false;
+        for (int i = 0; i < end; i++) {
+            if (store.isTimed(i) && store.getLength(i) > 0) {
+                int first = store.getTime(store.getOffset(i));
+                if (started) {
+                    time += Math.max(0, Math.min(first - lastTime, MAX_PAUSE));
+                }
+                starts[i] = time;
+                lastTime = store.getTime(store.getOffset(i) + store.getLength(i) - 1);
+                time += Math.max(0, lastTime - first);
+                started = true;
+            } else {
+                starts[i] = time;
+            }
+        }
+        duration = time;
+    }
+
+    /**
+     * Entries the timeline covers.
+     */
+    public int getEnd() {
+        return starts.length;
+    }
+
+    /**
+     * Milliseconds from the start of playback to the end of the last entry.
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    public int getStart(int entry) {
+        return starts[entry];
+    }
+
+    /**
+     * History position reached at playback time {@code time}: the entries before it are
+     * complete, and the one at it may be partly drawn, see {@link #pointsAt(int, int)}.
+     */
+    public int positionAt(int time) {
+        if (time >= duration) {
+            return starts.length;
+        }
+        // entries starting at or before time, all but the last of them have ended
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == 0) {
+            return 0;
+        }
+        int last = low - 1;
+        return endOf(last) <= time ? low : last;
+    }
+
+    /**
+     * Points of {@code entry} drawn at playback time {@code time}.
+     */
+    public int pointsAt(int entry, int time) {
+        int length = store.getLength(entry);
+        if (!store.isTimed(entry) || length == 0) {
+            return time >= starts[entry] ? length : 0;
+        }
+        int offset = store.getOffset(entry);
+        int limit = store.getTime(offset) + time - starts[entry];
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (store.getTime(offset + mid) <= limit) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int endOf(int entry) {
+        if (!store.isTimed(entry) || store.getLength(entry) == 0) {
+            return starts[entry];
+        }
+        int offset = store.getOffset(entry);
+        return starts[entry] + Math.max(0, store.getTime(offset + store.getLength(entry) - 1)
+                - store.getTime(offset));
+    }
+}
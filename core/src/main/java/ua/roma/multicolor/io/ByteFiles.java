@@ -0,0 +1,51 @@
+package ua.roma.multicolor.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public final class ByteFiles {
+
+    private ByteFiles() {
+    }
+
+    public static byte[] read(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("unexpected end of " + file);
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * Writes through a temporary file and renames it over {@code file}, so readers see
+     * either the old or the new content.
+     */
+    public static void write(File file, byte[] data, int length) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            FileChannel channel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("can't replace " + file);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ua.roma.multicolor.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes an unpremultiplied ARGB {@code int[]} as PNG with {@code java.util.zip}, so
+ * images rendered off the device need no imaging library. Fully opaque images are written
+ * as RGB. Rows use the Sub filter, which suits the flat areas and smooth edges of
+ * drawings.
+ *
+ * <pre>
+ * png:   signature chunk{IHDR IDAT+ IEND}
+ * chunk: length:int type:byte{4} data{length} crc32:int
+ * </pre>
+ */
+public final class PngWriter {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int COLOR_RGB = 2;
+    private static final int COLOR_RGBA = 6;
+    private static final int FILTER_SUB = 1;
+    private static final int CHUNK = 1 << 16;
+
+    private PngWriter() {
+    }
+
+    public static void write(int[] pixels, int width, int height, OutputStream out)
+            throws IOException {
+        boolean opaque = true;
+        for (int i = 0; i < width * height && opaque; i++) {
+            opaque = pixels[i] >>> 24 == 0xFF;
+        }
+        int channels = opaque ? 3 : 4;
+        out.write(SIGNATURE);
+
+        VarintOutput header = new VarintOutput(13);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(8);
+        header.writeByte(opaque ? COLOR_RGB : COLOR_RGBA);
+        header.writeByte(0);
+        header.writeByte(0);
+        header.writeByte(0);
+        CRC32 crc = new CRC32();
+        writeChunk(out, crc, "IHDR", header.getBuffer(), header.size());
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            byte[] row = new byte[1 + width * channels];
+            byte[] compressed = new byte[CHUNK];
+            int used = 0;
+            for (int y = 0; y < height; y++) {
+                filterRow(pixels, y * width, width, channels, row);
+                deflater.setInput(row);
+                while (!deflater.needsInput()) {
+                    used = deflate(deflater, compressed, used, out, crc);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                used = deflate(deflater, compressed, used, out, crc);
+            }
+            if (used > 0) {
+                writeChunk(out, crc, "IDAT", compressed, used);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, crc, "IEND", new byte[0], 0);
+    }
+
+    private static int deflate(Deflater deflater, byte[] compressed, int used, OutputStream out,
+                               CRC32 crc) throws IOException {
+        used += deflater.deflate(compressed, used, compressed.length - used);
+        if (used == compressed.length) {
+            writeChunk(out, crc, "IDAT", compressed, used);
+            return 0;
+        }
+        return used;
+    }
+
+    private static void filterRow(int[] pixels, int offset, int width, int channels, byte[] row) {
+        row[0] = FILTER_SUB;
+        int previous = 0;
+        int index = 1;
+        for (int x = 0; x < width; x++) {
+            int pixel = pixels[offset + x];
+            row[index++] = (byte) ((pixel >> 16) - (previous >> 16));
+            row[index++] = (byte) ((pixel >> 8) - (previous >> 8));
+            row[index++] = (byte) (pixel - previous);
+            if (channels == 4) {
+                row[index++] = (byte) ((pixel >>> 24) - (previous >>> 24));
+            }
+            previous = pixel;
+        }
+    }
+
+    private static void writeChunk(OutputStream out, CRC32 crc, String type, byte[] data,
+                                   int length) throws IOException {
+        writeInt(out, length);
+        byte[] name = {(byte) type.charAt(0), (byte) type.charAt(1), (byte) type.charAt(2),
+                (byte) type.charAt(3)};
+        out.write(name);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(name);
+        crc.update(data, 0, length);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
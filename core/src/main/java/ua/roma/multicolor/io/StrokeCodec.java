@@ -0,0 +1,233 @@
+package ua.roma.multicolor.io;
+
+import java.io.IOException;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Compact binary form of a {@link StrokeStore}. Coordinates are quantized to
+ * 1/{@value #SCALE} px and stored as zigzag varint deltas from the previous point of the
+ * same stroke, so a typical sample takes two or three bytes.
+ *
+ * <pre>
+ * drawing: magic:int version:varint entries:varint points:varint position:varint entry*
+ * entry:   flags:byte layer:varint? (stroke | erase)?
+ * stroke:  color:int width:varint length:varint (dx:svarint dy:svarint dt:svarint?){length}
+ * erase:   count:varint (stroke:varint){count}
+ * </pre>
+ * The layer follows the flags of entries not on layer 0, which have {@link #FLAG_LAYER}
+ * set. Points of strokes flagged {@link StrokeStore#FLAG_TIMED} carry the milliseconds
+ * since the point before, the first one since 0. A clear entry is just its flags.
+ * Version 1 drawings have no erase entries and no flags, version 2 drawings no clear
+ * entries, version 3 drawings no layers and version 4 drawings no times.
+ */
+public final class StrokeCodec {
+
+    public static final int MAGIC = 0x4D435331;
+    public static final int VERSION = 5;
+    // never stored in the model, marks entries followed by their layer
+    static final int FLAG_LAYER = 8;
+    public static final float SCALE = 16f;
+
+    private StrokeCodec() {
+    }
+
+    public static byte[] encode(StrokeStore store, int position) {
+        VarintOutput out = new VarintOutput(16 + store.size() * 8 + store.getPointCount() * 3);
+        encode(store, position, out);
+        return out.toByteArray();
+    }
+
+    public static void encode(StrokeStore store, int position, VarintOutput out) {
+        out.writeInt(MAGIC);
+        out.writeVarint(VERSION);
+        out.writeVarint(store.size());
+        out.writeVarint(store.getPointCount());
+        out.writeVarint(position);
+        for (int i = 0; i < store.size(); i++) {
+            writeEntry(store, i, out);
+        }
+    }
+
+    /**
+     * Decodes a drawing into {@code into}, which is cleared first, and returns the saved
+     * history position.
+     */
+    public static int decode(byte[] data, int offset, int length, StrokeStore into) throws IOException {
+        VarintInput in = new VarintInput(data, offset, length);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a stroke file");
+        }
+        int version = in.readVarint();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("unsupported version " + version);
+        }
+        int strokes = in.readVarint();
+        int points = in.readVarint();
+        int position = in.readVarint();
+        // every entry takes at least a byte and every point 2, reject sizes the data cannot hold
+        if (strokes < 0 || strokes > in.remaining() || points < 0 || points > in.remaining() / 2
+                || position < 0 || position > strokes) {
+            throw new IOException("corrupt header");
+        }
+        into.clear();
+        into.ensureCapacity(strokes, points);
+        for (int i = 0; i < strokes; i++) {
+            if (version == 1) {
+                readStroke(in, into);
+            } else {
+                readEntry(in, into);
+            }
+        }
+        return position;
+    }
+
+    public static void writeEntry(StrokeStore store, int entry, VarintOutput out) {
+        writeEntry(store, entry, 0, out);
+    }
+
+    /**
+     * Writes an entry of a store that had its first {@code dropped} entries dropped, as
+     * the entry of the full history.
+     */
+    public static void writeEntry(StrokeStore store, int entry, int dropped, VarintOutput out) {
+        int layer = store.getLayer(entry);
+        out.writeByte(store.getFlags(entry) | (layer != 0 ? FLAG_LAYER : 0));
+        if (layer != 0) {
+            out.writeVarint(layer);
+        }
+        if (store.isClear(entry)) {
+            return;
+        }
+        if (store.isErase(entry)) {
+            writeErase(store, entry, dropped, out);
+        } else {
+            writeStroke(store, entry, out);
+        }
+    }
+
+    /**
+     * Appends the next encoded entry of {@code in} to {@code into} and returns its index.
+     */
+    public static int readEntry(VarintInput in, StrokeStore into) throws IOException {
+        int flags = in.readByte();
+        int layer = (flags & FLAG_LAYER) != 0 ? in.readVarint() : 0;
+        if (layer < 0 || layer >= StrokeStore.MAX_LAYERS) {
+            throw new IOException("no layer " + layer);
+        }
+        int entry;
+        if ((flags & StrokeStore.FLAG_CLEAR) != 0) {
+            entry = into.beginClear();
+        } else if ((flags & StrokeStore.FLAG_ERASE) != 0) {
+            entry = readErase(in, into);
+        } else {
+            entry = readStroke(in, into, (flags & StrokeStore.FLAG_TIMED) != 0);
+        }
+        if ((flags & StrokeStore.FLAG_CONTINUED) != 0) {
+            if (entry == 0) {
+                throw new IOException("nothing to continue");
+            }
+            into.markContinued();
+        }
+        if (layer != 0) {
+            into.setLayer(layer);
+        }
+        return entry;
+    }
+
+    public static void writeErase(StrokeStore store, int entry, VarintOutput out) {
+        writeErase(store, entry, 0, out);
+    }
+
+    public static void writeErase(StrokeStore store, int entry, int dropped, VarintOutput out) {
+        int count = store.getErasedCount(entry);
+        out.writeVarint(count);
+        for (int i = 0; i < count; i++) {
+            out.writeVarint(store.getErased(entry, i) + dropped);
+        }
+    }
+
+    /**
+     * Appends the next encoded erase entry of {@code in} to {@code into} and returns its
+     * index.
+     */
+    public static int readErase(VarintInput in, StrokeStore into) throws IOException {
+        int count = in.readVarint();
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("corrupt erase");
+        }
+        int entry = into.beginErase();
+        for (int i = 0; i < count; i++) {
+            int stroke = in.readVarint();
+            if (stroke < 0 || stroke >= entry || !into.isVisible(stroke, entry)) {
+                throw new IOException("can't erase " + stroke);
+            }
+            into.addErased(stroke);
+        }
+        return entry;
+    }
+
+    /**
+     * Writes a stroke, with the times of its points if it is timed.
+     */
+    public static void writeStroke(StrokeStore store, int stroke, VarintOutput out) {
+        out.writeInt(store.getColor(stroke));
+        out.writeVarint(store.getWidth(stroke));
+        int length = store.getLength(stroke);
+        out.writeVarint(length);
+        boolean timed = store.isTimed(stroke);
+        float[] coords = store.getCoords();
+        int point = store.getOffset(stroke);
+        int end = point + length;
+        int lastX = 0;
+        int lastY = 0;
+        int lastTime = 0;
+        for (; point < end; point++) {
+            int x = Math.round(coords[point * 2] * SCALE);
+            int y = Math.round(coords[point * 2 + 1] * SCALE);
+            out.writeSignedVarint(x - lastX);
+            out.writeSignedVarint(y - lastY);
+            lastX = x;
+            lastY = y;
+            if (timed) {
+                out.writeSignedVarint(store.getTime(point) - lastTime);
+                lastTime = store.getTime(point);
+            }
+        }
+    }
+
+    /**
+     * Appends the next encoded stroke of {@code in}, written without times, to
+     * {@code into} and returns its index.
+     */
+    public static int readStroke(VarintInput in, StrokeStore into) throws IOException {
+        return readStroke(in, into, false);
+    }
+
+    /**
+     * Appends the next encoded stroke of {@code in} to {@code into} and returns its index;
+     * {@code timed} says whether it was written with times.
+     */
+    public static int readStroke(VarintInput in, StrokeStore into, boolean timed)
+            throws IOException {
+        int stroke = into.beginStroke(in.readInt(), in.readVarint());
+        int length = in.readVarint();
+        if (length < 0 || length > in.remaining() / (timed ? 3 : 2)) {
+            throw new IOException("corrupt stroke");
+        }
+        int x = 0;
+        int y = 0;
+        int time = 0;
+        for (int j = 0; j < length; j++) {
+            x += in.readSignedVarint();
+            y += in.readSignedVarint();
+            if (timed) {
+                time += in.readSignedVarint();
+                into.addPoint(x / SCALE, y / SCALE, time);
+            } else {
+                into.addPoint(x / SCALE, y / SCALE);
+            }
+        }
+        return stroke;
+    }
+}
@@ -0,0 +1,385 @@
+package ua.roma.multicolor.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Append-only on-disk log of drawing changes. Callers encode a small record and hand it
+ * off; a background thread batches pending records into one {@link FileChannel} write and
+ * periodically compacts the log into a single snapshot record. Replaying the log after a
+ * crash rebuilds the strokes and the history position.
+ *
+ * <pre>
+ * record: type:byte length:int crc32:int payload{length}
+ * stroke:  stroke layer:varint?
+ * timed:   stroke layer:varint
+ * erase:   entries:varint entry{entries}
+ * clear:   (empty)
+ * </pre>
+ * An erase record holds an erase entry and the pieces of strokes it left, as encoded by
+ * {@link StrokeCodec#writeEntry}, so a crash never keeps half of an erase. A clear record
+ * appends a clear entry at the history position; journals written before clearing could
+ * be undone hold wipe records instead, which drop every entry. A timed stroke is written
+ * with the times of its points, see {@link StrokeCodec}, as a timed record.
+ * A torn record at the end of the file, left by a kill during a write, is dropped on
+ * recovery.
+ */
+public class StrokeJournal implements Closeable {
+
+    static final int STROKE = 1;
+    static final int POSITION = 2;
+    static final int WIPE = 3;
+    static final int SNAPSHOT = 4;
+    static final int ERASE = 5;
+    static final int CLEAR = 6;
+    static final int TIMED_STROKE = 7;
+
+    private static final int HEADER = 9;
+    private static final long BATCH_DELAY_MILLIS = 250;
+    private static final int COMPACT_MIN_RECORDS = 256;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final File file;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final VarintOutput scratch = new VarintOutput(4096);
+    private final CRC32 crc = new CRC32();
+    private final CRC32 compactCrc = new CRC32();
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            scheduled.set(false);
+            writePending();
+        }
+    };
+    // owned by the writer thread
+    private FileChannel channel;
+    private int recordsSinceCompaction;
+    private long compactedSize;
+    private volatile IOException error;
+
+    public StrokeJournal(File file) {
+        this.file = file;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "stroke-journal");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Replays the journal into {@code into} and returns the history position. Must be
+     * called before anything is appended; an unreadable tail is cut off so that new
+     * records follow the last valid one.
+     */
+    public int recover(StrokeStore into) throws IOException {
+        into.clear();
+        if (!file.exists()) {
+            return 0;
+        }
+        byte[] data = ByteFiles.read(file);
+        Replay replay = replay(data, data.length, into);
+        if (replay.validLength < data.length) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.getChannel().truncate(replay.validLength);
+            }
+        }
+        compactedSize = replay.validLength;
+        return replay.position;
+    }
+
+    public void appendStroke(StrokeStore store, int stroke) {
+        scratch.reset();
+        StrokeCodec.writeStroke(store, stroke, scratch);
+        boolean timed = store.isTimed(stroke);
+        // records written before layers end with the stroke
+        if (store.getLayer(stroke) != 0 || timed) {
+            scratch.writeVarint(store.getLayer(stroke));
+        }
+        enqueue(timed ? TIMED_STROKE : STROKE, scratch);
+    }
+
+    /**
+     * Appends the erase entry {@code from} and the entries after it up to {@code to}.
+     */
+    public void appendErase(StrokeStore store, int from, int to) {
+        appendErase(store, from, to, 0);
+    }
+
+    /**
+     * Like {@link #appendErase(StrokeStore, int, int)} for a store whose first
+     * {@code dropped} entries were flattened and dropped; the journal keeps indices of the
+     * full history.
+     */
+    public void appendErase(StrokeStore store, int from, int to, int dropped) {
+        scratch.reset();
+        scratch.writeVarint(to - from);
+        for (int i = from; i < to; i++) {
+            StrokeCodec.writeEntry(store, i, dropped, scratch);
+        }
+        enqueue(ERASE, scratch);
+    }
+
+    public void appendPosition(int position) {
+        scratch.reset();
+        scratch.writeVarint(position);
+        enqueue(POSITION, scratch);
+    }
+
+    public void appendClear() {
+        scratch.reset();
+        enqueue(CLEAR, scratch);
+    }
+
+    /**
+     * Blocks until every record appended so far is written.
+     */
+    public void flush() throws IOException {
+        try {
+            executor.submit(drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * The failure that stopped the writer, if any.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Writes what is pending and closes the file, waiting for the writer to finish. Throws
+     * if it does not within {@value #CLOSE_TIMEOUT_SECONDS} seconds, when records may be
+     * lost.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+                closeChannel();
+            }
+        });
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("journal writer did not finish within "
+                        + CLOSE_TIMEOUT_SECONDS + " s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted closing the journal");
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void enqueue(int type, VarintOutput payload) {
+        pending.add(frame(type, payload.getBuffer(), payload.size(), crc));
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(drain, BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static byte[] frame(int type, byte[] payload, int length, CRC32 crc) {
+        byte[] record = new byte[HEADER + length];
+        crc.reset();
+        crc.update(payload, 0, length);
+        int checksum = (int) crc.getValue();
+        record[0] = (byte) type;
+        putInt(record, 1, length);
+        putInt(record, 5, checksum);
+        System.arraycopy(payload, 0, record, HEADER, length);
+        return record;
+    }
+
+    private void writePending() {
+        if (pending.isEmpty() || error != null) {
+            return;
+        }
+        List<ByteBuffer> batch = new ArrayList<>();
+        byte[] record;
+        while ((record = pending.poll()) != null) {
+            batch.add(ByteBuffer.wrap(record));
+        }
+        try {
+            if (channel == null) {
+                channel = new FileOutputStream(file, true).getChannel();
+            }
+            ByteBuffer[] buffers = batch.toArray(new ByteBuffer[batch.size()]);
+            ByteBuffer last = buffers[buffers.length - 1];
+            while (last.hasRemaining()) {
+                channel.write(buffers);
+            }
+            recordsSinceCompaction += buffers.length;
+            if (recordsSinceCompaction >= COMPACT_MIN_RECORDS && channel.size() > 2 * compactedSize) {
+                compact();
+            }
+        } catch (IOException e) {
+            error = e;
+            closeChannel();
+        }
+    }
+
+    private void compact() throws IOException {
+        closeChannel();
+        byte[] data = ByteFiles.read(file);
+        StrokeStore store = new StrokeStore();
+        Replay replay = replay(data, data.length, store);
+        VarintOutput payload = new VarintOutput(data.length);
+        StrokeCodec.encode(store, replay.position, payload);
+        byte[] snapshot = frame(SNAPSHOT, payload.getBuffer(), payload.size(), compactCrc);
+        ByteFiles.write(file, snapshot, snapshot.length);
+        recordsSinceCompaction = 0;
+        compactedSize = snapshot.length;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    static Replay replay(byte[] data, int length, StrokeStore into) {
+        Replay replay = new Replay();
+        CRC32 crc = new CRC32();
+        int offset = 0;
+        while (offset + HEADER <= length) {
+            int type = data[offset];
+            int size = getInt(data, offset + 1);
+            int checksum = getInt(data, offset + 5);
+            int start = offset + HEADER;
+            if (size < 0 || size > length - start) {
+                break;
+            }
+            crc.reset();
+            crc.update(data, start, size);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            try {
+                apply(type, data, start, size, into, replay);
+            } catch (IOException e) {
+                break;
+            }
+            offset = start + size;
+            replay.validLength = offset;
+        }
+        return replay;
+    }
+
+    private static void apply(int type, byte[] data, int offset, int length, StrokeStore into,
+                              Replay replay) throws IOException {
+        VarintInput in = new VarintInput(data, offset, length);
+        switch (type) {
+            case STROKE:
+            case TIMED_STROKE:
+                into.truncate(replay.position);
+                StrokeCodec.readStroke(in, into, type == TIMED_STROKE);
+                if (in.remaining() > 0) {
+                    int layer = in.readVarint();
+                    if (layer < 0 || layer >= StrokeStore.MAX_LAYERS) {
+                        into.truncate(replay.position);
+                        throw new IOException("no layer " + layer);
+                    }
+                    into.setLayer(layer);
+                }
+                replay.position = into.size();
+                break;
+            case POSITION:
+                int position = in.readVarint();
+                if (position < 0 || position > into.size()) {
+                    throw new IOException("position out of range");
+                }
+                replay.position = position;
+                break;
+            case WIPE:
+                into.clear();
+                replay.position = 0;
+                break;
+            case CLEAR:
+                into.truncate(replay.position);
+                into.beginClear();
+                replay.position = into.size();
+                break;
+            case ERASE:
+                into.truncate(replay.position);
+                int entries = in.readVarint();
+                if (entries < 1 || entries > in.remaining() / 2) {
+                    throw new IOException("corrupt erase");
+                }
+                int first = into.size();
+                try {
+                    if (!into.isErase(StrokeCodec.readEntry(in, into))) {
+                        throw new IOException("erase record without erase");
+                    }
+                    for (int i = 1; i < entries; i++) {
+                        StrokeCodec.readEntry(in, into);
+                    }
+                } catch (IOException e) {
+                    into.truncate(first);
+                    throw e;
+                }
+                replay.position = into.size();
+                break;
+            case SNAPSHOT:
+                replay.position = StrokeCodec.decode(data, offset, length, into);
+                break;
+            default:
+                throw new IOException("unknown record " + type);
+        }
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | (buffer[offset + 3] & 0xFF);
+    }
+
+    static class Replay {
+        int position;
+        int validLength;
+    }
+}
@@ -0,0 +1,189 @@
+package ua.roma.multicolor.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import ua.roma.multicolor.model.Layers;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Streams strokes as an SVG document, one {@code <path>} per stroke, straight from the
+ * packed coordinates. Nothing but the output buffer of the given {@link Writer} grows
+ * with the drawing.
+ */
+public class SvgWriter {
+
+    // coordinates are written with two decimals, enough below a pixel
+    private static final int DECIMALS = 100;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private final char[] number = new char[16];
+    private Layers layers;
+    private String[] backgrounds = new String[1];
+
+    public SvgWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the strokes of each visible layer as a group with the opacity of the layer,
+     * bottom layer first; null writes all strokes as one layer.
+     */
+    public void setLayers(Layers layers) {
+        this.layers = layers;
+    }
+
+    /**
+     * Image drawn under the strokes of {@code layer}, e.g. a
+     * {@code data:image/png;base64,} URI; null for none.
+     */
+    public void setBackground(int layer, String href) {
+        if (layer >= backgrounds.length) {
+            backgrounds = Arrays.copyOf(backgrounds, layer + 1);
+        }
+        backgrounds[layer] = href;
+    }
+
+    public void write(StrokeStore strokes, int from, int to, int width, int height) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        writeInt(width);
+        out.write("\" height=\"");
+        writeInt(height);
+        out.write("\" viewBox=\"0 0 ");
+        writeInt(width);
+        out.write(' ');
+        writeInt(height);
+        out.write("\">\n<rect width=\"100%\" height=\"100%\" fill=\"#ffffff\"/>\n");
+        int count = layers != null ? layers.size() : 1;
+        for (int layer = 0; layer < count; layer++) {
+            if (layers != null && !layers.isVisible(layer)) {
+                continue;
+            }
+            int opacity = layers != null ? layers.getOpacity(layer) : 0xFF;
+            if (opacity != 0xFF) {
+                out.write("<g opacity=\"");
+                writeFixed(opacity / 255f);
+                out.write("\">\n");
+            }
+            writeLayer(strokes, from, to, layers != null ? layer : -1, width, height);
+            if (opacity != 0xFF) {
+                out.write("</g>\n");
+            }
+        }
+        out.write("</svg>\n");
+        out.flush();
+    }
+
+    /**
+     * Writes the background and the strokes of {@code layer}, or of all layers if it is -1.
+     */
+    private void writeLayer(StrokeStore strokes, int from, int to, int layer, int width,
+                            int height) throws IOException {
+        String background = backgrounds.length > Math.max(layer, 0)
+                ? backgrounds[Math.max(layer, 0)] : null;
+        if (background != null) {
+            out.write("<image xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"");
+            writeInt(width);
+            out.write("\" height=\"");
+            writeInt(height);
+            out.write("\" xlink:href=\"");
+            out.write(background);
+            out.write("\"/>\n");
+        }
+        out.write("<g fill=\"none\" stroke-linecap=\"round\" stroke-linejoin=\"round\">\n");
+        for (int i = Math.max(from, strokes.getVisibleStart(to)); i < to; i++) {
+            if ((layer < 0 || strokes.getLayer(i) == layer) && strokes.isVisible(i, to)) {
+                writeStroke(strokes, i);
+            }
+        }
+        out.write("</g>\n");
+    }
+
+    private void writeStroke(StrokeStore strokes, int stroke) throws IOException {
+        int length = strokes.getLength(stroke);
+        if (length == 0) {
+            return;
+        }
+        int color = strokes.getColor(stroke);
+        out.write("<path stroke=\"#");
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            out.write(HEX[(color >>> shift) & 0xF]);
+        }
+        int alpha = color >>> 24;
+        if (alpha != 0xFF) {
+            out.write("\" stroke-opacity=\"");
+            writeFixed(alpha / 255f);
+        }
+        out.write("\" stroke-width=\"");
+        writeInt(strokes.getWidth(stroke));
+        out.write("\" d=\"M");
+        float[] coords = strokes.getCoords();
+        int index = strokes.getOffset(stroke) * 2;
+        int end = index + length * 2;
+        writePoint(coords[index], coords[index + 1]);
+        if (length == 1) {
+            // a single tap still shows up as a dot thanks to the round cap
+            out.write("l0 0");
+        }
+        // the same curve through the midpoints as StrokeRenderer draws
+        for (index += 2; index < end - 2; index += 2) {
+            out.write('Q');
+            writePoint(coords[index], coords[index + 1]);
+            out.write(' ');
+            writePoint((coords[index] + coords[index + 2]) / 2,
+                    (coords[index + 1] + coords[index + 3]) / 2);
+        }
+        if (length > 1) {
+            out.write('L');
+            writePoint(coords[end - 2], coords[end - 1]);
+        }
+        out.write("\"/>\n");
+    }
+
+    private void writePoint(float x, float y) throws IOException {
+        writeFixed(x);
+        out.write(' ');
+        writeFixed(y);
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeFixedPoint(value, false);
+    }
+
+    private void writeFixed(float value) throws IOException {
+        writeFixedPoint(Math.round(value * DECIMALS), true);
+    }
+
+    /**
+     * Formats without going through String, which would allocate for every coordinate.
+     */
+    private void writeFixedPoint(long value, boolean scaled) throws IOException {
+        boolean negative = value < 0;
+        if (negative) {
+            value = -value;
+        }
+        int pos = number.length;
+        if (scaled) {
+            long fraction = value % DECIMALS;
+            value /= DECIMALS;
+            if (fraction != 0) {
+                if (fraction % 10 != 0) {
+                    number[--pos] = (char) ('0' + fraction % 10);
+                }
+                number[--pos] = (char) ('0' + fraction / 10);
+                number[--pos] = '.';
+            }
+        }
+        do {
+            number[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (negative) {
+            number[--pos] = '-';
+        }
+        out.write(number, pos, number.length - pos);
+    }
+}
@@ -0,0 +1,69 @@
+package ua.roma.multicolor.io;
+
+import java.io.IOException;
+
+/**
+ * Reads what {@link VarintOutput} writes from a byte array range.
+ */
+public class VarintInput {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    public VarintInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int readVarint() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position >= limit) {
+                throw new IOException("truncated varint");
+            }
+            byte b = buffer[position++];
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    public int readSignedVarint() throws IOException {
+        int value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public int readInt() throws IOException {
+        if (limit - position < 4) {
+            throw new IOException("truncated int");
+        }
+        return (buffer[position++] & 0xFF) << 24 | (buffer[position++] & 0xFF) << 16
+                | (buffer[position++] & 0xFF) << 8 | (buffer[position++] & 0xFF);
+    }
+
+    public int readByte() throws IOException {
+        if (position >= limit) {
+            throw new IOException("truncated byte");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public void skip(int bytes) throws IOException {
+        if (bytes > remaining()) {
+            throw new IOException("truncated data");
+        }
+        position += bytes;
+    }
+}
@@ -0,0 +1,101 @@
+package ua.roma.multicolor.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-bucket histogram. Bucket {@code i} counts values up to {@code bounds[i]}, the
+ * last bucket counts everything above the last bound. Recording never allocates.
+ */
+public class Histogram {
+
+    private final String name;
+    private final long[] bounds;
+    private final long[] counts;
+    private long total;
+    private long sum;
+    private long max;
+
+    public Histogram(String name, long... bounds) {
+        this.name = name;
+        this.bounds = bounds.clone();
+        Arrays.sort(this.bounds);
+        counts = new long[bounds.length + 1];
+    }
+
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        total++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, {@link #getMax()} when it
+     * falls into the overflow bucket.
+     */
+    public long getPercentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bounds[i];
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public void dump(StringBuilder out) {
+        out.append(name).append(": count=").append(total)
+                .append(" mean=").append(Math.round(getMean()))
+                .append(" p50=").append(getPercentile(50))
+                .append(" p90=").append(getPercentile(90))
+                .append(" p99=").append(getPercentile(99))
+                .append(" max=").append(max)
+                .append('\n');
+        for (int i = 0; i < counts.length; i++) {
+            out.append("  ").append(i < bounds.length ? "<=" + bounds[i] : ">" + bounds[bounds.length - 1])
+                    .append(' ').append(counts[i]).append('\n');
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ua.roma.multicolor.metrics;
+
+/**
+ * {@link PaintMetrics} that aggregates everything into fixed-bucket histograms.
+ */
+public class HistogramMetrics implements PaintMetrics {
+
+    private static final long RATE_WINDOW_MILLIS = 1000;
+
+    private final Histogram drawTime = new Histogram("draw time us",
+            100, 250, 500, 1000, 2000, 4000, 8000, 16000, 33000, 66000);
+    private final Histogram strokesReplayed = new Histogram("strokes replayed per frame",
+            0, 1, 2, 5, 10, 25, 50, 100, 250, 1000);
+    private final Histogram pointRate = new Histogram("points per second",
+            30, 60, 120, 240, 480, 960, 1920);
+    private final Histogram touchToDraw = new Histogram("touch to draw ms",
+            4, 8, 16, 24, 33, 50, 100, 250);
+    private long windowStart = -1;
+    private int windowPoints;
+
+    @Override
+    public void onFrame(long drawNanos, int strokesReplayed) {
+        drawTime.record(drawNanos / 1000);
+        this.strokesReplayed.record(strokesReplayed);
+    }
+
+    @Override
+    public void onPointsIngested(int points, long eventTimeMillis) {
+        if (windowStart < 0 || eventTimeMillis - windowStart > 2 * RATE_WINDOW_MILLIS) {
+            // first sample or the pen was idle, do not count the pause as a slow window
+            windowStart = eventTimeMillis;
+            windowPoints = 0;
+        } else if (eventTimeMillis - windowStart >= RATE_WINDOW_MILLIS) {
+            pointRate.record(windowPoints * 1000L / (eventTimeMillis - windowStart));
+            windowStart = eventTimeMillis;
+            windowPoints = 0;
+        }
+        windowPoints += points;
+    }
+
+    @Override
+    public void onTouchToDraw(long latencyMillis) {
+        touchToDraw.record(latencyMillis);
+    }
+
+    public Histogram getDrawTime() {
+        return drawTime;
+    }
+
+    public Histogram getStrokesReplayed() {
+        return strokesReplayed;
+    }
+
+    public Histogram getPointRate() {
+        return pointRate;
+    }
+
+    public Histogram getTouchToDraw() {
+        return touchToDraw;
+    }
+
+    public void reset() {
+        drawTime.reset();
+        strokesReplayed.reset();
+        pointRate.reset();
+        touchToDraw.reset();
+        windowStart = -1;
+        windowPoints = 0;
+    }
+
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        drawTime.dump(out);
+        strokesReplayed.dump(out);
+        pointRate.dump(out);
+        touchToDraw.dump(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,14 @@
+package ua.roma.multicolor.metrics;
+
+/**
+ * Receives timings from the paint hot path. Calls happen on the UI thread; a view
+ * without metrics skips the measurements entirely.
+ */
+public interface PaintMetrics {
+
+    void onFrame(long drawNanos, int strokesReplayed);
+
+    void onPointsIngested(int points, long eventTimeMillis);
+
+    void onTouchToDraw(long latencyMillis);
+}
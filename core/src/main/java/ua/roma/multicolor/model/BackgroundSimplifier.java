@@ -0,0 +1,152 @@
+package ua.roma.multicolor.model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simplifies committed strokes of a {@link StrokeStore} off the drawing thread. A stroke
+ * is copied when it is submitted, simplified by a {@link StrokeSimplifier} on a worker
+ * thread and swapped into the store in one step on the thread that owns it, unless the
+ * stroke was dropped in the meantime. Once the slack left by the shrunk strokes outgrows
+ * the points in use the store is compacted. Truncating the store only forgets the results
+ * of the strokes it removed.
+ */
+public class BackgroundSimplifier {
+
+    public static final float DEFAULT_TOLERANCE = 0.75f;
+
+    private final StrokeStore store;
+    private final Executor worker;
+    private final Executor owner;
+    // used by the worker only
+    private final StrokeSimplifier simplifier = new StrokeSimplifier();
+    private float tolerance = DEFAULT_TOLERANCE;
+    // submissions whose result did not come back yet, oldest first; owner thread only
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private long pointsSaved;
+
+    /**
+     * @param owner runs tasks on the thread that modifies {@code store}
+     */
+    public BackgroundSimplifier(StrokeStore store, Executor owner) {
+        this(store, createWorker(), owner);
+    }
+
+    public BackgroundSimplifier(StrokeStore store, Executor worker, Executor owner) {
+        this.store = store;
+        this.worker = worker;
+        this.owner = owner;
+    }
+
+    /**
+     * Points farther than {@code tolerance} pixels from the simplified stroke are kept; 0
+     * turns simplification off.
+     */
+    public void setTolerance(float tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public float getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Queues a committed stroke for simplification.
+     */
+    public void submit(final int stroke) {
+        final int length = store.getLength(stroke);
+        if (tolerance <= 0 || length < 3 || store.isErase(stroke)) {
+            return;
+        }
+        final float[] points = new float[length * 2];
+        System.arraycopy(store.getCoords(), store.getOffset(stroke) * 2, points, 0, length * 2);
+        final int[] times = store.isTimed(stroke) ? new int[length] : null;
+        for (int i = 0; times != null && i < length; i++) {
+            times[i] = store.getTime(store.getOffset(stroke) + i);
+        }
+        final float tolerance = this.tolerance;
+        final Pending submitted = new Pending(stroke);
+        pending.add(submitted);
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int count = simplifier.simplify(points, times, length, tolerance);
+                owner.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        apply(submitted, length, points, times, count);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Forgets pending results, to be called when strokes are dropped or replaced.
+     */
+    public void invalidate() {
+        for (Pending submitted : pending) {
+            submitted.cancelled = true;
+        }
+    }
+
+    /**
+     * Forgets the pending results of the strokes from {@code newSize} on, to be called
+     * before they leave the store; the others still apply.
+     */
+    public void truncate(int newSize) {
+        for (Pending submitted : pending) {
+            submitted.cancelled |= submitted.stroke >= newSize;
+        }
+    }
+
+    /**
+     * Points removed from the store so far.
+     */
+    public long getPointsSaved() {
+        return pointsSaved;
+    }
+
+    private void apply(Pending submitted, int length, float[] points, int[] times, int count) {
+        pending.remove(submitted);
+        int stroke = submitted.stroke;
+        if (submitted.cancelled || count == length || stroke >= store.size()
+                || store.getLength(stroke) != length) {
+            return;
+        }
+        store.replacePoints(stroke, points, times, count);
+        pointsSaved += length - count;
+        if (store.getSlack() > store.getPointCount()) {
+            store.compact();
+        }
+    }
+
+    private static class Pending {
+        final int stroke;
+        boolean cancelled;
+
+        Pending(int stroke) {
+            this.stroke = stroke;
+        }
+    }
+
+    private static Executor createWorker() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "stroke-simplifier");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
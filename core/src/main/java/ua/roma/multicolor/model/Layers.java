@@ -0,0 +1,83 @@
+package ua.roma.multicolor.model;
+
+import java.util.Arrays;
+
+/**
+ * Visibility and opacity of the layers of a drawing, bottom layer first. Which layer a
+ * stroke is on is kept by the {@link StrokeStore}; layers are only ever added, so those
+ * indices stay valid.
+ */
+public class Layers {
+
+    private boolean[] visible = new boolean[4];
+    private int[] opacity = new int[4];
+    private int size;
+
+    public Layers() {
+        add();
+    }
+
+    /**
+     * Appends a visible, opaque layer on top and returns its index.
+     */
+    public int add() {
+        if (size == StrokeStore.MAX_LAYERS) {
+            throw new IllegalStateException("too many layers");
+        }
+        if (size == visible.length) {
+            visible = Arrays.copyOf(visible, size * 2);
+            opacity = Arrays.copyOf(opacity, size * 2);
+        }
+        visible[size] = true;
+        opacity[size] = 0xFF;
+        return size++;
+    }
+
+    /**
+     * Adds layers until there are at least {@code count}.
+     */
+    public void ensureSize(int count) {
+        while (size < count) {
+            add();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isVisible(int layer) {
+        return visible[layer];
+    }
+
+    public void setVisible(int layer, boolean visible) {
+        this.visible[layer] = visible;
+    }
+
+    /**
+     * Alpha the layer is composited with, 0 to 255.
+     */
+    public int getOpacity(int layer) {
+        return opacity[layer];
+    }
+
+    public void setOpacity(int layer, int opacity) {
+        this.opacity[layer] = Math.max(0, Math.min(0xFF, opacity));
+    }
+
+    /**
+     * Keeps only the first layer, visible and opaque.
+     */
+    public void reset() {
+        size = 0;
+        add();
+    }
+
+    public Layers copy() {
+        Layers copy = new Layers();
+        copy.visible = visible.clone();
+        copy.opacity = opacity.clone();
+        copy.size = size;
+        return copy;
+    }
+}
@@ -0,0 +1,194 @@
+package ua.roma.multicolor.model;
+
+/**
+ * Strokes drawn by several pointers at once, one per pointer id. Each stroke is captured
+ * into its own buffer, a one-stroke {@link StrokeStore} with its own
+ * {@link StrokeSmoother}, taken from a pool of {@link #MAX_POINTERS} that is reused from
+ * stroke to stroke, so capturing stops allocating once the buffers have grown.
+ *
+ * <p>Finished strokes go into the drawing in the order their pointers went down. A stroke
+ * that ends while one begun before it is still being drawn waits for it, so the history
+ * does not depend on which finger is lifted first and matches the order the live strokes
+ * are stacked in.
+ */
+public class PointerStrokes {
+
+    public static final int MAX_POINTERS = 10;
+
+    private final StrokeStore[] buffers = new StrokeStore[MAX_POINTERS];
+    private final StrokeSmoother[] smoothers = new StrokeSmoother[MAX_POINTERS];
+    private final int[] pointerIds = new int[MAX_POINTERS];
+    private final boolean[] ended = new boolean[MAX_POINTERS];
+    private final boolean[] inUse = new boolean[MAX_POINTERS];
+    // slots of the live strokes in the order their pointers went down
+    private final int[] order = new int[MAX_POINTERS];
+    private int count;
+    private float minDistance = StrokeSmoother.DEFAULT_MIN_DISTANCE;
+    private float tolerance = StrokeSmoother.DEFAULT_TOLERANCE;
+
+    /**
+     * Smoothing of the strokes captured from now on, see
+     * {@link StrokeSmoother#setTolerance(float, float)}.
+     */
+    public void setTolerance(float minDistance, float tolerance) {
+        this.minDistance = minDistance;
+        this.tolerance = tolerance;
+        for (StrokeSmoother smoother : smoothers) {
+            if (smoother != null) {
+                smoother.setTolerance(minDistance, tolerance);
+            }
+        }
+    }
+
+    /**
+     * Starts a stroke for {@code pointerId} at x, y, touched down at {@code time}
+     * milliseconds, and returns its slot, or -1 if that pointer is drawing already or
+     * every buffer is taken.
+     */
+    public int begin(int pointerId, int color, int width, int layer, float x, float y,
+                     int time) {
+        if (count == MAX_POINTERS || find(pointerId) >= 0) {
+            return -1;
+        }
+        int slot = 0;
+        while (inUse[slot]) {
+            slot++;
+        }
+        if (buffers[slot] == null) {
+            buffers[slot] = new StrokeStore(1, 256);
+            smoothers[slot] = new StrokeSmoother();
+            smoothers[slot].setTolerance(minDistance, tolerance);
+        }
+        StrokeStore buffer = buffers[slot];
+        buffer.clear();
+        buffer.beginStroke(color, width);
+        buffer.setLayer(layer);
+        buffer.addPoint(x, y, time);
+        smoothers[slot].begin(x, y);
+        pointerIds[slot] = pointerId;
+        ended[slot] = false;
+        inUse[slot] = true;
+        order[count++] = slot;
+        return slot;
+    }
+
+    /**
+     * Feeds the next sample of the stroke of {@code pointerId}, taken at {@code time}
+     * milliseconds, and returns its slot, or -1 if the pointer is not drawing.
+     */
+    public int add(int pointerId, float x, float y, int time) {
+        int slot = find(pointerId);
+        if (slot >= 0) {
+            smoothers[slot].add(buffers[slot], x, y, time);
+        }
+        return slot;
+    }
+
+    /**
+     * Finishes the stroke of {@code pointerId}, which goes into the drawing with the next
+     * {@link #commit(StrokeStore)} that finds no earlier stroke still live; returns its
+     * slot or -1.
+     */
+    public int end(int pointerId) {
+        int slot = find(pointerId);
+        if (slot >= 0) {
+            smoothers[slot].finish(buffers[slot]);
+            ended[slot] = true;
+        }
+        return slot;
+    }
+
+    /**
+     * Drops every stroke that is still being drawn; finished ones waiting for them can be
+     * committed afterwards.
+     */
+    public void cancel() {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = order[i];
+            if (ended[slot]) {
+                order[kept++] = slot;
+            } else {
+                inUse[slot] = false;
+            }
+        }
+        count = kept;
+    }
+
+    /**
+     * Drops every stroke, finished or not.
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            inUse[order[i]] = false;
+        }
+        count = 0;
+    }
+
+    /**
+     * Appends the finished strokes that no longer wait for an earlier one to
+     * {@code target} and returns how many.
+     */
+    public int commit(StrokeStore target) {
+        int committed = 0;
+        for (int slot = poll(); slot >= 0; slot = poll()) {
+            target.appendStroke(buffers[slot], 0);
+            committed++;
+        }
+        return committed;
+    }
+
+    /**
+     * Takes the next finished stroke that no longer waits for an earlier one and returns
+     * its slot, -1 if there is none. Its buffer stays valid until the next
+     * {@link #begin}.
+     */
+    public int poll() {
+        if (count == 0 || !ended[order[0]]) {
+            return -1;
+        }
+        int slot = order[0];
+        inUse[slot] = false;
+        System.arraycopy(order, 1, order, 0, --count);
+        return slot;
+    }
+
+    /**
+     * Strokes begun and not committed yet.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Slot of the {@code i}-th stroke in the order the pointers went down.
+     */
+    public int getSlot(int i) {
+        return order[i];
+    }
+
+    /**
+     * The stroke captured in {@code slot}, stroke 0 of the returned store.
+     */
+    public StrokeStore getBuffer(int slot) {
+        return buffers[slot];
+    }
+
+    public boolean isEnded(int slot) {
+        return ended[slot];
+    }
+
+    /**
+     * Slot of the stroke {@code pointerId} is drawing, -1 if none. A finished stroke no
+     * longer belongs to its pointer, whose id may come back for the next one.
+     */
+    public int find(int pointerId) {
+        for (int i = 0; i < count; i++) {
+            int slot = order[i];
+            if (pointerIds[slot] == pointerId && !ended[slot]) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
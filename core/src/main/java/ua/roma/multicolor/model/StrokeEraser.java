@@ -0,0 +1,336 @@
+package ua.roma.multicolor.model;
+
+import java.util.Arrays;
+
+/**
+ * Removes the parts of strokes that an eraser path passes over. Candidates come from the
+ * {@link StrokeGrid}; each of their segments is first checked against the bounding box of
+ * every eraser segment and only then measured exactly. A stroke that is hit is erased and
+ * the parts of it the eraser missed are appended as new strokes, cut where the eraser edge
+ * meets the stroke edge.
+ */
+public class StrokeEraser {
+
+    private static final int SEARCH_STEPS = 24;
+
+    private final IntList candidates = new IntList();
+    private final IntList targets = new IntList();
+    // pieces to append: source stroke and end of its points in pieceCoords
+    private final IntList pieceStrokes = new IntList();
+    private final IntList pieceEnds = new IntList();
+    private float[] pieceCoords = new float[256];
+    private int pieceSize;
+    private int pieceStart;
+    // eraser segment of the current measurement
+    private float cx, cy, dx, dy;
+    // parameter ranges along the current stroke segment within reach of each eraser segment
+    private float[] hitFrom = new float[16];
+    private float[] hitTo = new float[16];
+    private int hits;
+
+    /**
+     * Erases what lies within {@code radius} of the polyline given by the first
+     * {@code count} x,y pairs of {@code path}. The store must not have undone entries,
+     * and {@code index} must hold every entry. Appends an erase entry followed by the
+     * remaining pieces, continuing the previous action if {@code continued}, and returns
+     * the number of entries appended, 0 if nothing was hit. Only strokes on layer 0 are
+     * erased.
+     */
+    public int erase(StrokeStore strokes, StrokeGrid index, float[] path, int count, float radius,
+                     boolean continued) {
+        return erase(strokes, index, path, count, radius, continued, 0);
+    }
+
+    /**
+     * Like {@link #erase(StrokeStore, StrokeGrid, float[], int, float, boolean)} for the
+     * strokes on {@code layer}; the appended entries go on that layer too.
+     */
+    public int erase(StrokeStore strokes, StrokeGrid index, float[] path, int count, float radius,
+                     boolean continued, int layer) {
+        if (count == 0) {
+            return 0;
+        }
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            left = Math.min(left, path[i * 2]);
+            top = Math.min(top, path[i * 2 + 1]);
+            right = Math.max(right, path[i * 2]);
+            bottom = Math.max(bottom, path[i * 2 + 1]);
+        }
+        int size = strokes.size();
+        index.query(strokes, left - radius, top - radius, right + radius, bottom + radius, size,
+                candidates);
+        targets.clear();
+        pieceStrokes.clear();
+        pieceEnds.clear();
+        pieceSize = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            int stroke = candidates.get(i);
+            if (strokes.getLayer(stroke) == layer && strokes.isVisible(stroke, size)
+                    && split(strokes, stroke, path, count, radius + strokes.getWidth(stroke) / 2f)) {
+                targets.add(stroke);
+            }
+        }
+        if (targets.isEmpty()) {
+            return 0;
+        }
+        strokes.beginErase();
+        if (continued) {
+            strokes.markContinued();
+        }
+        strokes.setLayer(layer);
+        for (int i = 0; i < targets.size(); i++) {
+            strokes.addErased(targets.get(i));
+        }
+        int start = 0;
+        for (int i = 0; i < pieceStrokes.size(); i++) {
+            int source = pieceStrokes.get(i);
+            strokes.beginStroke(strokes.getColor(source), strokes.getWidth(source));
+            strokes.markContinued();
+            strokes.setLayer(layer);
+            int end = pieceEnds.get(i);
+            for (int p = start; p < end; p += 2) {
+                strokes.addPoint(pieceCoords[p], pieceCoords[p + 1]);
+            }
+            start = end;
+        }
+        return strokes.size() - size;
+    }
+
+    /**
+     * Collects the pieces of {@code stroke} farther than {@code reach} from the path and
+     * returns whether anything of it was within reach.
+     */
+    private boolean split(StrokeStore strokes, int stroke, float[] path, int count, float reach) {
+        int offset = strokes.getOffset(stroke);
+        int length = strokes.getLength(stroke);
+        float reach2 = reach * reach;
+        if (length == 1) {
+            float x = strokes.getX(offset);
+            float y = strokes.getY(offset);
+            for (int e = 0; e < Math.max(count - 1, 1); e++) {
+                setEraser(path, e, count);
+                if (distanceSquared(x, y) <= reach2) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int undo = pieceSize;
+        int undoPieces = pieceStrokes.size();
+        boolean hit = false;
+        startPiece();
+        addPiecePoint(strokes.getX(offset), strokes.getY(offset));
+        for (int k = offset; k < offset + length - 1; k++) {
+            float ax = strokes.getX(k), ay = strokes.getY(k);
+            float bx = strokes.getX(k + 1), by = strokes.getY(k + 1);
+            hits = 0;
+            for (int e = 0; e < Math.max(count - 1, 1); e++) {
+                setEraser(path, e, count);
+                if (Math.min(ax, bx) - reach > Math.max(cx, dx)
+                        || Math.max(ax, bx) + reach < Math.min(cx, dx)
+                        || Math.min(ay, by) - reach > Math.max(cy, dy)
+                        || Math.max(ay, by) + reach < Math.min(cy, dy)
+                        || segmentDistanceSquared(ax, ay, bx, by) > reach2) {
+                    continue;
+                }
+                // distance to one eraser segment is convex along ab, so its hit is one
+                // interval; the path as a whole may cross ab several times
+                float closest = closest(ax, ay, bx, by);
+                addHit(boundary(ax, ay, bx, by, reach2, closest, 0),
+                        boundary(ax, ay, bx, by, reach2, closest, 1));
+            }
+            if (hits == 0) {
+                addPiecePoint(bx, by);
+                continue;
+            }
+            hit = true;
+            mergeHits();
+            for (int h = 0; h < hits; h++) {
+                if (hitFrom[h] > 0) {
+                    addPiecePoint(ax + (bx - ax) * hitFrom[h], ay + (by - ay) * hitFrom[h]);
+                }
+                endPiece(stroke);
+                startPiece();
+                if (hitTo[h] < 1) {
+                    addPiecePoint(ax + (bx - ax) * hitTo[h], ay + (by - ay) * hitTo[h]);
+                }
+            }
+            addPiecePoint(bx, by);
+        }
+        endPiece(stroke);
+        if (!hit) {
+            pieceSize = undo;
+            while (pieceStrokes.size() > undoPieces) {
+                pieceStrokes.removeLast();
+                pieceEnds.removeLast();
+            }
+        }
+        return hit;
+    }
+
+    private void addHit(float from, float to) {
+        if (hits == hitFrom.length) {
+            hitFrom = Arrays.copyOf(hitFrom, hits * 2);
+            hitTo = Arrays.copyOf(hitTo, hits * 2);
+        }
+        // insertion sort by start, a segment is rarely hit more than a few times
+        int i = hits++;
+        while (i > 0 && hitFrom[i - 1] > from) {
+            hitFrom[i] = hitFrom[i - 1];
+            hitTo[i] = hitTo[i - 1];
+            i--;
+        }
+        hitFrom[i] = from;
+        hitTo[i] = to;
+    }
+
+    /**
+     * Joins the overlapping hit ranges, leaving disjoint ones in order.
+     */
+    private void mergeHits() {
+        int merged = 0;
+        for (int i = 1; i < hits; i++) {
+            if (hitFrom[i] <= hitTo[merged]) {
+                hitTo[merged] = Math.max(hitTo[merged], hitTo[i]);
+            } else {
+                merged++;
+                hitFrom[merged] = hitFrom[i];
+                hitTo[merged] = hitTo[i];
+            }
+        }
+        hits = merged + 1;
+    }
+
+    private void setEraser(float[] path, int segment, int count) {
+        cx = path[segment * 2];
+        cy = path[segment * 2 + 1];
+        int next = Math.min(segment + 1, count - 1);
+        dx = path[next * 2];
+        dy = path[next * 2 + 1];
+    }
+
+    /**
+     * Squared distance from a point to the current eraser segment.
+     */
+    private float distanceSquared(float x, float y) {
+        float ex = dx - cx;
+        float ey = dy - cy;
+        float length2 = ex * ex + ey * ey;
+        float t = length2 == 0 ? 0 : ((x - cx) * ex + (y - cy) * ey) / length2;
+        t = Math.max(0, Math.min(1, t));
+        float px = cx + ex * t - x;
+        float py = cy + ey * t - y;
+        return px * px + py * py;
+    }
+
+    /**
+     * Squared distance between segment ab and the current eraser segment.
+     */
+    private float segmentDistanceSquared(float ax, float ay, float bx, float by) {
+        if (crosses(ax, ay, bx, by)) {
+            return 0;
+        }
+        float ex = dx - cx;
+        float ey = dy - cy;
+        float length2 = ex * ex + ey * ey;
+        float best = Math.min(distanceSquared(ax, ay), distanceSquared(bx, by));
+        float sx = bx - ax;
+        float sy = by - ay;
+        float stroke2 = sx * sx + sy * sy;
+        if (stroke2 > 0) {
+            best = Math.min(best, pointToSegment(cx, cy, ax, ay, sx, sy, stroke2));
+            best = Math.min(best, pointToSegment(dx, dy, ax, ay, sx, sy, stroke2));
+        } else if (length2 == 0) {
+            best = Math.min(best, (ax - cx) * (ax - cx) + (ay - cy) * (ay - cy));
+        }
+        return best;
+    }
+
+    private boolean crosses(float ax, float ay, float bx, float by) {
+        float d1 = cross(cx, cy, dx, dy, ax, ay);
+        float d2 = cross(cx, cy, dx, dy, bx, by);
+        float d3 = cross(ax, ay, bx, by, cx, cy);
+        float d4 = cross(ax, ay, bx, by, dx, dy);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+                && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    private static float cross(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    private static float pointToSegment(float x, float y, float ax, float ay, float sx, float sy,
+                                        float length2) {
+        float t = ((x - ax) * sx + (y - ay) * sy) / length2;
+        t = Math.max(0, Math.min(1, t));
+        float px = ax + sx * t - x;
+        float py = ay + sy * t - y;
+        return px * px + py * py;
+    }
+
+    /**
+     * Parameter along ab of the point closest to the current eraser segment.
+     */
+    private float closest(float ax, float ay, float bx, float by) {
+        float lo = 0, hi = 1;
+        for (int i = 0; i < SEARCH_STEPS * 2; i++) {
+            float m1 = lo + (hi - lo) / 3;
+            float m2 = hi - (hi - lo) / 3;
+            if (distanceAt(ax, ay, bx, by, m1) <= distanceAt(ax, ay, bx, by, m2)) {
+                hi = m2;
+            } else {
+                lo = m1;
+            }
+        }
+        return (lo + hi) / 2;
+    }
+
+    /**
+     * Parameter between {@code inside}, within reach, and {@code end} where ab leaves the
+     * reach of the current eraser segment; {@code end} itself if it is within reach.
+     */
+    private float boundary(float ax, float ay, float bx, float by, float reach2, float inside,
+                           float end) {
+        if (distanceAt(ax, ay, bx, by, end) <= reach2) {
+            return end;
+        }
+        float in = inside, out = end;
+        for (int i = 0; i < SEARCH_STEPS; i++) {
+            float middle = (in + out) / 2;
+            if (distanceAt(ax, ay, bx, by, middle) <= reach2) {
+                in = middle;
+            } else {
+                out = middle;
+            }
+        }
+        return out;
+    }
+
+    private float distanceAt(float ax, float ay, float bx, float by, float t) {
+        return distanceSquared(ax + (bx - ax) * t, ay + (by - ay) * t);
+    }
+
+    private void startPiece() {
+        pieceStart = pieceSize;
+    }
+
+    private void addPiecePoint(float x, float y) {
+        if (pieceSize + 2 > pieceCoords.length) {
+            pieceCoords = Arrays.copyOf(pieceCoords, pieceCoords.length * 2);
+        }
+        pieceCoords[pieceSize++] = x;
+        pieceCoords[pieceSize++] = y;
+    }
+
+    private void endPiece(int stroke) {
+        // a single point left over at a cut would show up as a dot
+        if (pieceSize - pieceStart < 4) {
+            pieceSize = pieceStart;
+            return;
+        }
+        pieceStrokes.add(stroke);
+        pieceEnds.add(pieceSize);
+    }
+}
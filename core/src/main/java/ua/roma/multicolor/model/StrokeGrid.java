@@ -0,0 +1,248 @@
+package ua.roma.multicolor.model;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the painted bounds of the strokes of a {@link StrokeStore}, answering
+ * which strokes touch a rectangle without scanning all of them. Cells are hashed, so the
+ * canvas can be any size; strokes spanning too many cells go to a separate list that
+ * every query checks.
+ *
+ * <p>Stroke indices are added in increasing order, which keeps every cell list sorted and
+ * lets {@link #truncate(StrokeStore, int)} pop removed strokes off the cell tails.
+ */
+public class StrokeGrid {
+
+    public static final int DEFAULT_CELL_SIZE = 128;
+    private static final int MAX_CELLS_PER_STROKE = 64;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int cellSize;
+    // open addressing table from cell key to cell index
+    private long[] keys;
+    private int[] slots;
+    private IntList[] cells = new IntList[64];
+    private int cellCount;
+    private final IntList large = new IntList();
+    // query stamp per stroke, to report strokes spanning several cells once
+    private int[] seen = new int[256];
+    private int stamp;
+    private int size;
+
+    public StrokeGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public StrokeGrid(int cellSize) {
+        this.cellSize = cellSize;
+        keys = new long[256];
+        slots = new int[256];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Number of strokes indexed, strokes {@code 0..size()-1}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Indexes the next stroke, which must be stroke {@link #size()} of {@code strokes}.
+     */
+    public void add(StrokeStore strokes, int stroke) {
+        if (stroke != size) {
+            throw new IllegalArgumentException("expected stroke " + size + ", got " + stroke);
+        }
+        size++;
+        if (strokes.getLeft(stroke) > strokes.getRight(stroke)) {
+            return;
+        }
+        int left = cell(strokes.getLeft(stroke) - pad(strokes, stroke));
+        int top = cell(strokes.getTop(stroke) - pad(strokes, stroke));
+        int right = cell(strokes.getRight(stroke) + pad(strokes, stroke));
+        int bottom = cell(strokes.getBottom(stroke) + pad(strokes, stroke));
+        if ((long) (right - left + 1) * (bottom - top + 1) > MAX_CELLS_PER_STROKE) {
+            large.add(stroke);
+            return;
+        }
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                cellFor(key(x, y), true).add(stroke);
+            }
+        }
+    }
+
+    /**
+     * Indexes every stroke of {@code strokes} not indexed yet.
+     */
+    public void addAll(StrokeStore strokes) {
+        for (int i = size; i < strokes.size(); i++) {
+            add(strokes, i);
+        }
+    }
+
+    /**
+     * Drops strokes from {@code newSize} on; must be called while they are still in
+     * {@code strokes}.
+     */
+    public void truncate(StrokeStore strokes, int newSize) {
+        for (int stroke = size - 1; stroke >= newSize; stroke--) {
+            if (strokes.getLeft(stroke) > strokes.getRight(stroke)) {
+                continue;
+            }
+            int left = cell(strokes.getLeft(stroke) - pad(strokes, stroke));
+            int top = cell(strokes.getTop(stroke) - pad(strokes, stroke));
+            int right = cell(strokes.getRight(stroke) + pad(strokes, stroke));
+            int bottom = cell(strokes.getBottom(stroke) + pad(strokes, stroke));
+            if ((long) (right - left + 1) * (bottom - top + 1) > MAX_CELLS_PER_STROKE) {
+                continue;
+            }
+            for (int y = top; y <= bottom; y++) {
+                for (int x = left; x <= right; x++) {
+                    IntList cell = cellFor(key(x, y), false);
+                    while (cell != null && !cell.isEmpty() && cell.last() >= newSize) {
+                        cell.removeLast();
+                    }
+                }
+            }
+        }
+        while (!large.isEmpty() && large.last() >= newSize) {
+            large.removeLast();
+        }
+        size = Math.min(size, newSize);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < cellCount; i++) {
+            cells[i] = null;
+        }
+        cellCount = 0;
+        large.clear();
+        size = 0;
+    }
+
+    /**
+     * Collects, in increasing order, the entries below {@code limit} whose painted area
+     * overlaps the rectangle. Erase entries and erased strokes are included, callers pick
+     * the ones they need with {@link StrokeStore#isVisible(int, int)}.
+     */
+    public void query(StrokeStore strokes, float left, float top, float right, float bottom,
+                      int limit, IntList out) {
+        out.clear();
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        if (seen.length < size) {
+            seen = Arrays.copyOf(seen, Math.max(size, seen.length * 2));
+        }
+        int cellLeft = cell(left);
+        int cellTop = cell(top);
+        int cellRight = cell(right);
+        int cellBottom = cell(bottom);
+        if ((long) (cellRight - cellLeft + 1) * (cellBottom - cellTop + 1) > cellCount) {
+            // the rectangle covers more cells than exist, walk the cells instead
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    long key = keys[i];
+                    int x = (int) (key >> 32);
+                    int y = (int) key;
+                    if (x >= cellLeft && x <= cellRight && y >= cellTop && y <= cellBottom) {
+                        collect(cells[slots[i]], strokes, left, top, right, bottom, limit, out);
+                    }
+                }
+            }
+        } else {
+            for (int y = cellTop; y <= cellBottom; y++) {
+                for (int x = cellLeft; x <= cellRight; x++) {
+                    IntList cell = cellFor(key(x, y), false);
+                    if (cell != null) {
+                        collect(cell, strokes, left, top, right, bottom, limit, out);
+                    }
+                }
+            }
+        }
+        collect(large, strokes, left, top, right, bottom, limit, out);
+        out.sort();
+    }
+
+    private void collect(IntList cell, StrokeStore strokes, float left, float top, float right,
+                         float bottom, int limit, IntList out) {
+        for (int i = 0; i < cell.size(); i++) {
+            int stroke = cell.get(i);
+            if (stroke >= limit) {
+                // cell lists are sorted
+                break;
+            }
+            if (seen[stroke] != stamp) {
+                seen[stroke] = stamp;
+                if (strokes.intersects(stroke, left, top, right, bottom)) {
+                    out.add(stroke);
+                }
+            }
+        }
+    }
+
+    private float pad(StrokeStore strokes, int stroke) {
+        return strokes.getWidth(stroke) / 2f + 1;
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private IntList cellFor(long key, boolean create) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return cells[slots[index]];
+            }
+            index = (index + 1) & mask;
+        }
+        if (!create) {
+            return null;
+        }
+        if (cellCount == cells.length) {
+            cells = Arrays.copyOf(cells, cellCount * 2);
+        }
+        IntList cell = new IntList(8);
+        cells[cellCount] = cell;
+        keys[index] = key;
+        slots[index] = cellCount++;
+        if (cellCount * 2 > keys.length) {
+            rehash();
+        }
+        return cell;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = hash(oldKeys[i]) & mask;
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                slots[index] = oldSlots[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,242 @@
+package ua.roma.multicolor.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coarser copies of the strokes of a {@link StrokeStore} for drawing them zoomed out.
+ * Level {@code k} of a stroke is simplified with a tolerance of {@code 2^k} times
+ * {@link #TOLERANCE}, so drawn at scale {@code 1 / 2^k} it stays within
+ * {@link #TOLERANCE} screen pixels of the stroke. Like {@link BackgroundSimplifier} the
+ * levels are built on a worker thread from a copy taken on submit and swapped in on the
+ * thread that owns the store; until then {@link #getLength(int, int)} is 0 and the stroke
+ * is drawn from the store.
+ */
+public class StrokeLod {
+
+    public static final int LEVELS = 4;
+    // screen pixels a level may deviate from the stroke
+    public static final float TOLERANCE = 0.5f;
+
+    private final StrokeStore store;
+    private final Executor worker;
+    private final Executor owner;
+    // used by the worker only
+    private final StrokeSimplifier simplifier = new StrokeSimplifier();
+    // points of every level, packed like StrokeStore#getCoords
+    private float[] coords = new float[1024];
+    private int used;
+    private int slack;
+    // per stroke and level, at stroke * LEVELS + level - 1; a length of 0 is not built yet
+    private int[] offsets = new int[64 * LEVELS];
+    private int[] lengths = new int[64 * LEVELS];
+    // strokes the arrays cover
+    private int size;
+    // entries dropped from the front so far, so results submitted before find their stroke
+    private int dropped;
+    // submissions whose levels did not come back yet, oldest first; owner thread only
+    private final Deque<Pending> pending = new ArrayDeque<>();
+
+    /**
+     * @param owner runs tasks on the thread that modifies {@code store}
+     */
+    public StrokeLod(StrokeStore store, Executor owner) {
+        this(store, createWorker(), owner);
+    }
+
+    public StrokeLod(StrokeStore store, Executor worker, Executor owner) {
+        this.store = store;
+        this.worker = worker;
+        this.owner = owner;
+    }
+
+    /**
+     * The level to draw with at {@code scale}: the coarsest whose tolerance still shows
+     * as at most {@link #TOLERANCE} pixels, or 0 for the strokes themselves.
+     */
+    public static int levelFor(float scale) {
+        if (scale >= 1) {
+            return 0;
+        }
+        int level = (int) Math.floor(Math.log(1 / scale) / Math.log(2) + 1e-4);
+        return Math.min(level, LEVELS);
+    }
+
+    /**
+     * Queues a committed stroke for building its levels.
+     */
+    public void submit(final int stroke) {
+        final int length = store.getLength(stroke);
+        if (length < 3 || store.isErase(stroke)) {
+            return;
+        }
+        final float[] points = new float[length * 2];
+        System.arraycopy(store.getCoords(), store.getOffset(stroke) * 2, points, 0, length * 2);
+        final Pending submitted = new Pending(stroke + dropped);
+        pending.add(submitted);
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                final float[] levels = new float[length * 2 * LEVELS];
+                final int[] counts = new int[LEVELS];
+                int offset = 0;
+                for (int level = 1; level <= LEVELS; level++) {
+                    float[] copy = Arrays.copyOf(points, points.length);
+                    int count = simplifier.simplify(copy, length,
+                            TOLERANCE * (1 << level));
+                    System.arraycopy(copy, 0, levels, offset, count * 2);
+                    counts[level - 1] = count;
+                    offset += count * 2;
+                }
+                owner.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        apply(submitted, levels, counts);
+                    }
+                });
+            }
+        });
+    }
+
+    public float[] getCoords() {
+        return coords;
+    }
+
+    /**
+     * First point of {@code level} of {@code stroke} in {@link #getCoords()}.
+     */
+    public int getOffset(int stroke, int level) {
+        return offsets[stroke * LEVELS + level - 1];
+    }
+
+    /**
+     * Points of {@code level} of {@code stroke}, 0 if it is not built.
+     */
+    public int getLength(int stroke, int level) {
+        return level > 0 && stroke < size ? lengths[stroke * LEVELS + level - 1] : 0;
+    }
+
+    /**
+     * Drops the levels of the strokes from {@code newSize} on, which left the store.
+     */
+    public void truncate(int newSize) {
+        // the levels pending for the strokes below are still good
+        for (Pending submitted : pending) {
+            submitted.cancelled |= submitted.entry >= newSize + dropped;
+        }
+        for (int i = newSize * LEVELS; i < size * LEVELS; i++) {
+            slack += lengths[i] * 2;
+            lengths[i] = 0;
+        }
+        size = Math.min(size, newSize);
+        compactIfSparse();
+    }
+
+    /**
+     * Follows the store dropping its first {@code count} entries.
+     */
+    public void dropFirst(int count) {
+        dropped += count;
+        // levels are only kept up to the last stroke built
+        count = Math.min(count, size);
+        for (int i = 0; i < count * LEVELS; i++) {
+            slack += lengths[i] * 2;
+        }
+        System.arraycopy(offsets, count * LEVELS, offsets, 0, (size - count) * LEVELS);
+        System.arraycopy(lengths, count * LEVELS, lengths, 0, (size - count) * LEVELS);
+        Arrays.fill(lengths, (size - count) * LEVELS, size * LEVELS, 0);
+        size -= count;
+        compactIfSparse();
+    }
+
+    public void clear() {
+        for (Pending submitted : pending) {
+            submitted.cancelled = true;
+        }
+        Arrays.fill(lengths, 0, size * LEVELS, 0);
+        size = 0;
+        used = 0;
+        slack = 0;
+        dropped = 0;
+    }
+
+    private void apply(Pending submitted, float[] levels, int[] counts) {
+        pending.remove(submitted);
+        int stroke = submitted.entry - dropped;
+        if (submitted.cancelled || stroke < 0 || stroke >= store.size()) {
+            return;
+        }
+        if (stroke >= size) {
+            if ((stroke + 1) * LEVELS > lengths.length) {
+                int capacity = Math.max((stroke + 1) * LEVELS, lengths.length * 2);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            size = stroke + 1;
+        }
+        int total = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            total += counts[level] * 2;
+        }
+        if (used + total > coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(used + total, coords.length * 2));
+        }
+        System.arraycopy(levels, 0, coords, used, total);
+        for (int level = 0; level < LEVELS; level++) {
+            int i = stroke * LEVELS + level;
+            slack += lengths[i] * 2;
+            offsets[i] = used / 2;
+            lengths[i] = counts[level];
+            used += counts[level] * 2;
+        }
+        compactIfSparse();
+    }
+
+    private void compactIfSparse() {
+        if (slack <= used / 2) {
+            return;
+        }
+        float[] packed = new float[Math.max(1024, used - slack)];
+        int next = 0;
+        for (int i = 0; i < size * LEVELS; i++) {
+            if (lengths[i] > 0) {
+                System.arraycopy(coords, offsets[i] * 2, packed, next, lengths[i] * 2);
+                offsets[i] = next / 2;
+                next += lengths[i] * 2;
+            }
+        }
+        coords = packed;
+        used = next;
+        slack = 0;
+    }
+
+    private static class Pending {
+        final int entry;
+        boolean cancelled;
+
+        Pending(int entry) {
+            this.entry = entry;
+        }
+    }
+
+    private static Executor createWorker() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "stroke-lod");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,97 @@
+package ua.roma.multicolor.model;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of a polyline: keeps the point farthest from the line
+ * between two kept points while it is farther than the tolerance, and drops the rest. The
+ * recursion runs on an explicit stack whose arrays are reused between calls, so one
+ * instance should stay on one thread.
+ */
+public class StrokeSimplifier {
+
+    private int[] stack = new int[64];
+    private boolean[] keep = new boolean[64];
+
+    /**
+     * Simplifies the first {@code count} x,y pairs of {@code points} in place and returns
+     * how many are left. The first and last points are always kept.
+     */
+    public int simplify(float[] points, int count, float tolerance) {
+        return simplify(points, null, count, tolerance);
+    }
+
+    /**
+     * Like {@link #simplify(float[], int, float)}, keeping the entries of {@code times}
+     * that go with the kept points, if it is not null.
+     */
+    public int simplify(float[] points, int[] times, int count, float tolerance) {
+        if (count < 3) {
+            return count;
+        }
+        if (keep.length < count) {
+            keep = new boolean[Math.max(count, keep.length * 2)];
+        }
+        Arrays.fill(keep, 0, count, false);
+        keep[0] = keep[count - 1] = true;
+        float tolerance2 = tolerance * tolerance;
+        int top = 0;
+        top = push(top, 0, count - 1);
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            float ax = points[first * 2], ay = points[first * 2 + 1];
+            float sx = points[last * 2] - ax, sy = points[last * 2 + 1] - ay;
+            float length2 = sx * sx + sy * sy;
+            float farthest = -1;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                float dx = points[i * 2] - ax;
+                float dy = points[i * 2 + 1] - ay;
+                float distance2;
+                if (length2 == 0) {
+                    distance2 = dx * dx + dy * dy;
+                } else {
+                    // distance to the segment, so points beyond its ends are measured to them
+                    float t = Math.max(0, Math.min(1, (dx * sx + dy * sy) / length2));
+                    float px = dx - sx * t;
+                    float py = dy - sy * t;
+                    distance2 = px * px + py * py;
+                }
+                if (distance2 > farthest) {
+                    farthest = distance2;
+                    index = i;
+                }
+            }
+            if (farthest > tolerance2) {
+                keep[index] = true;
+                top = push(top, first, index);
+                top = push(top, index, last);
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                points[kept * 2] = points[i * 2];
+                points[kept * 2 + 1] = points[i * 2 + 1];
+                if (times != null) {
+                    times[kept] = times[i];
+                }
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    private int push(int top, int first, int last) {
+        if (last - first < 2) {
+            return top;
+        }
+        if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top] = first;
+        stack[top + 1] = last;
+        return top + 2;
+    }
+}
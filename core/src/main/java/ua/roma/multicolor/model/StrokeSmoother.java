@@ -0,0 +1,177 @@
+package ua.roma.multicolor.model;
+
+/**
+ * Drops touch samples that add nothing to the shape of a stroke while it is captured. The
+ * last point of the stroke is a tail that follows the finger. It slides to each new sample
+ * as long as every sample passed over stays within the tolerance of the line from the last
+ * fixed point and the finger keeps moving away from it, and becomes fixed once that is no
+ * longer possible. Samples closer than the minimum distance to the tail wait for the next
+ * one, which also keeps the jitter of touch coordinates from passing for turns.
+ *
+ * <p>The check is angular: each sample allows the directions from the fixed point that
+ * pass within the tolerance of it, and the tail slides while the new sample lies in the
+ * cone all skipped samples allow. The cone is two direction vectors, so feeding the
+ * smoother from {@code onTouchEvent} does not allocate.
+ */
+public class StrokeSmoother {
+
+    public static final float DEFAULT_MIN_DISTANCE = 3;
+    public static final float DEFAULT_TOLERANCE = 1.5f;
+    // time of samples fed without one
+    private static final int UNTIMED = Integer.MIN_VALUE;
+
+    private float minDistance;
+    private float tolerance;
+    // last fixed point and the tail after it, if the stroke has one
+    private float fixedX, fixedY;
+    private float tailX, tailY;
+    private boolean hasTail;
+    // directions from the fixed point that keep the skipped samples within tolerance
+    private float lowX, lowY, highX, highY;
+    private boolean hasCone;
+    // newest sample not applied yet because it was too close to the tail
+    private float pendingX, pendingY;
+    private int pendingTime;
+    private boolean pending;
+
+    public StrokeSmoother() {
+        setTolerance(DEFAULT_MIN_DISTANCE, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Samples closer than {@code minDistance} pixels to the tail are put off and skipped
+     * samples stay within {@code tolerance} pixels of the stroke; zero for both keeps
+     * every sample.
+     */
+    public void setTolerance(float minDistance, float tolerance) {
+        this.minDistance = minDistance;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Starts a stroke whose first point, already in the store, is at x, y.
+     */
+    public void begin(float x, float y) {
+        fixedX = tailX = x;
+        fixedY = tailY = y;
+        hasTail = false;
+        hasCone = false;
+        pending = false;
+    }
+
+    /**
+     * Feeds the next sample of the last stroke of {@code store}.
+     */
+    public void add(StrokeStore store, float x, float y) {
+        add(store, x, y, UNTIMED);
+    }
+
+    /**
+     * Like {@link #add(StrokeStore, float, float)} for a sample taken at {@code time}
+     * milliseconds; the point it ends up in keeps the time of the newest sample it took.
+     */
+    public void add(StrokeStore store, float x, float y, int time) {
+        float dx = x - tailX;
+        float dy = y - tailY;
+        if (dx * dx + dy * dy < minDistance * minDistance) {
+            pendingX = x;
+            pendingY = y;
+            pendingTime = time;
+            pending = true;
+            return;
+        }
+        apply(store, x, y, time);
+    }
+
+    /**
+     * Applies the sample put off last, so the stroke ends where the finger was lifted.
+     */
+    public void finish(StrokeStore store) {
+        if (pending && (pendingX != tailX || pendingY != tailY)) {
+            apply(store, pendingX, pendingY, pendingTime);
+        }
+        pending = false;
+    }
+
+    private void apply(StrokeStore store, float x, float y, int time) {
+        pending = false;
+        if (hasTail && movesOn(x, y) && inCone(x - fixedX, y - fixedY)) {
+            if (time == UNTIMED) {
+                store.setLastPoint(x, y);
+            } else {
+                store.setLastPoint(x, y, time);
+            }
+        } else {
+            if (hasTail) {
+                fixedX = tailX;
+                fixedY = tailY;
+                hasCone = false;
+            }
+            if (time == UNTIMED) {
+                store.addPoint(x, y);
+            } else {
+                store.addPoint(x, y, time);
+            }
+            hasTail = true;
+        }
+        tailX = x;
+        tailY = y;
+        narrowCone(x - fixedX, y - fixedY);
+    }
+
+    /**
+     * Whether x, y is at least as far from the fixed point as the tail; turning back would
+     * lose the tip of the turn.
+     */
+    private boolean movesOn(float x, float y) {
+        float sx = x - fixedX;
+        float sy = y - fixedY;
+        float tx = tailX - fixedX;
+        float ty = tailY - fixedY;
+        return sx * sx + sy * sy >= tx * tx + ty * ty;
+    }
+
+    private boolean inCone(float dx, float dy) {
+        return !hasCone || (cross(lowX, lowY, dx, dy) >= 0 && cross(dx, dy, highX, highY) >= 0);
+    }
+
+    /**
+     * Keeps only the directions of the cone that also pass within tolerance of the sample
+     * at dx, dy from the fixed point.
+     */
+    private void narrowCone(float dx, float dy) {
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        if (distance <= tolerance) {
+            return;
+        }
+        float sin = tolerance / distance;
+        float cos = (float) Math.sqrt(1 - sin * sin);
+        float ux = dx / distance;
+        float uy = dy / distance;
+        // the sample direction turned clockwise and counterclockwise by asin(sin)
+        float wLowX = ux * cos + uy * sin;
+        float wLowY = uy * cos - ux * sin;
+        float wHighX = ux * cos - uy * sin;
+        float wHighY = uy * cos + ux * sin;
+        if (!hasCone) {
+            lowX = wLowX;
+            lowY = wLowY;
+            highX = wHighX;
+            highY = wHighY;
+            hasCone = true;
+            return;
+        }
+        if (cross(lowX, lowY, wLowX, wLowY) > 0) {
+            lowX = wLowX;
+            lowY = wLowY;
+        }
+        if (cross(wHighX, wHighY, highX, highY) > 0) {
+            highX = wHighX;
+            highY = wHighY;
+        }
+    }
+
+    private static float cross(float ax, float ay, float bx, float by) {
+        return ax * by - ay * bx;
+    }
+}
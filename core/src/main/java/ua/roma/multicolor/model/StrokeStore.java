@@ -0,0 +1,743 @@
+package ua.roma.multicolor.model;
+
+import java.util.Arrays;
+
+/**
+ * Packed storage for stroke geometry. Points of all strokes live in one growable
+ * {@code float[]} as x,y pairs; each stroke is described by its offset and length in
+ * points, its color and width, and the bounding box of its points. Only the last stroke
+ * can receive new points. A committed stroke can be replaced by fewer points in place,
+ * which leaves unused slack in the array until {@link #compact()}.
+ *
+ * <p>Besides strokes the store holds erase entries, which remove earlier strokes from the
+ * drawing without deleting them, so that moving the history position back brings them
+ * back. A clear entry is an erase entry that removes every entry before it at once,
+ * so clearing and undoing a clear cost the same however large the drawing is. Whether a
+ * stroke shows at a given position is answered by {@link #isVisible(int, int)}. Entries
+ * flagged as continued belong to the same user action as the entry before them and are
+ * undone together with it. Every entry is on one of up to {@value #MAX_LAYERS} layers, 0
+ * unless {@link #setLayer(int)} moves it; the history itself is shared by all layers.
+ *
+ * <p>Layers, erasures and clears take arrays of their own that are only allocated once an
+ * entry needs them, so a drawing made of plain strokes on one layer pays for none of them.
+ *
+ * <p>Strokes captured with {@link #addPoint(float, float, int)} are flagged as timed and
+ * keep the time of each point in milliseconds, for replaying how the drawing was made. The
+ * times take a parallel {@code int[]} that is only allocated once a timed point comes in.
+ */
+public class StrokeStore {
+
+    public static final int FLAG_ERASE = 1;
+    public static final int FLAG_CONTINUED = 2;
+    public static final int FLAG_CLEAR = 4;
+    public static final int FLAG_TIMED = 16;
+    public static final int MAX_LAYERS = 256;
+    private static final int NEVER = Integer.MAX_VALUE;
+    private static final int INITIAL_STROKES = 64;
+    private static final int INITIAL_POINTS = 1024;
+
+    private float[] coords;
+    // time of each point of timed strokes, null until the first one
+    private int[] times;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] colors;
+    private int[] widths;
+    // left, top, right, bottom of the points of each stroke
+    private float[] bounds;
+    private byte[] flags;
+    // null while every entry is on layer 0
+    private byte[] layers;
+    // entry that erased each stroke, NEVER while it is part of the drawing; null with
+    // erasedEnd until the first erase entry
+    private int[] removedBy;
+    // strokes removed by erase entries, the ones of entry i end at erasedEnd[i]
+    private int[] erased;
+    private int[] erasedEnd;
+    // entries before visibleFrom[i] were cleared by entry i or an earlier clear entry; null
+    // until the first clear entry
+    private int[] visibleFrom;
+    private int size;
+    // points in use, and the end of the used part of coords including slack
+    private int pointCount;
+    private int pointEnd;
+    private int erasedCount;
+    // above the highest layer any entry was put on
+    private int layerCount = 1;
+
+    public StrokeStore() {
+        this(INITIAL_STROKES, INITIAL_POINTS);
+    }
+
+    public StrokeStore(int strokeCapacity, int pointCapacity) {
+        strokeCapacity = Math.max(strokeCapacity, 1);
+        pointCapacity = Math.max(pointCapacity, 1);
+        coords = new float[pointCapacity * 2];
+        offsets = new int[strokeCapacity];
+        lengths = new int[strokeCapacity];
+        colors = new int[strokeCapacity];
+        widths = new int[strokeCapacity];
+        bounds = new float[strokeCapacity * 4];
+        flags = new byte[strokeCapacity];
+        erased = new int[16];
+    }
+
+    /**
+     * Starts a new stroke and returns its index.
+     */
+    public int beginStroke(int color, int width) {
+        return begin(color, width, 0);
+    }
+
+    /**
+     * Starts an erase entry and returns its index; {@link #addErased(int)} then lists the
+     * strokes it removes. The bounds of the entry cover the painted area of those strokes.
+     */
+    public int beginErase() {
+        allocateErasures();
+        return begin(0, 0, FLAG_ERASE);
+    }
+
+    /**
+     * Starts a clear entry, which removes everything before it, and returns its index.
+     */
+    public int beginClear() {
+        allocateErasures();
+        if (visibleFrom == null) {
+            // no clear before, everything is visible from 0
+            visibleFrom = new int[offsets.length];
+        }
+        int entry = begin(0, 0, FLAG_ERASE | FLAG_CLEAR);
+        visibleFrom[entry] = entry + 1;
+        return entry;
+    }
+
+    /**
+     * Removes {@code stroke} from the drawing from the last entry, an erase entry, on.
+     */
+    public void addErased(int stroke) {
+        int entry = size - 1;
+        if (entry < 0 || (flags[entry] & (FLAG_ERASE | FLAG_CLEAR)) != FLAG_ERASE) {
+            throw new IllegalStateException("last entry is not an erase");
+        }
+        if (stroke >= entry || (flags[stroke] & FLAG_ERASE) != 0 || removedBy[stroke] != NEVER) {
+            throw new IllegalArgumentException("can't erase " + stroke);
+        }
+        if (erasedCount == erased.length) {
+            erased = Arrays.copyOf(erased, erasedCount * 2);
+        }
+        erased[erasedCount++] = stroke;
+        erasedEnd[entry] = erasedCount;
+        removedBy[stroke] = entry;
+        float pad = widths[stroke] / 2f;
+        int b = entry * 4;
+        int s = stroke * 4;
+        bounds[b] = Math.min(bounds[b], bounds[s] - pad);
+        bounds[b + 1] = Math.min(bounds[b + 1], bounds[s + 1] - pad);
+        bounds[b + 2] = Math.max(bounds[b + 2], bounds[s + 2] + pad);
+        bounds[b + 3] = Math.max(bounds[b + 3], bounds[s + 3] + pad);
+    }
+
+    /**
+     * Marks the last entry as part of the same user action as the entry before it.
+     */
+    public void markContinued() {
+        flags[size - 1] |= FLAG_CONTINUED;
+    }
+
+    /**
+     * Puts the last entry on {@code layer}.
+     */
+    public void setLayer(int layer) {
+        if (layer < 0 || layer >= MAX_LAYERS) {
+            throw new IllegalArgumentException("no layer " + layer);
+        }
+        if (layers == null) {
+            if (layer == 0) {
+                return;
+            }
+            layers = new byte[offsets.length];
+        }
+        layers[size - 1] = (byte) layer;
+        layerCount = Math.max(layerCount, layer + 1);
+    }
+
+    private int begin(int color, int width, int flag) {
+        if (size == offsets.length) {
+            growStrokes(size + 1);
+        }
+        offsets[size] = pointEnd;
+        lengths[size] = 0;
+        colors[size] = color;
+        widths[size] = width;
+        flags[size] = (byte) flag;
+        if (layers != null) {
+            layers[size] = 0;
+        }
+        if (removedBy != null) {
+            removedBy[size] = NEVER;
+            erasedEnd[size] = erasedCount;
+        }
+        if (visibleFrom != null) {
+            visibleFrom[size] = size == 0 ? 0 : visibleFrom[size - 1];
+        }
+        int b = size * 4;
+        bounds[b] = bounds[b + 1] = Float.POSITIVE_INFINITY;
+        bounds[b + 2] = bounds[b + 3] = Float.NEGATIVE_INFINITY;
+        return size++;
+    }
+
+    private void allocateErasures() {
+        if (removedBy == null) {
+            // nothing was erased so far
+            removedBy = new int[offsets.length];
+            Arrays.fill(removedBy, NEVER);
+            erasedEnd = new int[offsets.length];
+        }
+    }
+
+    /**
+     * Appends a point to the last stroke.
+     */
+    public void addPoint(float x, float y) {
+        int index = pointEnd * 2;
+        if (index + 2 > coords.length) {
+            growPoints(pointEnd + 1);
+        }
+        coords[index] = x;
+        coords[index + 1] = y;
+        if ((flags[size - 1] & FLAG_TIMED) != 0 && lengths[size - 1] > 0) {
+            // an untimed point of a timed stroke takes the time of the one before
+            times[pointEnd] = times[pointEnd - 1];
+        }
+        pointCount++;
+        pointEnd++;
+        lengths[size - 1]++;
+        int b = (size - 1) * 4;
+        if (x < bounds[b]) {
+            bounds[b] = x;
+        }
+        if (y < bounds[b + 1]) {
+            bounds[b + 1] = y;
+        }
+        if (x > bounds[b + 2]) {
+            bounds[b + 2] = x;
+        }
+        if (y > bounds[b + 3]) {
+            bounds[b + 3] = y;
+        }
+    }
+
+    /**
+     * Appends a point taken at {@code time} milliseconds to the last stroke, which becomes
+     * timed.
+     */
+    public void addPoint(float x, float y, int time) {
+        addPoint(x, y);
+        setTime(time);
+    }
+
+    /**
+     * Appends a copy of {@code stroke} of {@code source} with its style, layer, bounds and
+     * times and returns its index.
+     */
+    public int appendStroke(StrokeStore source, int stroke) {
+        int length = source.lengths[stroke];
+        boolean timed = (source.flags[stroke] & FLAG_TIMED) != 0;
+        if ((pointEnd + length) * 2 > coords.length) {
+            growPoints(pointEnd + length);
+        }
+        if (timed && times == null) {
+            times = new int[coords.length / 2];
+        }
+        int entry = begin(source.colors[stroke], source.widths[stroke], timed ? FLAG_TIMED : 0);
+        System.arraycopy(source.coords, source.offsets[stroke] * 2, coords, pointEnd * 2,
+                length * 2);
+        if (timed) {
+            System.arraycopy(source.times, source.offsets[stroke], times, pointEnd, length);
+        }
+        System.arraycopy(source.bounds, stroke * 4, bounds, entry * 4, 4);
+        lengths[entry] = length;
+        pointCount += length;
+        pointEnd += length;
+        setLayer(source.getLayer(stroke));
+        return entry;
+    }
+
+    /**
+     * Moves the last point of the last stroke. The bounds of the stroke keep covering the
+     * old position, which only makes them a little conservative.
+     */
+    public void setLastPoint(float x, float y) {
+        int index = (pointEnd - 1) * 2;
+        coords[index] = x;
+        coords[index + 1] = y;
+        int b = (size - 1) * 4;
+        bounds[b] = Math.min(bounds[b], x);
+        bounds[b + 1] = Math.min(bounds[b + 1], y);
+        bounds[b + 2] = Math.max(bounds[b + 2], x);
+        bounds[b + 3] = Math.max(bounds[b + 3], y);
+    }
+
+    /**
+     * Like {@link #setLastPoint(float, float)}, also moving the time of the point to
+     * {@code time}; the stroke becomes timed.
+     */
+    public void setLastPoint(float x, float y, int time) {
+        setLastPoint(x, y);
+        setTime(time);
+    }
+
+    /**
+     * Sets the time of the last point of the last stroke and flags the stroke as timed.
+     * Points it had before it was timed take the same time.
+     */
+    private void setTime(int time) {
+        if (times == null) {
+            times = new int[coords.length / 2];
+        }
+        int stroke = size - 1;
+        if ((flags[stroke] & FLAG_TIMED) == 0) {
+            Arrays.fill(times, offsets[stroke], pointEnd, time);
+            flags[stroke] |= FLAG_TIMED;
+        }
+        times[pointEnd - 1] = time;
+    }
+
+    /**
+     * Replaces the points of a committed stroke with the first {@code count} x,y pairs of
+     * {@code points}, at most as many as it has. The bounds are kept, they still cover the
+     * new points as long as those lie within the old ones. A timed stroke loses its times.
+     */
+    public void replacePoints(int stroke, float[] points, int count) {
+        replacePoints(stroke, points, null, count);
+    }
+
+    /**
+     * Like {@link #replacePoints(int, float[], int)} with the times of the new points, if
+     * {@code times} is not null and the stroke is timed.
+     */
+    public void replacePoints(int stroke, float[] points, int[] times, int count) {
+        if (count > lengths[stroke]) {
+            throw new IllegalArgumentException(count + " points don't fit in stroke " + stroke);
+        }
+        System.arraycopy(points, 0, coords, offsets[stroke] * 2, count * 2);
+        if (times == null) {
+            flags[stroke] &= ~FLAG_TIMED;
+        } else if ((flags[stroke] & FLAG_TIMED) != 0) {
+            System.arraycopy(times, 0, this.times, offsets[stroke], count);
+        }
+        pointCount -= lengths[stroke] - count;
+        lengths[stroke] = count;
+        if (stroke == size - 1) {
+            pointEnd = offsets[stroke] + count;
+        }
+    }
+
+    /**
+     * Points held by the array without belonging to any stroke.
+     */
+    public int getSlack() {
+        return pointEnd - pointCount;
+    }
+
+    /**
+     * Moves the points of all strokes together, dropping the slack left by
+     * {@link #replacePoints}. Offsets change, the indices of strokes do not.
+     */
+    public void compact() {
+        int end = 0;
+        for (int i = 0; i < size; i++) {
+            if (offsets[i] != end) {
+                System.arraycopy(coords, offsets[i] * 2, coords, end * 2, lengths[i] * 2);
+                if ((flags[i] & FLAG_TIMED) != 0) {
+                    System.arraycopy(times, offsets[i], times, end, lengths[i]);
+                }
+                offsets[i] = end;
+            }
+            end += lengths[i];
+        }
+        pointEnd = end;
+    }
+
+    /**
+     * Independent copy of the first {@code strokes} entries, as the drawing looks at that
+     * position, without slack.
+     */
+    public StrokeStore copyOf(int strokes) {
+        int points = 0;
+        for (int i = 0; i < strokes; i++) {
+            points += lengths[i];
+        }
+        int erasures = erasuresBefore(strokes);
+        StrokeStore copy = new StrokeStore(strokes, points);
+        int end = 0;
+        if (times != null) {
+            copy.times = new int[copy.coords.length / 2];
+        }
+        for (int i = 0; i < strokes; i++) {
+            System.arraycopy(coords, offsets[i] * 2, copy.coords, end * 2, lengths[i] * 2);
+            if ((flags[i] & FLAG_TIMED) != 0) {
+                System.arraycopy(times, offsets[i], copy.times, end, lengths[i]);
+            }
+            copy.offsets[i] = end;
+            end += lengths[i];
+        }
+        System.arraycopy(lengths, 0, copy.lengths, 0, strokes);
+        System.arraycopy(colors, 0, copy.colors, 0, strokes);
+        System.arraycopy(widths, 0, copy.widths, 0, strokes);
+        System.arraycopy(bounds, 0, copy.bounds, 0, strokes * 4);
+        System.arraycopy(flags, 0, copy.flags, 0, strokes);
+        if (layers != null) {
+            copy.layers = Arrays.copyOf(layers, copy.offsets.length);
+        }
+        copy.layerCount = layerCount;
+        if (removedBy != null) {
+            copy.erasedEnd = Arrays.copyOf(erasedEnd, copy.offsets.length);
+            copy.removedBy = new int[copy.offsets.length];
+            for (int i = 0; i < strokes; i++) {
+                copy.removedBy[i] = removedBy[i] < strokes ? removedBy[i] : NEVER;
+            }
+        }
+        if (visibleFrom != null) {
+            copy.visibleFrom = Arrays.copyOf(visibleFrom, copy.offsets.length);
+        }
+        copy.erased = Arrays.copyOf(erased, Math.max(erasures, 1));
+        copy.size = strokes;
+        copy.pointCount = points;
+        copy.pointEnd = points;
+        copy.erasedCount = erasures;
+        return copy;
+    }
+
+    /**
+     * Makes room for {@code strokes} entries and {@code points} points in total.
+     */
+    public void ensureCapacity(int strokes, int points) {
+        if (strokes > offsets.length) {
+            growStrokes(strokes);
+        }
+        if ((pointEnd + points - pointCount) * 2 > coords.length) {
+            growPoints(pointEnd + points - pointCount);
+        }
+    }
+
+    /**
+     * Drops every entry from {@code newSize} on; strokes erased by dropped entries are part
+     * of the drawing again.
+     */
+    public void truncate(int newSize) {
+        if (newSize >= size) {
+            return;
+        }
+        int keep = erasuresBefore(newSize);
+        for (int i = keep; i < erasedCount; i++) {
+            removedBy[erased[i]] = NEVER;
+        }
+        for (int i = newSize; i < size; i++) {
+            pointCount -= lengths[i];
+        }
+        size = newSize;
+        pointEnd = newSize == 0 ? 0 : offsets[newSize - 1] + lengths[newSize - 1];
+        erasedCount = keep;
+    }
+
+    /**
+     * Largest position not after {@code max} that starts a user action and whose entries
+     * erase nothing before it, so that the entries before it can go with
+     * {@link #dropFirst(int)}.
+     */
+    public int findHorizon(int max) {
+        int lowest = NEVER;
+        for (int i = max; i < size; i++) {
+            lowest = Math.min(lowest, lowestErased(i));
+        }
+        int horizon = Math.min(max, size);
+        while (horizon > 0 && (horizon > lowest
+                || (horizon < size && (flags[horizon] & FLAG_CONTINUED) != 0))) {
+            horizon--;
+            lowest = Math.min(lowest, lowestErased(horizon));
+        }
+        return horizon;
+    }
+
+    private int lowestErased(int entry) {
+        int lowest = NEVER;
+        for (int k = erasuresBefore(entry); k < erasuresBefore(entry + 1); k++) {
+            lowest = Math.min(lowest, erased[k]);
+        }
+        return lowest;
+    }
+
+    /**
+     * Drops the first {@code count} entries and their points, renumbering the rest from 0.
+     * {@code count} must be a position {@link #findHorizon(int)} can return.
+     */
+    public void dropFirst(int count) {
+        if (count == 0) {
+            return;
+        }
+        if (count > size || findHorizon(count) != count) {
+            throw new IllegalArgumentException("can't drop " + count + " entries");
+        }
+        compact();
+        int points = count == size ? pointEnd : offsets[count];
+        int erasures = erasuresBefore(count);
+        int kept = size - count;
+        System.arraycopy(coords, points * 2, coords, 0, (pointEnd - points) * 2);
+        if (times != null) {
+            System.arraycopy(times, points, times, 0, pointEnd - points);
+        }
+        System.arraycopy(offsets, count, offsets, 0, kept);
+        System.arraycopy(lengths, count, lengths, 0, kept);
+        System.arraycopy(colors, count, colors, 0, kept);
+        System.arraycopy(widths, count, widths, 0, kept);
+        System.arraycopy(bounds, count * 4, bounds, 0, kept * 4);
+        System.arraycopy(flags, count, flags, 0, kept);
+        if (layers != null) {
+            System.arraycopy(layers, count, layers, 0, kept);
+        }
+        System.arraycopy(erased, erasures, erased, 0, erasedCount - erasures);
+        for (int i = 0; i < kept; i++) {
+            offsets[i] -= points;
+        }
+        if (removedBy != null) {
+            System.arraycopy(removedBy, count, removedBy, 0, kept);
+            System.arraycopy(erasedEnd, count, erasedEnd, 0, kept);
+            for (int i = 0; i < kept; i++) {
+                erasedEnd[i] -= erasures;
+                if (removedBy[i] != NEVER) {
+                    removedBy[i] -= count;
+                }
+            }
+        }
+        if (visibleFrom != null) {
+            System.arraycopy(visibleFrom, count, visibleFrom, 0, kept);
+            for (int i = 0; i < kept; i++) {
+                visibleFrom[i] = Math.max(0, visibleFrom[i] - count);
+            }
+        }
+        erasedCount -= erasures;
+        for (int i = 0; i < erasedCount; i++) {
+            erased[i] -= count;
+        }
+        size = kept;
+        pointEnd -= points;
+        pointCount = pointEnd;
+    }
+
+    public void clear() {
+        size = 0;
+        pointCount = 0;
+        pointEnd = 0;
+        erasedCount = 0;
+        layerCount = 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public int getColor(int stroke) {
+        return colors[stroke];
+    }
+
+    public int getWidth(int stroke) {
+        return widths[stroke];
+    }
+
+    /**
+     * Index of the first point of {@code stroke}; point {@code p} is at
+     * {@code getX(p)}, {@code getY(p)}.
+     */
+    public int getOffset(int stroke) {
+        return offsets[stroke];
+    }
+
+    public int getLength(int stroke) {
+        return lengths[stroke];
+    }
+
+    public boolean isErase(int entry) {
+        return (flags[entry] & FLAG_ERASE) != 0;
+    }
+
+    public boolean isContinued(int entry) {
+        return (flags[entry] & FLAG_CONTINUED) != 0;
+    }
+
+    public boolean isClear(int entry) {
+        return (flags[entry] & FLAG_CLEAR) != 0;
+    }
+
+    public int getLayer(int entry) {
+        return layers == null ? 0 : layers[entry] & 0xFF;
+    }
+
+    /**
+     * One more than the highest layer any entry was put on since the store was cleared.
+     */
+    public int getLayerCount() {
+        return layerCount;
+    }
+
+    public boolean isTimed(int entry) {
+        return (flags[entry] & FLAG_TIMED) != 0;
+    }
+
+    public int getFlags(int entry) {
+        return flags[entry];
+    }
+
+    /**
+     * Whether {@code stroke}, below {@code position}, is part of the drawing at that
+     * history position: it is not an erase entry and no entry before {@code position}
+     * erased or cleared it.
+     */
+    public boolean isVisible(int stroke, int position) {
+        return (flags[stroke] & FLAG_ERASE) == 0
+                && (removedBy == null || removedBy[stroke] >= position)
+                && (visibleFrom == null || stroke >= visibleFrom[position - 1]);
+    }
+
+    /**
+     * First entry not removed by a clear entry before {@code position}, 0 if there is none;
+     * entries before it never show at that position.
+     */
+    public int getVisibleStart(int position) {
+        return position == 0 || visibleFrom == null ? 0 : visibleFrom[position - 1];
+    }
+
+    public int getErasedCount(int entry) {
+        return erasuresBefore(entry + 1) - erasuresBefore(entry);
+    }
+
+    public int getErased(int entry, int index) {
+        return erased[erasuresBefore(entry) + index];
+    }
+
+    /**
+     * Strokes removed by the entries before {@code position}, counting each erase.
+     */
+    private int erasuresBefore(int position) {
+        return position == 0 || erasedEnd == null ? 0 : erasedEnd[position - 1];
+    }
+
+    /**
+     * First entry of the user action {@code entry} belongs to.
+     */
+    public int getActionStart(int entry) {
+        while (entry > 0 && (flags[entry] & FLAG_CONTINUED) != 0) {
+            entry--;
+        }
+        return entry;
+    }
+
+    /**
+     * Entry after the last one of the user action starting at {@code entry}.
+     */
+    public int getActionEnd(int entry) {
+        int end = entry + 1;
+        while (end < size && (flags[end] & FLAG_CONTINUED) != 0) {
+            end++;
+        }
+        return end;
+    }
+
+    public float getLeft(int stroke) {
+        return bounds[stroke * 4];
+    }
+
+    public float getTop(int stroke) {
+        return bounds[stroke * 4 + 1];
+    }
+
+    public float getRight(int stroke) {
+        return bounds[stroke * 4 + 2];
+    }
+
+    public float getBottom(int stroke) {
+        return bounds[stroke * 4 + 3];
+    }
+
+    /**
+     * Whether the painted area of {@code stroke}, its bounds grown by half its width,
+     * overlaps the given rectangle.
+     */
+    public boolean intersects(int stroke, float left, float top, float right, float bottom) {
+        int b = stroke * 4;
+        float pad = widths[stroke] / 2f + 1;
+        return bounds[b] - pad < right && bounds[b + 2] + pad > left
+                && bounds[b + 1] - pad < bottom && bounds[b + 3] + pad > top;
+    }
+
+    public float getX(int point) {
+        return coords[point * 2];
+    }
+
+    /**
+     * Time of a point of a timed stroke, in milliseconds.
+     */
+    public int getTime(int point) {
+        return times[point];
+    }
+
+    public float getY(int point) {
+        return coords[point * 2 + 1];
+    }
+
+    /**
+     * Direct access to the packed coordinates for readers that walk many points. The
+     * array is replaced when the store grows, so it must not be kept around.
+     */
+    public float[] getCoords() {
+        return coords;
+    }
+
+    /**
+     * Bytes held by the backing arrays.
+     */
+    public long getFootprint() {
+        return coords.length * 4L + bounds.length * 4L + flags.length
+                + (layers != null ? layers.length : 0) + erased.length * 4L
+                + (times != null ? times.length * 4L : 0)
+                + (removedBy != null ? (removedBy.length + erasedEnd.length) * 4L : 0)
+                + (visibleFrom != null ? visibleFrom.length * 4L : 0)
+                + (offsets.length + lengths.length + colors.length + widths.length) * 4L;
+    }
+
+    private void growStrokes(int minCapacity) {
+        int capacity = Math.max(minCapacity, offsets.length * 2);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        bounds = Arrays.copyOf(bounds, capacity * 4);
+        flags = Arrays.copyOf(flags, capacity);
+        if (layers != null) {
+            layers = Arrays.copyOf(layers, capacity);
+        }
+        if (removedBy != null) {
+            removedBy = Arrays.copyOf(removedBy, capacity);
+            erasedEnd = Arrays.copyOf(erasedEnd, capacity);
+        }
+        if (visibleFrom != null) {
+            visibleFrom = Arrays.copyOf(visibleFrom, capacity);
+        }
+    }
+
+    private void growPoints(int minPoints) {
+        coords = Arrays.copyOf(coords, Math.max(minPoints * 2, coords.length * 2));
+        if (times != null) {
+            times = Arrays.copyOf(times, coords.length / 2);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ua.roma.multicolor.raster;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+import ua.roma.multicolor.io.ByteFiles;
+import ua.roma.multicolor.io.PngWriter;
+import ua.roma.multicolor.io.StrokeCodec;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Renders saved drawings to PNG on a machine without Android, for thumbnails and print
+ * sized output:
+ * <pre>
+ * java ua.roma.multicolor.raster.RenderDrawing width height scale drawing.bin...
+ * </pre>
+ * Each drawing, as written by {@link StrokeCodec}, is rendered at its saved history
+ * position onto white, {@code scale} times the {@code width * height} canvas it was drawn
+ * on, next to it as {@code drawing.png}.
+ */
+public final class RenderDrawing {
+
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private RenderDrawing() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("usage: RenderDrawing width height scale drawing...");
+            System.exit(2);
+        }
+        float scale = Float.parseFloat(args[2]);
+        int width = Math.round(Integer.parseInt(args[0]) * scale);
+        int height = Math.round(Integer.parseInt(args[1]) * scale);
+        ForkJoinPool pool = new ForkJoinPool();
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(pool);
+        StrokeStore store = new StrokeStore();
+        try {
+            for (int i = 3; i < args.length; i++) {
+                File in = new File(args[i]);
+                byte[] data = ByteFiles.read(in);
+                int position = StrokeCodec.decode(data, 0, data.length, store);
+                long start = System.nanoTime();
+                int[] pixels = rasterizer.render(store, position, scale, width, height, WHITE);
+                long nanos = System.nanoTime() - start;
+                File out = new File(in.getParentFile(), baseName(in) + ".png");
+                try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(out))) {
+                    PngWriter.write(pixels, width, height, stream);
+                }
+                System.out.printf("%s: %d strokes, %dx%d in %d ms (%.1f MP/s)%n", out, position,
+                        width, height, nanos / 1000000, width * (double) height * 1000 / nanos);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,476 @@
+package ua.roma.multicolor.raster;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Renders strokes into an ARGB {@code int[]} without {@code android.graphics}, for batch
+ * rendering of saved drawings off the device. Strokes get the same geometry as
+ * {@code StrokeRenderer}: quadratic curves through the segment midpoints, round caps and
+ * joins, anti-aliased by the distance of each pixel center to the stroke.
+ *
+ * <p>Curves are flattened once per render; the image is then split into square tiles
+ * that a {@link ForkJoinPool} renders independently, each stroke first into a coverage
+ * mask of the tile so the joins of a translucent stroke are not blended twice. One
+ * instance renders one drawing at a time.
+ */
+public class SoftwareRasterizer {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+    // largest distance of a flattened curve from the true one, in output pixels
+    private static final float FLATNESS = 0.25f;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+
+    // flattened strokes of the current render: polyline points, and per stroke the range
+    // of its points, color, radius and bounds in output pixels
+    private float[] points = new float[1024];
+    private int[] strokeStart = new int[64];
+    private int[] strokeEnd = new int[64];
+    private int[] strokeColor = new int[64];
+    private float[] strokeRadius = new float[64];
+    private float[] bounds = new float[256];
+    private int strokeCount;
+
+    public SoftwareRasterizer(ForkJoinPool pool) {
+        this(pool, DEFAULT_TILE_SIZE);
+    }
+
+    public SoftwareRasterizer(ForkJoinPool pool, int tileSize) {
+        this.pool = pool;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Renders the strokes visible at {@code position}, scaled by {@code scale}, over
+     * {@code background} into a new {@code width * height} buffer.
+     */
+    public int[] render(StrokeStore store, int position, float scale, int width, int height,
+                        int background) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, background);
+        render(store, position, scale, pixels, width, height);
+        return pixels;
+    }
+
+    /**
+     * Draws the strokes visible at {@code position}, scaled by {@code scale}, over the
+     * pixels already in {@code pixels}, row by row with {@code width} pixels per row.
+     * Strokes of higher layers go on top, all layers drawn as visible and opaque.
+     */
+    public void render(StrokeStore store, int position, float scale, int[] pixels, int width,
+                       int height) {
+        flatten(store, position, scale);
+        int columns = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+        pool.invoke(new TileTask(pixels, width, height, columns, 0, columns * rows));
+    }
+
+    private void flatten(StrokeStore store, int position, float scale) {
+        strokeCount = 0;
+        int size = 0;
+        float[] coords = store.getCoords();
+        int start = store.getVisibleStart(position);
+        for (int layer = 0; layer < store.getLayerCount(); layer++) {
+            for (int i = start; i < position; i++) {
+                if (store.getLayer(i) == layer && store.getLength(i) >= 2
+                        && store.isVisible(i, position)) {
+                    size = addStroke(store, coords, i, scale, size);
+                }
+            }
+        }
+    }
+
+    private int addStroke(StrokeStore store, float[] coords, int i, float scale, int size) {
+        int length = store.getLength(i);
+        if (strokeCount == strokeStart.length) {
+            strokeStart = Arrays.copyOf(strokeStart, strokeCount * 2);
+            strokeEnd = Arrays.copyOf(strokeEnd, strokeCount * 2);
+            strokeColor = Arrays.copyOf(strokeColor, strokeCount * 2);
+            strokeRadius = Arrays.copyOf(strokeRadius, strokeCount * 2);
+            bounds = Arrays.copyOf(bounds, strokeCount * 8);
+        }
+        int index = store.getOffset(i) * 2;
+        int end = index + length * 2;
+        strokeStart[strokeCount] = size;
+        float x = coords[index] * scale;
+        float y = coords[index + 1] * scale;
+        size = addPoint(size, x, y);
+        for (index += 2; index < end - 2; index += 2) {
+            float cx = coords[index] * scale;
+            float cy = coords[index + 1] * scale;
+            float ex = (coords[index] + coords[index + 2]) / 2 * scale;
+            float ey = (coords[index + 1] + coords[index + 3]) / 2 * scale;
+            size = addQuad(size, x, y, cx, cy, ex, ey);
+            x = ex;
+            y = ey;
+        }
+        size = addPoint(size, coords[end - 2] * scale, coords[end - 1] * scale);
+        strokeEnd[strokeCount] = size;
+        strokeColor[strokeCount] = store.getColor(i);
+        strokeRadius[strokeCount] = store.getWidth(i) * scale / 2;
+        float reach = strokeRadius[strokeCount] + 1;
+        bounds[strokeCount * 4] = store.getLeft(i) * scale - reach;
+        bounds[strokeCount * 4 + 1] = store.getTop(i) * scale - reach;
+        bounds[strokeCount * 4 + 2] = store.getRight(i) * scale + reach;
+        bounds[strokeCount * 4 + 3] = store.getBottom(i) * scale + reach;
+        strokeCount++;
+        return size;
+    }
+
+    private int addQuad(int size, float x0, float y0, float cx, float cy, float x1, float y1) {
+        // a quad deviates from its chords by at most |p0 - 2c + p1| / (4 n^2) with n chords
+        float ddx = x0 - 2 * cx + x1;
+        float ddy = y0 - 2 * cy + y1;
+        float dd = (float) Math.sqrt(ddx * ddx + ddy * ddy);
+        int steps = Math.max(1, (int) Math.ceil(Math.sqrt(dd / (4 * FLATNESS))));
+        for (int s = 1; s <= steps; s++) {
+            float t = (float) s / steps;
+            float u = 1 - t;
+            size = addPoint(size, u * u * x0 + 2 * u * t * cx + t * t * x1,
+                    u * u * y0 + 2 * u * t * cy + t * t * y1);
+        }
+        return size;
+    }
+
+    private int addPoint(int size, float x, float y) {
+        if (size + 2 > points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+        points[size] = x;
+        points[size + 1] = y;
+        return size + 2;
+    }
+
+    private class TileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pixels;
+        private final int width, height, columns;
+        private final int from, to;
+
+        TileTask(int[] pixels, int width, int height, int columns, int from,
+                 int to) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(pixels, width, height, columns, from, middle),
+                        new TileTask(pixels, width, height, columns, middle, to));
+                return;
+            }
+            int left = from % columns * tileSize;
+            int top = from / columns * tileSize;
+            new TileRenderer(pixels, width, left, top, Math.min(left + tileSize, width),
+                    Math.min(top + tileSize, height)).run();
+        }
+    }
+
+    /**
+     * Draws every flattened stroke that reaches one tile.
+     */
+    private class TileRenderer {
+
+        private final int[] pixels;
+        private final int width;
+        private final int left, top, right, bottom;
+        // coverage 0..255 of the current stroke, tile-relative
+        private final byte[] mask;
+        private final int stride;
+        // per tile row: columns the current stroke touched, and the fully covered span of
+        // the chord before, which the next chord need not visit again
+        private final int[] dirtyLow, dirtyHigh;
+        private final int[] solidLow, solidHigh, solidChord;
+        // chord being covered: ends, direction and length, and its outer reach
+        private float ax, ay, bx, by, sx, sy, length, inverse, inverseX, inverseY;
+        private float outer, outer2;
+        // spans of the current row
+        private float alongLow, alongHigh, spanLow, spanHigh;
+
+        TileRenderer(int[] pixels, int width, int left, int top, int right, int bottom) {
+            this.pixels = pixels;
+            this.width = width;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            stride = right - left;
+            int rows = bottom - top;
+            mask = new byte[stride * rows];
+            dirtyLow = new int[rows];
+            dirtyHigh = new int[rows];
+            solidLow = new int[rows];
+            solidHigh = new int[rows];
+            solidChord = new int[rows];
+            Arrays.fill(dirtyLow, right);
+            Arrays.fill(dirtyHigh, left - 1);
+        }
+
+        void run() {
+            for (int s = 0; s < strokeCount; s++) {
+                if (bounds[s * 4] < right && bounds[s * 4 + 2] >= left
+                        && bounds[s * 4 + 1] < bottom && bounds[s * 4 + 3] >= top) {
+                    drawStroke(s, strokeRadius[s], strokeColor[s]);
+                }
+            }
+        }
+
+        private void drawStroke(int stroke, float radius, int color) {
+            int minY = bottom, maxY = top - 1;
+            int start = strokeStart[stroke];
+            int end = strokeEnd[stroke];
+            Arrays.fill(solidChord, -1);
+            for (int p = start; p < end - 2; p += 2) {
+                float ax = points[p], ay = points[p + 1];
+                float bx = points[p + 2], by = points[p + 3];
+                int x0 = Math.max(left, floor(Math.min(ax, bx) - radius - 0.5f));
+                int x1 = Math.min(right - 1, ceil(Math.max(ax, bx) + radius + 0.5f));
+                int y0 = Math.max(top, floor(Math.min(ay, by) - radius - 0.5f));
+                int y1 = Math.min(bottom - 1, ceil(Math.max(ay, by) + radius + 0.5f));
+                if (x0 > x1 || y0 > y1) {
+                    continue;
+                }
+                cover(p, ax, ay, bx, by, radius, x0, y0, x1, y1);
+                minY = Math.min(minY, y0);
+                maxY = Math.max(maxY, y1);
+            }
+            for (int y = minY; y <= maxY; y++) {
+                int r = y - top;
+                int row = r * stride - left;
+                int out = y * width;
+                for (int x = dirtyLow[r]; x <= dirtyHigh[r]; x++) {
+                    int coverage = mask[row + x] & 0xFF;
+                    if (coverage != 0) {
+                        mask[row + x] = 0;
+                        pixels[out + x] = blend(pixels[out + x], color, coverage);
+                    }
+                }
+                dirtyLow[r] = right;
+                dirtyHigh[r] = left - 1;
+            }
+        }
+
+        /**
+         * Raises the mask to the coverage of the capsule of {@code radius} around ab. The
+         * capsule is convex, so each row crosses it in one span; pixels deep enough inside
+         * it are fully covered and only the ones near its edge are measured. Pixels the
+         * previous chord fully covered are skipped.
+         */
+        private void cover(int chord, float ax, float ay, float bx, float by, float radius,
+                           int x0, int y0, int x1, int y1) {
+            this.ax = ax;
+            this.ay = ay;
+            this.bx = bx;
+            this.by = by;
+            sx = bx - ax;
+            sy = by - ay;
+            float length2 = sx * sx + sy * sy;
+            length = (float) Math.sqrt(length2);
+            inverse = length2 == 0 ? 0 : 1 / length2;
+            inverseX = 1 / sx;
+            inverseY = 1 / sy;
+            outer = radius + 0.5f;
+            outer2 = outer * outer;
+            float inner = radius - 0.5f;
+            for (int y = y0; y <= y1; y++) {
+                float cy = y + 0.5f;
+                boolean alongRow = along(cy);
+                if (!span(cy, outer, alongRow)) {
+                    continue;
+                }
+                int from = Math.max(x0, ceil(spanLow - 0.5f));
+                int to = Math.min(x1, floor(spanHigh - 0.5f));
+                if (from > to) {
+                    continue;
+                }
+                int solidFrom = to + 1, solidTo = to;
+                if (inner > 0 && span(cy, inner, alongRow)) {
+                    solidFrom = Math.max(from, ceil(spanLow - 0.5f));
+                    solidTo = Math.min(to, floor(spanHigh - 0.5f));
+                }
+                int r = y - top;
+                int skipFrom = to + 1, skipTo = to;
+                if (solidChord[r] == chord - 2) {
+                    skipFrom = solidLow[r];
+                    skipTo = solidHigh[r];
+                }
+                solidChord[r] = chord;
+                solidLow[r] = solidFrom;
+                solidHigh[r] = solidTo;
+                dirtyLow[r] = Math.min(dirtyLow[r], from);
+                dirtyHigh[r] = Math.max(dirtyHigh[r], to);
+
+                int row = r * stride - left;
+                float py = cy - ay;
+                if (skipFrom > skipTo) {
+                    fill(row, py, from, to, solidFrom, solidTo);
+                } else {
+                    fill(row, py, from, Math.min(to, skipFrom - 1), solidFrom, solidTo);
+                    fill(row, py, Math.max(from, skipTo + 1), to, solidFrom, solidTo);
+                }
+            }
+        }
+
+        /**
+         * Covers columns {@code from..to} of a row of the current chord, of which
+         * {@code solidFrom..solidTo} are fully inside it.
+         */
+        private void fill(int row, float py, int from, int to, int solidFrom, int solidTo) {
+            int low = Math.max(from, solidFrom);
+            int high = Math.min(to, solidTo);
+            if (low > high) {
+                measure(row, py, from, to);
+                return;
+            }
+            measure(row, py, from, low - 1);
+            for (int x = low; x <= high; x++) {
+                mask[row + x] = (byte) 255;
+            }
+            measure(row, py, high + 1, to);
+        }
+
+        private void measure(int row, float py, int from, int to) {
+            for (int x = from; x <= to; x++) {
+                if (mask[row + x] == (byte) 255) {
+                    continue;
+                }
+                float px = x + 0.5f - ax;
+                float t = (px * sx + py * sy) * inverse;
+                t = t < 0 ? 0 : t > 1 ? 1 : t;
+                float dx = px - sx * t;
+                float dy = py - sy * t;
+                float d2 = dx * dx + dy * dy;
+                if (d2 >= outer2) {
+                    continue;
+                }
+                float coverage = outer - (float) Math.sqrt(d2);
+                int value = coverage >= 1 ? 255 : (int) (coverage * 255 + 0.5f);
+                if (value > (mask[row + x] & 0xFF)) {
+                    mask[row + x] = (byte) value;
+                }
+            }
+        }
+
+        /**
+         * Sets alongLow..alongHigh to where the row at height {@code y} lies between the
+         * normals of the chord through its ends, where
+         * {@code 0 <= (x - ax) sx + (y - ay) sy <= length^2}. Returns false if nowhere.
+         */
+        private boolean along(float y) {
+            float da = y - ay;
+            if (sx == 0) {
+                alongLow = -Float.MAX_VALUE;
+                alongHigh = Float.MAX_VALUE;
+                return length > 0 && da * sy >= 0 && da * sy <= length * length;
+            }
+            float low = (ax * sx - da * sy) * inverseX;
+            float high = low + length * length * inverseX;
+            alongLow = Math.min(low, high);
+            alongHigh = Math.max(low, high);
+            return true;
+        }
+
+        /**
+         * Sets spanLow..spanHigh to where the row at height {@code y} crosses the points
+         * within {@code reach} of the chord: the union of the disks around its ends and the
+         * band between them, whose extent along the chord {@link #along} set. Returns false
+         * if it misses them.
+         */
+        private boolean span(float y, float reach, boolean alongRow) {
+            float low = Float.MAX_VALUE, high = -Float.MAX_VALUE;
+            float reach2 = reach * reach;
+            float da = y - ay;
+            if (da * da < reach2) {
+                float half = (float) Math.sqrt(reach2 - da * da);
+                low = ax - half;
+                high = ax + half;
+            }
+            float db = y - by;
+            if (db * db < reach2) {
+                float half = (float) Math.sqrt(reach2 - db * db);
+                low = Math.min(low, bx - half);
+                high = Math.max(high, bx + half);
+            }
+            if (alongRow) {
+                // across the chord: |(x - ax) sy - da sx| <= reach * length
+                float across = reach * length;
+                float bandLow = alongLow, bandHigh = alongHigh;
+                if (sy == 0) {
+                    if (Math.abs(da * sx) > across) {
+                        bandHigh = -Float.MAX_VALUE;
+                    }
+                } else {
+                    float middle = ax + da * sx * inverseY;
+                    float half = Math.abs(across * inverseY);
+                    bandLow = Math.max(bandLow, middle - half);
+                    bandHigh = Math.min(bandHigh, middle + half);
+                }
+                if (bandLow <= bandHigh) {
+                    low = Math.min(low, bandLow);
+                    high = Math.max(high, bandHigh);
+                }
+            }
+            spanLow = low;
+            spanHigh = high;
+            return low < high;
+        }
+    }
+
+    // Math.floor and Math.ceil work on doubles and are not intrinsics everywhere
+    private static int floor(float value) {
+        int i = (int) value;
+        return value < i ? i - 1 : i;
+    }
+
+    private static int ceil(float value) {
+        int i = (int) value;
+        return value > i ? i + 1 : i;
+    }
+
+    /**
+     * Source-over of {@code color} at {@code coverage} of 255 onto {@code dst}, both
+     * unpremultiplied ARGB.
+     */
+    static int blend(int dst, int color, int coverage) {
+        int sa = (color >>> 24) * coverage / 255;
+        if (sa == 0) {
+            return dst;
+        }
+        int da = dst >>> 24;
+        if (sa == 255 || da == 0) {
+            return sa << 24 | color & 0xFFFFFF;
+        }
+        if (da == 255) {
+            return 0xFF000000 | mix(dst >> 16 & 0xFF, color >> 16 & 0xFF, sa) << 16
+                    | mix(dst >> 8 & 0xFF, color >> 8 & 0xFF, sa) << 8
+                    | mix(dst & 0xFF, color & 0xFF, sa);
+        }
+        // the destination weighs da * (255 - sa) / 255 next to the source's sa
+        int dw = da * (255 - sa) / 255;
+        int a = sa + dw;
+        return a << 24 | weigh(dst >> 16 & 0xFF, dw, color >> 16 & 0xFF, sa, a) << 16
+                | weigh(dst >> 8 & 0xFF, dw, color >> 8 & 0xFF, sa, a) << 8
+                | weigh(dst & 0xFF, dw, color & 0xFF, sa, a);
+    }
+
+    private static int mix(int dst, int src, int alpha) {
+        return (dst * (255 - alpha) + src * alpha + 127) / 255;
+    }
+
+    private static int weigh(int dst, int dw, int src, int sa, int a) {
+        return (dst * dw + src * sa + a / 2) / a;
+    }
+}
@@ -0,0 +1,398 @@
+package ua.roma.multicolor.sync;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ua.roma.multicolor.io.VarintInput;
+import ua.roma.multicolor.io.VarintOutput;
+import ua.roma.multicolor.metrics.Histogram;
+import ua.roma.multicolor.model.StrokeStore;
+
+/**
+ * Strokes shared with the other peers of a relay server while they are drawn, in the
+ * messages of {@link SyncProtocol}. The points of local strokes are queued as they are
+ * captured and go out in one message per stroke with {@link #takeOutgoing()}, which the
+ * caller does once per input batch; incoming frames build the strokes of the other peers
+ * as they come in.
+ *
+ * <p>Finished strokes, local ones included, wait until the relay sends their end back and
+ * are committed in that order, which is the same on every peer, so strokes drawn at the
+ * same time on different devices stack the same everywhere. Until then they are listed
+ * with the strokes still being drawn elsewhere, see {@link #getBuffer(int)}.
+ *
+ * <p>Used from one thread; buffers are pooled and reused from stroke to stroke.
+ */
+public class StrokeSync {
+
+    private static final int MESSAGE_CAPACITY = 256;
+
+    private final VarintOutput outgoing = new VarintOutput(4096);
+    private final VarintOutput message = new VarintOutput(MESSAGE_CAPACITY);
+    // local strokes still being captured
+    private final List<Shared> local = new ArrayList<>();
+    // strokes of other peers being drawn, and finished local ones the relay did not order yet
+    private final List<Shared> shown = new ArrayList<>();
+    // strokes whose end came back from the relay, in the order it came in
+    private final List<Shared> ready = new ArrayList<>();
+    private final List<Shared> pool = new ArrayList<>();
+    private final Histogram roundTrip = new Histogram("sync end to commit ms",
+            4, 8, 16, 33, 50, 100, 250, 500, 1000);
+    // id the relay gave us, -1 until it said hello
+    private int peer = -1;
+    private int nextStroke;
+    // strokes of other peers must be on a layer below it
+    private int layerLimit = StrokeStore.MAX_LAYERS;
+    private long bytesSent, pointsSent, bytesReceived, pointsReceived;
+
+    /**
+     * Rejects strokes other peers put on layer {@code limit} or above, e.g. beyond the
+     * layers this peer offers, as malformed; at most {@link StrokeStore#MAX_LAYERS}.
+     */
+    public void setLayerLimit(int limit) {
+        layerLimit = Math.min(limit, StrokeStore.MAX_LAYERS);
+    }
+
+    /**
+     * Announces the stroke captured in {@code buffer}, stroke 0 of it with its first point,
+     * and returns the number it is shared under.
+     */
+    public int begin(StrokeStore buffer) {
+        Shared stroke = obtain();
+        stroke.own = true;
+        stroke.stroke = nextStroke++;
+        stroke.sent = 1;
+        int point = buffer.getOffset(0);
+        stroke.x = quantize(buffer.getX(point));
+        stroke.y = quantize(buffer.getY(point));
+        stroke.time = timeOf(buffer, point);
+        local.add(stroke);
+        message.reset();
+        message.writeByte(SyncProtocol.BEGIN);
+        message.writeVarint(stroke.stroke);
+        message.writeInt(buffer.getColor(0));
+        message.writeVarint(buffer.getWidth(0));
+        message.writeVarint(buffer.getLayer(0));
+        message.writeSignedVarint(stroke.x);
+        message.writeSignedVarint(stroke.y);
+        message.writeSignedVarint(stroke.time);
+        queue(1);
+        return stroke.stroke;
+    }
+
+    /**
+     * Queues the points of {@code buffer} added since the last call, all but the tail that
+     * may still move.
+     */
+    public void update(int stroke, StrokeStore buffer) {
+        Shared shared = findLocal(stroke);
+        if (shared != null) {
+            sendPoints(shared, buffer, buffer.getLength(0) - 1);
+        }
+    }
+
+    /**
+     * Queues the rest of the finished stroke in {@code buffer} and its end. The stroke is
+     * kept in a buffer of its own, so {@code buffer} may be reused right away.
+     */
+    public void end(int stroke, StrokeStore buffer) {
+        Shared shared = findLocal(stroke);
+        if (shared == null) {
+            return;
+        }
+        sendPoints(shared, buffer, buffer.getLength(0));
+        message.reset();
+        message.writeByte(SyncProtocol.END);
+        message.writeVarint(stroke);
+        queue(0);
+        local.remove(shared);
+        shared.buffer.clear();
+        shared.buffer.appendStroke(buffer, 0);
+        shared.ended = System.nanoTime();
+        shown.add(shared);
+    }
+
+    /**
+     * Withdraws a local stroke that is not going to be finished.
+     */
+    public void cancel(int stroke) {
+        Shared shared = findLocal(stroke);
+        if (shared == null) {
+            return;
+        }
+        message.reset();
+        message.writeByte(SyncProtocol.CANCEL);
+        message.writeVarint(stroke);
+        queue(0);
+        local.remove(shared);
+        pool.add(shared);
+    }
+
+    /**
+     * The frames queued since the last call, null if none.
+     */
+    public byte[] takeOutgoing() {
+        if (outgoing.size() == 0) {
+            return null;
+        }
+        byte[] frames = outgoing.toByteArray();
+        outgoing.reset();
+        return frames;
+    }
+
+    /**
+     * Applies the payload of a frame the relay sent.
+     */
+    public void receive(byte[] payload) throws IOException {
+        bytesReceived += frameSize(payload.length);
+        VarintInput in = new VarintInput(payload, 0, payload.length);
+        int from = in.readVarint();
+        int type = in.readByte();
+        if (type == SyncProtocol.WELCOME) {
+            peer = from;
+            return;
+        }
+        int stroke = in.readVarint();
+        boolean own = from == peer;
+        switch (type) {
+            case SyncProtocol.BEGIN:
+                if (own) {
+                    return;
+                }
+                int color = in.readInt();
+                int width = in.readVarint();
+                int layer = in.readVarint();
+                if (width < 0 || width > SyncProtocol.MAX_WIDTH) {
+                    throw new IOException("bad width " + width);
+                }
+                if (layer < 0 || layer >= layerLimit) {
+                    throw new IOException("no layer " + layer);
+                }
+                Shared begun = obtain();
+                begun.own = false;
+                begun.peer = from;
+                begun.stroke = stroke;
+                begun.x = in.readSignedVarint();
+                begun.y = in.readSignedVarint();
+                begun.time = in.readSignedVarint();
+                begun.buffer.clear();
+                begun.buffer.beginStroke(color, width);
+                begun.buffer.setLayer(layer);
+                begun.buffer.addPoint(begun.x / SyncProtocol.SCALE, begun.y / SyncProtocol.SCALE,
+                        begun.time);
+                shown.add(begun);
+                pointsReceived++;
+                return;
+            case SyncProtocol.POINTS:
+                Shared drawn = own ? null : findShown(from, stroke, false);
+                if (drawn == null) {
+                    // begun before we joined
+                    return;
+                }
+                int count = in.readVarint();
+                if (count < 0 || count > in.remaining() / 3) {
+                    throw new IOException("corrupt points");
+                }
+                for (int i = 0; i < count; i++) {
+                    drawn.x += in.readSignedVarint();
+                    drawn.y += in.readSignedVarint();
+                    drawn.time += in.readSignedVarint();
+                    drawn.buffer.addPoint(drawn.x / SyncProtocol.SCALE,
+                            drawn.y / SyncProtocol.SCALE, drawn.time);
+                }
+                pointsReceived += count;
+                return;
+            case SyncProtocol.END:
+                Shared ended = findShown(from, stroke, own);
+                if (ended != null) {
+                    if (own) {
+                        roundTrip.record((System.nanoTime() - ended.ended) / 1000000);
+                    }
+                    shown.remove(ended);
+                    ready.add(ended);
+                }
+                return;
+            case SyncProtocol.CANCEL:
+                Shared cancelled = own ? null : findShown(from, stroke, false);
+                if (cancelled != null) {
+                    shown.remove(cancelled);
+                    pool.add(cancelled);
+                }
+                return;
+            default:
+                throw new IOException("unknown message " + type);
+        }
+    }
+
+    /**
+     * Strokes waiting for {@link #commit(StrokeStore)}.
+     */
+    public int getReady() {
+        return ready.size();
+    }
+
+    /**
+     * Appends the strokes the relay ordered so far to {@code target} and returns how many.
+     */
+    public int commit(StrokeStore target) {
+        int count = ready.size();
+        for (int i = 0; i < count; i++) {
+            Shared shared = ready.get(i);
+            target.appendStroke(shared.buffer, 0);
+            pool.add(shared);
+        }
+        ready.clear();
+        return count;
+    }
+
+    /**
+     * Ends the session: finished local strokes become ready in the order they were
+     * finished and strokes of other peers are dropped.
+     */
+    public void detach() {
+        for (Shared shared : shown) {
+            if (shared.own) {
+                ready.add(shared);
+            } else {
+                pool.add(shared);
+            }
+        }
+        shown.clear();
+        pool.addAll(local);
+        local.clear();
+        peer = -1;
+    }
+
+    /**
+     * Strokes being drawn on other peers and finished local ones not committed yet.
+     */
+    public int size() {
+        return shown.size();
+    }
+
+    /**
+     * The {@code i}-th of {@link #size()} strokes, stroke 0 of the returned store, in the
+     * order they began or, for local ones, ended.
+     */
+    public StrokeStore getBuffer(int i) {
+        return shown.get(i).buffer;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getPointsSent() {
+        return pointsSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getPointsReceived() {
+        return pointsReceived;
+    }
+
+    /**
+     * Time from finishing a local stroke until the relay sent its end back, about the
+     * time the stroke takes to show up on the other peers plus the way back.
+     */
+    public Histogram getRoundTrip() {
+        return roundTrip;
+    }
+
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append("sent ").append(pointsSent).append(" points in ").append(bytesSent)
+                .append(" bytes, received ").append(pointsReceived).append(" points in ")
+                .append(bytesReceived).append(" bytes\n");
+        roundTrip.dump(out);
+        return out.toString();
+    }
+
+    private void sendPoints(Shared shared, StrokeStore buffer, int end) {
+        int count = end - shared.sent;
+        if (count <= 0) {
+            return;
+        }
+        message.reset();
+        message.writeByte(SyncProtocol.POINTS);
+        message.writeVarint(shared.stroke);
+        message.writeVarint(count);
+        int first = buffer.getOffset(0);
+        for (int point = first + shared.sent; point < first + end; point++) {
+            int x = quantize(buffer.getX(point));
+            int y = quantize(buffer.getY(point));
+            int time = timeOf(buffer, point);
+            message.writeSignedVarint(x - shared.x);
+            message.writeSignedVarint(y - shared.y);
+            message.writeSignedVarint(time - shared.time);
+            shared.x = x;
+            shared.y = y;
+            shared.time = time;
+        }
+        shared.sent = end;
+        queue(count);
+    }
+
+    private void queue(int points) {
+        int before = outgoing.size();
+        outgoing.writeVarint(message.size());
+        outgoing.writeBytes(message.getBuffer(), 0, message.size());
+        bytesSent += outgoing.size() - before;
+        pointsSent += points;
+    }
+
+    private Shared findLocal(int stroke) {
+        for (int i = 0; i < local.size(); i++) {
+            if (local.get(i).stroke == stroke) {
+                return local.get(i);
+            }
+        }
+        return null;
+    }
+
+    private Shared findShown(int peer, int stroke, boolean own) {
+        for (int i = 0; i < shown.size(); i++) {
+            Shared shared = shown.get(i);
+            if (shared.stroke == stroke && shared.own == own && (own || shared.peer == peer)) {
+                return shared;
+            }
+        }
+        return null;
+    }
+
+    private Shared obtain() {
+        return pool.isEmpty() ? new Shared() : pool.remove(pool.size() - 1);
+    }
+
+    private static int quantize(float coordinate) {
+        return Math.round(coordinate * SyncProtocol.SCALE);
+    }
+
+    private static int timeOf(StrokeStore buffer, int point) {
+        return buffer.isTimed(0) ? buffer.getTime(point) : 0;
+    }
+
+    private static int frameSize(int length) {
+        int size = length + 1;
+        for (int rest = length >>> 7; rest != 0; rest >>>= 7) {
+            size++;
+        }
+        return size;
+    }
+
+    private static class Shared {
+        final StrokeStore buffer = new StrokeStore(1, 256);
+        boolean own;
+        int peer;
+        int stroke;
+        // local strokes: points sent so far
+        int sent;
+        // last point sent or received, quantized; the next one is a delta from it
+        int x, y, time;
+        // local strokes: System.nanoTime() when the end was sent
+        long ended;
+    }
+}
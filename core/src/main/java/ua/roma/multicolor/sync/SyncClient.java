@@ -0,0 +1,183 @@
+package ua.roma.multicolor.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Socket to a relay server, see {@link SyncProtocol}. Connecting and writing happen in
+ * order on a writer thread, so {@link #send(byte[])} never blocks the caller; a reader
+ * thread hands every incoming frame to the listener on the owner executor.
+ */
+public class SyncClient implements Closeable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final Executor owner;
+    private final Listener listener;
+    private final ExecutorService writer;
+    // closed by the owner, who hears nothing after that
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private volatile Socket socket;
+    // owned by the writer thread
+    private OutputStream out;
+
+    public SyncClient(Executor owner, Listener listener) {
+        this.owner = owner;
+        this.listener = listener;
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sync-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts connecting; frames sent meanwhile go out once connected.
+     */
+    public void connect(final String host, final int port) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = new Socket();
+                    SyncClient.this.socket = socket;
+                    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                    if (closed.get()) {
+                        socket.close();
+                        return;
+                    }
+                    // points go out as they are drawn, do not hold them back for a full packet
+                    socket.setTcpNoDelay(true);
+                    out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+                    final InputStream in = new BufferedInputStream(socket.getInputStream(),
+                            BUFFER_SIZE);
+                    Thread reader = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            read(in);
+                        }
+                    }, "sync-reader");
+                    reader.setDaemon(true);
+                    reader.start();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes frames as {@link StrokeSync#takeOutgoing()} returns them.
+     */
+    public void send(final byte[] frames) {
+        if (frames == null || closed.get() || failed.get()) {
+            return;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (out == null) {
+                    return;
+                }
+                try {
+                    out.write(frames);
+                    out.flush();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            closeSocket();
+            writer.shutdown();
+        }
+    }
+
+    private void read(InputStream in) {
+        try {
+            for (byte[] payload = SyncProtocol.readFrame(in); payload != null;
+                 payload = SyncProtocol.readFrame(in)) {
+                final byte[] frame = payload;
+                owner.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!closed.get()) {
+                            listener.onFrame(frame);
+                        }
+                    }
+                });
+            }
+            fail(null);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Closes the connection and tells the listener once, with null if the relay hung up.
+     */
+    private void fail(final IOException e) {
+        if (closed.get() || !failed.compareAndSet(false, true)) {
+            return;
+        }
+        closeSocket();
+        writer.shutdown();
+        // after the frames read before
+        owner.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!closed.get()) {
+                    listener.onDisconnected(e);
+                }
+            }
+        });
+    }
+
+    private void closeSocket() {
+        Socket socket = this.socket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // nothing left to do with it
+            }
+        }
+    }
+
+    /**
+     * Called on the owner executor.
+     */
+    public interface Listener {
+
+        /**
+         * A frame for {@link StrokeSync#receive(byte[])}.
+         */
+        void onFrame(byte[] payload);
+
+        /**
+         * The connection failed or the relay closed it; not called after
+         * {@link SyncClient#close()}.
+         */
+        void onDisconnected(IOException e);
+    }
+}
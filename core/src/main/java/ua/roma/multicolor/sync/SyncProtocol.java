@@ -0,0 +1,102 @@
+package ua.roma.multicolor.sync;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import ua.roma.multicolor.io.StrokeCodec;
+
+/**
+ * Wire format of co-drawing. Peers talk to a relay server only, in length prefixed
+ * frames; the relay prefixes what it forwards with the id of the peer it came from.
+ *
+ * <pre>
+ * frame:   length:varint payload{length}
+ * to relay:   message
+ * from relay: from:varint message
+ * message: type:byte (welcome | begin | points | end | cancel)
+ * welcome: (empty)
+ * begin:   stroke:varint color:int width:varint layer:varint x:svarint y:svarint t:svarint
+ * points:  stroke:varint count:varint (dx:svarint dy:svarint dt:svarint){count}
+ * end:     stroke:varint
+ * cancel:  stroke:varint
+ * </pre>
+ * Strokes are numbered by the peer drawing them. Coordinates are quantized to
+ * 1/{@value #SCALE} px like in {@link StrokeCodec}, and points are deltas from the point
+ * before in the same stroke, so a point usually takes three bytes. The relay sends a
+ * welcome, from the id it gave the peer, before anything else, and forwards every other
+ * message to every other peer. End and cancel go back to their sender too: the order ends
+ * arrive in is the order strokes are committed in, the same on every peer.
+ */
+public final class SyncProtocol {
+
+    public static final int WELCOME = 1;
+    public static final int BEGIN = 2;
+    public static final int POINTS = 3;
+    public static final int END = 4;
+    public static final int CANCEL = 5;
+
+    public static final float SCALE = StrokeCodec.SCALE;
+    public static final int MAX_FRAME = 1 << 20;
+    // widest stroke a peer may begin, in px
+    public static final int MAX_WIDTH = 1024;
+
+    private SyncProtocol() {
+    }
+
+    /**
+     * Reads the payload of the next frame, or returns null if the stream ended between
+     * frames.
+     */
+    public static byte[] readFrame(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return null;
+                }
+                throw new EOFException("truncated frame length");
+            }
+            if (shift > 28) {
+                throw new IOException("malformed frame length");
+            }
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("frame too large: " + length);
+        }
+        byte[] payload = new byte[length];
+        for (int read = 0; read < length; ) {
+            int n = in.read(payload, read, length - read);
+            if (n < 0) {
+                throw new EOFException("truncated frame");
+            }
+            read += n;
+        }
+        return payload;
+    }
+
+    /**
+     * Writes {@code length} bytes of {@code payload} as one frame, {@code prefix} bytes of
+     * {@code header} in front of them, and returns the size of the frame.
+     */
+    public static int writeFrame(OutputStream out, byte[] header, int prefix, byte[] payload,
+                                 int offset, int length) throws IOException {
+        int size = prefix + length;
+        int written = 0;
+        while ((size & ~0x7F) != 0) {
+            out.write((size & 0x7F) | 0x80);
+            size >>>= 7;
+            written++;
+        }
+        out.write(size);
+        out.write(header, 0, prefix);
+        out.write(payload, offset, length);
+        return written + 1 + prefix + length;
+    }
+}
@@ -0,0 +1,42 @@
+package ua.roma.multicolor.color;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColorMathTest {
+
+    private static final int[] HUES = {
+            0xFFFF0000, 0xFFFF00FF, 0xFF0000FF, 0xFF00FFFF, 0xFF00FF00,
+            0xFFFFFF00, 0xFFFF0000
+    };
+
+    @Test
+    public void lookup_matchesInterpolationWithinOneStep() {
+        int[] table = ColorMath.buildTable(HUES, 2048);
+        for (int i = 0; i <= 100000; i++) {
+            float unit = i / 100000f;
+            int expected = ColorMath.interpColor(HUES, unit);
+            int actual = ColorMath.lookup(table, unit);
+            assertTrue(Math.abs(ColorMath.red(expected) - ColorMath.red(actual)) <= 1);
+            assertTrue(Math.abs(ColorMath.green(expected) - ColorMath.green(actual)) <= 1);
+            assertTrue(Math.abs(ColorMath.blue(expected) - ColorMath.blue(actual)) <= 1);
+            assertEquals(0xFF, ColorMath.alpha(actual));
+        }
+    }
+
+    @Test
+    public void hueRotation_keepsGrayAndIdentity() {
+        float[] matrix = new float[9];
+        ColorMath.hueRotation(0, matrix);
+        assertEquals(0xFF336699, ColorMath.transform(0xFF336699, matrix));
+
+        ColorMath.hueRotation(1.3f, matrix);
+        assertEquals(0x80808080, ColorMath.transform(0x80808080, matrix));
+        int rotated = ColorMath.transform(0xFFFF0000, matrix);
+        assertTrue(rotated != 0xFFFF0000);
+
+        ColorMath.hueRotation((float) (2 * Math.PI), matrix);
+        assertEquals(0xFFFF0000, ColorMath.transform(0xFFFF0000, matrix));
+    }
+}
@@ -0,0 +1,84 @@
+package ua.roma.multicolor.history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CheckpointsTest {
+
+    private final List<long[]> released = new ArrayList<>();
+
+    private Checkpoints<long[]> create(int interval, long budget) {
+        return new Checkpoints<>(interval, budget, new Checkpoints.Snapshots<long[]>() {
+            @Override
+            public long sizeOf(long[] snapshot) {
+                return snapshot[1];
+            }
+
+            @Override
+            public void release(long[] snapshot) {
+                released.add(snapshot);
+            }
+        });
+    }
+
+    @Test
+    public void floor_returnsNearestEarlierSnapshot() {
+        Checkpoints<long[]> checkpoints = create(10, 1000);
+        for (int position = 1; position <= 35; position++) {
+            if (checkpoints.wants(position)) {
+                checkpoints.put(position, new long[]{position, 10});
+            }
+        }
+        assertEquals(3, checkpoints.size());
+        assertEquals(0, checkpoints.floor(9));
+        assertEquals(10, checkpoints.floor(19));
+        assertEquals(30, checkpoints.floor(35));
+        assertEquals(20, checkpoints.get(20)[0]);
+    }
+
+    @Test
+    public void budget_evictsOldestAndDoesNotRecaptureIt() {
+        Checkpoints<long[]> checkpoints = create(10, 25);
+        checkpoints.put(10, new long[]{10, 10});
+        checkpoints.put(20, new long[]{20, 10});
+        checkpoints.put(30, new long[]{30, 10});
+        assertEquals(2, checkpoints.size());
+        assertEquals(20, checkpoints.getUsedBytes());
+        assertEquals(0, checkpoints.floor(15));
+        assertFalse(checkpoints.wants(10));
+        assertEquals(1, released.size());
+        assertEquals(10, released.get(0)[0]);
+    }
+
+    @Test
+    public void truncate_dropsSnapshotsAfterPosition() {
+        Checkpoints<long[]> checkpoints = create(10, 1000);
+        checkpoints.put(10, new long[]{10, 10});
+        checkpoints.put(20, new long[]{20, 10});
+        checkpoints.truncate(15);
+        assertEquals(1, checkpoints.size());
+        assertEquals(10, checkpoints.floor(25));
+        assertTrue(checkpoints.wants(20));
+        checkpoints.clear();
+        assertEquals(0, checkpoints.getUsedBytes());
+        assertEquals(2, released.size());
+    }
+
+    @Test
+    public void dropFirst_releasesOlderSnapshotsAndShiftsTheRest() {
+        Checkpoints<long[]> checkpoints = create(10, 1000);
+        checkpoints.put(10, new long[]{10, 10});
+        checkpoints.put(20, new long[]{20, 10});
+        checkpoints.put(30, new long[]{30, 10});
+        checkpoints.dropFirst(20);
+        assertEquals(1, checkpoints.size());
+        assertEquals(10, checkpoints.getUsedBytes());
+        assertEquals(10, checkpoints.floor(15));
+        assertEquals(30, checkpoints.get(10)[0]);
+        assertEquals(2, released.size());
+    }
+}
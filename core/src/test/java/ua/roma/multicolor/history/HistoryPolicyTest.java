@@ -0,0 +1,83 @@
+package ua.roma.multicolor.history;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+public class HistoryPolicyTest {
+
+    @Test
+    public void longSession_levelsOffUnderEntryLimit() {
+        HistoryPolicy policy = new HistoryPolicy(100, 0);
+        StrokeStore store = new StrokeStore();
+        int dropped = session(policy, store, 5000, 20);
+        assertTrue(store.size() <= 100 + HistoryPolicy.BATCH);
+        assertTrue(store.size() >= 100);
+        assertTrue(dropped >= 5000 - 100 - HistoryPolicy.BATCH);
+    }
+
+    @Test
+    public void longSession_levelsOffUnderByteBudget() {
+        HistoryPolicy policy = new HistoryPolicy(0, 64 * 1024);
+        StrokeStore store = new StrokeStore();
+        session(policy, store, 5000, 200);
+        long bytes = 0;
+        for (int i = 0; i < store.size(); i++) {
+            bytes += HistoryPolicy.sizeOf(store, i);
+        }
+        // a batch of the largest strokes over the budget at most
+        assertTrue(bytes + " bytes", bytes <= 64 * 1024 + HistoryPolicy.BATCH * (46 + 200 * 8));
+        assertTrue(store.getFootprint() + " footprint", store.getFootprint() < 1024 * 1024);
+    }
+
+    @Test
+    public void horizon_neverPassesPositionOrAnEraseOfOlderStrokes() {
+        HistoryPolicy policy = new HistoryPolicy(10, 0);
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 60; i++) {
+            store.beginStroke(i, 1);
+            store.addPoint(i, i);
+        }
+        assertEquals(0, policy.horizon(store, 10));
+        assertEquals(30, policy.horizon(store, 30));
+        assertEquals(50, policy.horizon(store, 60));
+
+        store.beginErase();
+        store.addErased(20);
+        assertEquals(20, policy.horizon(store, 61));
+        store.beginErase();
+        store.addErased(5);
+        assertEquals(0, policy.horizon(store, 62));
+    }
+
+    /**
+     * Draws {@code strokes} strokes, erasing one of the last few every tenth action, and
+     * drops what the policy lets go after each one. Returns the entries dropped.
+     */
+    private static int session(HistoryPolicy policy, StrokeStore store, int strokes, int points) {
+        Random random = new Random(strokes);
+        int dropped = 0;
+        for (int i = 0; i < strokes; i++) {
+            if (i % 10 == 9) {
+                int target = store.size() - 1 - random.nextInt(Math.min(5, store.size()));
+                if (!store.isErase(target) && store.isVisible(target, store.size())) {
+                    store.beginErase();
+                    store.addErased(target);
+                }
+            }
+            store.beginStroke(0xFF000000, 4);
+            int length = 1 + random.nextInt(points);
+            for (int j = 0; j < length; j++) {
+                store.addPoint(random.nextFloat() * 1000, random.nextFloat() * 1000);
+            }
+            int count = policy.horizon(store, store.size());
+            store.dropFirst(count);
+            dropped += count;
+        }
+        return dropped;
+    }
+}
@@ -0,0 +1,67 @@
+package ua.roma.multicolor.history;
+
+import org.junit.Test;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+public class PlaybackTimelineTest {
+
+    @Test
+    public void timeline_followsPointTimesAndCutsLongPauses() {
+        StrokeStore store = new StrokeStore();
+        // 0 to 90 ms, then a minute's pause, then 90 ms again
+        timedStroke(store, 1000, 10);
+        timedStroke(store, 61000, 10);
+        PlaybackTimeline timeline = new PlaybackTimeline(store, 2);
+
+        assertEquals(90 + PlaybackTimeline.MAX_PAUSE + 90, timeline.getDuration());
+        assertEquals(0, timeline.positionAt(0));
+        assertEquals(1, timeline.pointsAt(0, 0));
+        assertEquals(5, timeline.pointsAt(0, 45));
+        assertEquals(1, timeline.positionAt(90));
+        assertEquals(1, timeline.positionAt(90 + PlaybackTimeline.MAX_PAUSE));
+        assertEquals(1, timeline.pointsAt(1, 90 + PlaybackTimeline.MAX_PAUSE));
+        assertEquals(2, timeline.positionAt(timeline.getDuration()));
+    }
+
+    @Test
+    public void entriesWithoutTimes_showUpAtOnce() {
+        StrokeStore store = new StrokeStore();
+        timedStroke(store, 0, 5);
+        store.beginStroke(0xFF000000, 4);
+        store.addPoint(1, 1);
+        store.addPoint(2, 2);
+        store.beginErase();
+        store.addErased(0);
+        timedStroke(store, 100, 5);
+        PlaybackTimeline timeline = new PlaybackTimeline(store, 4);
+
+        assertEquals(40, timeline.getStart(1));
+        assertEquals(40, timeline.getStart(2));
+        assertEquals(3, timeline.positionAt(40));
+        assertEquals(2, timeline.pointsAt(1, 40));
+        // the pause runs from the end of the last timed stroke
+        assertEquals(100, timeline.getStart(3));
+    }
+
+    @Test
+    public void timesLaterThanTheNextStroke_leaveNoGap() {
+        StrokeStore store = new StrokeStore();
+        // a stroke of an earlier session recorded on a clock that started later
+        timedStroke(store, 90000, 5);
+        timedStroke(store, 10, 5);
+        PlaybackTimeline timeline = new PlaybackTimeline(store, 2);
+
+        assertEquals(40, timeline.getStart(1));
+        assertEquals(80, timeline.getDuration());
+    }
+
+    private static void timedStroke(StrokeStore store, int start, int points) {
+        store.beginStroke(0xFF000000, 4);
+        for (int i = 0; i < points; i++) {
+            store.addPoint(i, i, start + i * 10);
+        }
+    }
+}
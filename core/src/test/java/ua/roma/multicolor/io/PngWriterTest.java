@@ -0,0 +1,47 @@
+package ua.roma.multicolor.io;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class PngWriterTest {
+
+    @Test
+    public void write_readsBackOpaque() throws IOException {
+        checkRoundTrip(0xFF000000);
+    }
+
+    @Test
+    public void write_readsBackWithAlpha() throws IOException {
+        checkRoundTrip(0);
+    }
+
+    private static void checkRoundTrip(int alphaBits) throws IOException {
+        int width = 300, height = 170;
+        int[] pixels = new int[width * height];
+        Random random = new Random(3);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i % 7 == 0 ? random.nextInt() | alphaBits : 0xFFFFFFFF;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngWriter.write(pixels, width, height, out);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        assertEquals(alphaBits == 0, image.getColorModel().hasAlpha());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(pixels[y * width + x], image.getRGB(x, y));
+            }
+        }
+    }
+}
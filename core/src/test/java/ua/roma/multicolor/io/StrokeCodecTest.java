@@ -0,0 +1,148 @@
+package ua.roma.multicolor.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+public class StrokeCodecTest {
+
+    static StrokeStore randomDrawing(int strokes, int pointsPerStroke, long seed) {
+        Random random = new Random(seed);
+        StrokeStore store = new StrokeStore(strokes, strokes * pointsPerStroke);
+        for (int i = 0; i < strokes; i++) {
+            store.beginStroke(0xFF000000 | random.nextInt(0xFFFFFF), 1 + random.nextInt(64));
+            float x = random.nextFloat() * 1080;
+            float y = random.nextFloat() * 1920;
+            for (int j = 0; j < pointsPerStroke; j++) {
+                x += random.nextFloat() * 12 - 6;
+                y += random.nextFloat() * 12 - 6;
+                store.addPoint(x, y);
+            }
+        }
+        return store;
+    }
+
+    @Test
+    public void roundTrip_keepsStrokesWithinQuantization() throws IOException {
+        StrokeStore store = randomDrawing(1000, 150, 1);
+        byte[] data = StrokeCodec.encode(store, 900);
+
+        StrokeStore decoded = new StrokeStore();
+        int position = StrokeCodec.decode(data, 0, data.length, decoded);
+
+        assertEquals(900, position);
+        assertEquals(store.size(), decoded.size());
+        assertEquals(store.getPointCount(), decoded.getPointCount());
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(store.getColor(i), decoded.getColor(i));
+            assertEquals(store.getWidth(i), decoded.getWidth(i));
+            assertEquals(store.getLength(i), decoded.getLength(i));
+        }
+        float tolerance = 0.5f / StrokeCodec.SCALE + 1e-3f;
+        for (int p = 0; p < store.getPointCount(); p++) {
+            assertEquals(store.getX(p), decoded.getX(p), tolerance);
+            assertEquals(store.getY(p), decoded.getY(p), tolerance);
+        }
+        assertTrue("bytes per point " + (double) data.length / store.getPointCount(),
+                data.length < store.getPointCount() * 4);
+    }
+
+    @Test
+    public void roundTrip_keepsEraseAndClearEntries() throws IOException {
+        StrokeStore store = randomDrawing(3, 10, 4);
+        store.beginErase();
+        store.addErased(0);
+        store.addErased(2);
+        store.beginStroke(0xFF00FF00, 3);
+        store.markContinued();
+        store.addPoint(1, 2);
+        store.beginClear();
+        byte[] data = StrokeCodec.encode(store, 5);
+
+        StrokeStore decoded = new StrokeStore();
+        assertEquals(5, StrokeCodec.decode(data, 0, data.length, decoded));
+        assertTrue(decoded.isClear(5));
+        assertEquals(6, decoded.getVisibleStart(6));
+        assertTrue(decoded.isErase(3));
+        assertEquals(2, decoded.getErasedCount(3));
+        assertEquals(2, decoded.getErased(3, 1));
+        assertFalse(decoded.isVisible(0, 5));
+        assertTrue(decoded.isVisible(1, 5));
+        assertTrue(decoded.isContinued(4));
+        assertEquals(store.getLeft(3), decoded.getLeft(3), 0.1f);
+    }
+
+    @Test
+    public void roundTrip_keepsLayers() throws IOException {
+        StrokeStore store = randomDrawing(3, 10, 5);
+        store.setLayer(2);
+        store.beginErase();
+        store.addErased(2);
+        store.setLayer(2);
+        byte[] data = StrokeCodec.encode(store, 4);
+
+        StrokeStore decoded = new StrokeStore();
+        assertEquals(4, StrokeCodec.decode(data, 0, data.length, decoded));
+        assertEquals(3, decoded.getLayerCount());
+        assertEquals(0, decoded.getLayer(1));
+        assertEquals(2, decoded.getLayer(2));
+        assertEquals(2, decoded.getLayer(3));
+        // entries on the first layer cost no extra byte
+        StrokeStore flat = randomDrawing(3, 10, 5);
+        flat.beginErase();
+        flat.addErased(2);
+        assertEquals(data.length - 2, StrokeCodec.encode(flat, 4).length);
+    }
+
+    @Test
+    public void roundTrip_keepsPointTimes() throws IOException {
+        StrokeStore store = randomDrawing(1, 10, 7);
+        store.beginStroke(0xFF00FF00, 6);
+        for (int i = 0; i < 20; i++) {
+            store.addPoint(i * 3, i * 2, 5000 + i * 16);
+        }
+        byte[] data = StrokeCodec.encode(store, 2);
+
+        StrokeStore decoded = new StrokeStore();
+        StrokeCodec.decode(data, 0, data.length, decoded);
+        assertFalse(decoded.isTimed(0));
+        assertTrue(decoded.isTimed(1));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(5000 + i * 16, decoded.getTime(decoded.getOffset(1) + i));
+        }
+    }
+
+    @Test
+    public void decode_rejectsCorruptData() {
+        byte[] data = StrokeCodec.encode(randomDrawing(10, 10, 2), 10);
+        try {
+            StrokeCodec.decode(data, 0, data.length / 2, new StrokeStore());
+            fail("truncated data decoded");
+        } catch (IOException expected) {
+        }
+        data[0] = 0;
+        try {
+            StrokeCodec.decode(data, 0, data.length, new StrokeStore());
+            fail("bad magic decoded");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void roundTrip_largeDrawingInUnderThreeBytesPerPoint() throws IOException {
+        StrokeStore store = randomDrawing(2000, 250, 3);
+        StrokeStore decoded = new StrokeStore();
+        VarintOutput out = new VarintOutput(store.getPointCount() * 3);
+        StrokeCodec.encode(store, store.size(), out);
+        StrokeCodec.decode(out.getBuffer(), 0, out.size(), decoded);
+
+        assertTrue(out.size() + " bytes", out.size() < store.getPointCount() * 3);
+        assertEquals(store.size(), decoded.size());
+        assertEquals(store.getPointCount(), decoded.getPointCount());
+    }
+}
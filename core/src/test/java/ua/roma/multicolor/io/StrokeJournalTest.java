@@ -0,0 +1,194 @@
+package ua.roma.multicolor.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+public class StrokeJournalTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("journal", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void recover_replaysStrokesAndHistory() throws IOException {
+        StrokeStore store = StrokeCodecTest.randomDrawing(5, 20, 1);
+        StrokeJournal journal = new StrokeJournal(file);
+        for (int i = 0; i < 3; i++) {
+            journal.appendStroke(store, i);
+        }
+        journal.appendPosition(2);
+        // a new stroke after an undo drops the redo tail
+        journal.appendStroke(store, 3);
+        journal.appendStroke(store, 4);
+        journal.appendPosition(3);
+        journal.close();
+
+        StrokeStore recovered = new StrokeStore();
+        int position = new StrokeJournal(file).recover(recovered);
+
+        assertEquals(3, position);
+        assertEquals(4, recovered.size());
+        assertEquals(store.getColor(3), recovered.getColor(2));
+        assertEquals(store.getLength(4), recovered.getLength(3));
+        assertEquals(store.getX(store.getOffset(4)), recovered.getX(recovered.getOffset(3)), 0.05f);
+    }
+
+    @Test
+    public void recover_replaysErasesAndTheirUndo() throws IOException {
+        StrokeStore store = StrokeCodecTest.randomDrawing(3, 20, 3);
+        store.beginErase();
+        store.addErased(1);
+        store.beginStroke(store.getColor(1), store.getWidth(1));
+        store.markContinued();
+        store.addPoint(5, 5);
+        store.addPoint(6, 6);
+        StrokeJournal journal = new StrokeJournal(file);
+        for (int i = 0; i < 3; i++) {
+            journal.appendStroke(store, i);
+        }
+        journal.appendErase(store, 3, 5);
+        journal.close();
+
+        StrokeStore recovered = new StrokeStore();
+        assertEquals(5, new StrokeJournal(file).recover(recovered));
+        assertFalse(recovered.isVisible(1, 5));
+        assertTrue(recovered.isContinued(4));
+
+        journal = new StrokeJournal(file);
+        journal.recover(recovered);
+        journal.appendPosition(3);
+        // drawing after undoing the erase drops it and brings the stroke back
+        journal.appendStroke(store, 0);
+        journal.close();
+        assertEquals(4, new StrokeJournal(file).recover(recovered));
+        assertTrue(recovered.isVisible(1, 4));
+        assertFalse(recovered.isErase(3));
+    }
+
+    @Test
+    public void recover_keepsLayers() throws IOException {
+        StrokeStore store = StrokeCodecTest.randomDrawing(2, 20, 5);
+        store.setLayer(1);
+        store.beginErase();
+        store.addErased(1);
+        store.setLayer(1);
+        StrokeJournal journal = new StrokeJournal(file);
+        journal.appendStroke(store, 0);
+        journal.appendStroke(store, 1);
+        journal.appendErase(store, 2, 3);
+        journal.close();
+
+        StrokeStore recovered = new StrokeStore();
+        assertEquals(3, new StrokeJournal(file).recover(recovered));
+        assertEquals(0, recovered.getLayer(0));
+        assertEquals(1, recovered.getLayer(1));
+        assertEquals(1, recovered.getLayer(2));
+        assertEquals(2, recovered.getLayerCount());
+    }
+
+    @Test
+    public void recover_keepsPointTimes() throws IOException {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0xFF000000, 4);
+        for (int i = 0; i < 10; i++) {
+            store.addPoint(i, i, 100 + i * 8);
+        }
+        store.beginStroke(0xFF000000, 4);
+        store.addPoint(0, 0);
+        StrokeJournal journal = new StrokeJournal(file);
+        journal.appendStroke(store, 0);
+        journal.appendStroke(store, 1);
+        journal.close();
+
+        StrokeStore recovered = new StrokeStore();
+        assertEquals(2, new StrokeJournal(file).recover(recovered));
+        assertTrue(recovered.isTimed(0));
+        assertEquals(172, recovered.getTime(recovered.getOffset(0) + 9));
+        assertFalse(recovered.isTimed(1));
+    }
+
+    @Test
+    public void recover_dropsTornTailAndKeepsAppending() throws IOException {
+        StrokeStore store = StrokeCodecTest.randomDrawing(3, 20, 2);
+        StrokeJournal journal = new StrokeJournal(file);
+        journal.appendStroke(store, 0);
+        journal.appendStroke(store, 1);
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        StrokeStore recovered = new StrokeStore();
+        journal = new StrokeJournal(file);
+        assertEquals(1, journal.recover(recovered));
+        journal.appendStroke(store, 2);
+        journal.close();
+
+        assertEquals(2, new StrokeJournal(file).recover(recovered));
+        assertEquals(store.getColor(2), recovered.getColor(1));
+    }
+
+    @Test
+    public void clear_staysUndoableAndCompactionKeepsJournalSmall() throws IOException {
+        StrokeStore store = StrokeCodecTest.randomDrawing(600, 30, 3);
+        StrokeJournal journal = new StrokeJournal(file);
+        for (int i = 0; i < 300; i++) {
+            journal.appendStroke(store, i);
+        }
+        journal.appendClear();
+        for (int i = 300; i < 600; i++) {
+            journal.appendStroke(store, i);
+        }
+        journal.close();
+
+        StrokeStore recovered = new StrokeStore();
+        journal = new StrokeJournal(file);
+        assertEquals(601, journal.recover(recovered));
+        assertTrue(recovered.isClear(300));
+        assertEquals(301, recovered.getVisibleStart(601));
+        assertFalse(recovered.isVisible(299, 601));
+        assertEquals(store.getColor(300), recovered.getColor(301));
+        // entries plus record headers, the journal holds one snapshot and a few records
+        assertTrue("journal was not compacted: " + file.length(),
+                file.length() < StrokeCodec.encode(store, 600).length + 600);
+
+        journal.appendPosition(300);
+        journal.close();
+        assertEquals(300, new StrokeJournal(file).recover(recovered));
+        assertTrue(recovered.isVisible(299, 300));
+    }
+
+    @Test
+    public void recover_largeDrawing() throws IOException {
+        StrokeStore store = StrokeCodecTest.randomDrawing(4000, 250, 4);
+        StrokeJournal journal = new StrokeJournal(file);
+        for (int i = 0; i < store.size(); i++) {
+            journal.appendStroke(store, i);
+        }
+        journal.close();
+
+        StrokeStore recovered = new StrokeStore();
+        int position = new StrokeJournal(file).recover(recovered);
+
+        assertEquals(store.size(), position);
+        assertEquals(store.getPointCount(), recovered.getPointCount());
+    }
+}
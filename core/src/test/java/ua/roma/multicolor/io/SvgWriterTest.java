@@ -0,0 +1,108 @@
+package ua.roma.multicolor.io;
+
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+
+import ua.roma.multicolor.model.Layers;
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+public class SvgWriterTest {
+
+    @Test
+    public void write_emitsOnePathPerStroke() throws IOException {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0xFFFF8000, 12);
+        store.addPoint(1.5f, 2);
+        store.addPoint(-3.25f, 40.006f);
+        store.addPoint(0.04f, 7);
+        store.beginStroke(0x800000FF, 3);
+        store.addPoint(5, 5);
+
+        StringWriter out = new StringWriter();
+        new SvgWriter(out).write(store, 0, store.size(), 100, 50);
+        String svg = out.toString();
+
+        assertTrue(svg, svg.contains("width=\"100\" height=\"50\""));
+        assertTrue(svg, svg.contains(
+                "<path stroke=\"#ff8000\" stroke-width=\"12\" d=\"M1.5 2Q-3.25 40.01 -1.6 23.5L0.04 7\"/>"));
+        assertTrue(svg, svg.contains(
+                "<path stroke=\"#0000ff\" stroke-opacity=\"0.5\" stroke-width=\"3\" d=\"M5 5l0 0\"/>"));
+        assertTrue(svg.endsWith("</svg>\n"));
+    }
+
+    @Test
+    public void write_drawsBackgroundUnderStrokes() throws IOException {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0xFF000000, 2);
+        store.addPoint(1, 1);
+
+        StringWriter out = new StringWriter();
+        SvgWriter writer = new SvgWriter(out);
+        writer.setBackground(0, "data:image/png;base64,AAAA");
+        writer.write(store, 0, store.size(), 100, 50);
+        String svg = out.toString();
+
+        int image = svg.indexOf("<image ");
+        assertTrue(svg, image > svg.indexOf("<rect "));
+        assertTrue(svg, image < svg.indexOf("<path "));
+        assertTrue(svg, svg.contains("width=\"100\" height=\"50\" xlink:href=\"data:image/png;base64,AAAA\"/>"));
+    }
+
+    @Test
+    public void write_groupsLayersBottomUp() throws IOException {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0xFF000000, 2);
+        store.addPoint(1, 1);
+        store.setLayer(2);
+        store.beginStroke(0xFFFF0000, 2);
+        store.addPoint(2, 2);
+        store.setLayer(1);
+        store.beginStroke(0xFF00FF00, 2);
+        store.addPoint(3, 3);
+        Layers layers = new Layers();
+        layers.ensureSize(3);
+        layers.setOpacity(1, 0x80);
+        layers.setVisible(2, false);
+
+        StringWriter out = new StringWriter();
+        SvgWriter writer = new SvgWriter(out);
+        writer.setLayers(layers);
+        writer.write(store, 0, store.size(), 100, 50);
+        String svg = out.toString();
+
+        assertFalse(svg, svg.contains("M1 1"));
+        int group = svg.indexOf("<g opacity=\"0.5\">");
+        assertTrue(svg, group >= 0 && svg.indexOf("M3 3") < group);
+        assertTrue(svg, svg.indexOf("M2 2") > group);
+    }
+
+    @Test
+    public void write_streamsLargeDrawing() throws IOException {
+        StrokeStore store = StrokeCodecTest.randomDrawing(5000, 200, 5);
+        CountingStream counter = new CountingStream();
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(counter, "UTF-8"), 64 * 1024);
+        new SvgWriter(writer).write(store, 0, store.size(), 1080, 1920);
+        assertTrue(counter.count > store.getPointCount());
+    }
+
+    private static class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
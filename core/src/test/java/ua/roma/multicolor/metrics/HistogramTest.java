@@ -0,0 +1,51 @@
+package ua.roma.multicolor.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void record_countsIntoFixedBuckets() {
+        Histogram histogram = new Histogram("latency", 10, 20, 50);
+        for (long value : new long[]{1, 10, 11, 20, 49, 500}) {
+            histogram.record(value);
+        }
+        assertEquals(4, histogram.getBucketCount());
+        assertEquals(2, histogram.getCount(0));
+        assertEquals(2, histogram.getCount(1));
+        assertEquals(1, histogram.getCount(2));
+        assertEquals(1, histogram.getCount(3));
+        assertEquals(6, histogram.getCount());
+        assertEquals(500, histogram.getMax());
+    }
+
+    @Test
+    public void percentile_returnsBucketBound() {
+        Histogram histogram = new Histogram("latency", 10, 20, 50);
+        for (int i = 0; i < 90; i++) {
+            histogram.record(5);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100);
+        }
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(10, histogram.getPercentile(90));
+        assertEquals(100, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void pointRate_isMeasuredPerWindow() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        for (long time = 0; time <= 1000; time += 8) {
+            metrics.onPointsIngested(2, time);
+        }
+        assertEquals(1, metrics.getPointRate().getCount());
+        assertEquals(250, metrics.getPointRate().getMax());
+
+        metrics.onPointsIngested(1, 10000);
+        assertEquals(1, metrics.getPointRate().getCount());
+        assertTrue(metrics.dump().contains("points per second: count=1"));
+    }
+}
@@ -0,0 +1,88 @@
+package ua.roma.multicolor.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PointerStrokesTest {
+
+    @Test
+    public void commit_followsPointerDownOrderWhateverLiftsFirst() {
+        PointerStrokes live = new PointerStrokes();
+        live.setTolerance(0, 0);
+        live.begin(0, 0xFF000000, 4, 0, 0, 0, 0);
+        live.begin(1, 0xFFFF0000, 8, 1, 100, 0, 0);
+        for (int i = 1; i <= 10; i++) {
+            live.add(0, 0, i * 5, i * 8);
+            live.add(1, 100, i * 5, i * 8);
+        }
+        StrokeStore strokes = new StrokeStore();
+
+        live.end(1);
+        assertEquals(0, live.commit(strokes));
+        live.end(0);
+        assertEquals(2, live.commit(strokes));
+
+        assertEquals(2, strokes.size());
+        assertEquals(0xFF000000, strokes.getColor(0));
+        assertEquals(0xFFFF0000, strokes.getColor(1));
+        assertEquals(8, strokes.getWidth(1));
+        assertEquals(1, strokes.getLayer(1));
+        // a straight line keeps its ends only
+        assertEquals(2, strokes.getLength(1));
+        assertTrue(strokes.isTimed(1));
+        assertEquals(80, strokes.getTime(strokes.getOffset(1) + 1));
+        assertEquals(100, strokes.getLeft(1), 0);
+        assertEquals(50, strokes.getBottom(1), 0);
+        assertEquals(0, live.size());
+    }
+
+    @Test
+    public void poll_handsOutFinishedStrokesInPointerDownOrder() {
+        PointerStrokes live = new PointerStrokes();
+        int first = live.begin(0, 0xFF000000, 4, 0, 0, 0, 0);
+        int second = live.begin(1, 0xFF0000FF, 4, 0, 10, 10, 0);
+
+        live.end(1);
+        assertEquals(-1, live.poll());
+        live.end(0);
+        assertEquals(first, live.poll());
+        assertEquals(second, live.poll());
+        assertEquals(-1, live.poll());
+        assertEquals(0, live.size());
+        assertEquals(0xFF0000FF, live.getBuffer(second).getColor(0));
+    }
+
+    @Test
+    public void pointerId_canStartANewStrokeWhileItsLastOneWaits() {
+        PointerStrokes live = new PointerStrokes();
+        live.begin(0, 0xFF000000, 4, 0, 0, 0, 0);
+        int first = live.begin(1, 0xFF000000, 4, 0, 10, 10, 0);
+        live.end(1);
+        int second = live.begin(1, 0xFF0000FF, 4, 0, 20, 20, 0);
+
+        assertTrue(first != second);
+        assertEquals(second, live.find(1));
+        live.cancel();
+        StrokeStore strokes = new StrokeStore();
+        assertEquals(1, live.commit(strokes));
+        assertEquals(10, strokes.getX(strokes.getOffset(0)), 0);
+    }
+
+    @Test
+    public void buffers_areReusedAcrossStrokes() {
+        PointerStrokes live = new PointerStrokes();
+        StrokeStore strokes = new StrokeStore();
+        int slot = live.begin(3, 0xFF000000, 4, 0, 0, 0, 0);
+        StrokeStore buffer = live.getBuffer(slot);
+        live.end(3);
+        live.commit(strokes);
+
+        assertEquals(slot, live.begin(5, 0xFF000000, 4, 0, 0, 0, 0));
+        assertSame(buffer, live.getBuffer(slot));
+        for (int pointer = 0; pointer < PointerStrokes.MAX_POINTERS - 1; pointer++) {
+            assertTrue(live.begin(10 + pointer, 0xFF000000, 4, 0, 0, 0, 0) >= 0);
+        }
+        assertEquals(-1, live.begin(99, 0xFF000000, 4, 0, 0, 0, 0));
+    }
+}
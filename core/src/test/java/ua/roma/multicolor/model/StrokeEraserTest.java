@@ -0,0 +1,153 @@
+package ua.roma.multicolor.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StrokeEraserTest {
+
+    @Test
+    public void erase_splitsStrokeWhereTheEraserCrossesIt() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0xFFFF0000, 4);
+        store.addPoint(0, 100);
+        store.addPoint(200, 100);
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+
+        // vertical eraser of radius 10 through x=100
+        float[] path = {100, 0, 100, 200};
+        assertEquals(3, new StrokeEraser().erase(store, grid, path, 2, 10, false));
+
+        assertTrue(store.isErase(1));
+        assertEquals(1, store.getErasedCount(1));
+        assertEquals(0, store.getErased(1, 0));
+        assertFalse(store.isVisible(0, 4));
+        assertTrue(store.isVisible(0, 1));
+        // the cut is where the eraser edge meets the stroke edge, 10 + 4 / 2 from its center
+        assertEquals(0xFFFF0000, store.getColor(2));
+        assertEquals(88, store.getRight(2), 0.01f);
+        assertEquals(112, store.getLeft(3), 0.01f);
+        assertEquals(200, store.getRight(3), 0);
+        assertTrue(store.isContinued(2) && store.isContinued(3));
+        assertEquals(1, store.getActionStart(3));
+        assertEquals(4, store.getActionEnd(1));
+    }
+
+    @Test
+    public void erase_keepsWhatLiesBetweenTwoCrossingsOfOneSegment() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0, 2);
+        store.addPoint(0, 0);
+        store.addPoint(100, 0);
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+
+        // down through x=20, across out of reach and back up through x=80
+        float[] path = {20, -10, 20, 10, 80, 10, 80, -10};
+        assertEquals(4, new StrokeEraser().erase(store, grid, path, 4, 2, false));
+
+        assertEquals(0, store.getLeft(2), 0);
+        assertEquals(17, store.getRight(2), 0.01f);
+        assertEquals(23, store.getLeft(3), 0.01f);
+        assertEquals(77, store.getRight(3), 0.01f);
+        assertEquals(83, store.getLeft(4), 0.01f);
+        assertEquals(100, store.getRight(4), 0);
+    }
+
+    @Test
+    public void erase_removesDotsAndKeepsStrokesOutOfReach() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0, 2);
+        store.addPoint(50, 50);
+        store.beginStroke(0, 2);
+        store.addPoint(0, 300);
+        store.addPoint(100, 300);
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+        StrokeEraser eraser = new StrokeEraser();
+
+        assertEquals(0, eraser.erase(store, grid, new float[]{50, 200}, 1, 20, false));
+        assertEquals(1, eraser.erase(store, grid, new float[]{55, 55}, 1, 20, false));
+        assertEquals(1, store.getErasedCount(2));
+        assertFalse(store.isVisible(0, 3));
+        assertTrue(store.isVisible(1, 3));
+    }
+
+    @Test
+    public void erase_onlyTouchesStrokesOnItsLayer() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0, 2);
+        store.addPoint(50, 50);
+        store.beginStroke(0, 2);
+        store.addPoint(50, 50);
+        store.setLayer(1);
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+
+        assertEquals(1, new StrokeEraser().erase(store, grid, new float[]{50, 50}, 1, 20, false, 1));
+        assertEquals(1, store.getErasedCount(2));
+        assertEquals(1, store.getErased(2, 0));
+        assertEquals(1, store.getLayer(2));
+        assertTrue(store.isVisible(0, 3));
+    }
+
+    @Test
+    public void truncate_bringsErasedStrokesBack() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0, 2);
+        store.addPoint(0, 0);
+        store.addPoint(100, 0);
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+        new StrokeEraser().erase(store, grid, new float[]{90, -10, 90, 10}, 2, 5, false);
+        StrokeStore copy = store.copyOf(store.size());
+
+        grid.truncate(store, 1);
+        store.truncate(1);
+        assertTrue(store.isVisible(0, 1));
+        new StrokeEraser().erase(store, grid, new float[]{50, -10, 50, 10}, 2, 5, false);
+        assertEquals(1, store.getErasedCount(1));
+        assertEquals(0, store.getErased(1, 0));
+
+        // the copy taken before keeps its own history
+        assertFalse(copy.isVisible(0, copy.size()));
+        assertTrue(copy.getRight(2) < 90);
+    }
+
+    @Test
+    public void erase_gestureAcrossLargeDrawingIsOneAction() {
+        Random random = new Random(3);
+        StrokeStore store = new StrokeStore();
+        for (int s = 0; s < 4000; s++) {
+            store.beginStroke(0xFF000000, 2 + random.nextInt(30));
+            float x = random.nextFloat() * 2000;
+            float y = random.nextFloat() * 2000;
+            for (int p = 0; p < 100; p++) {
+                store.addPoint(x, y);
+                x += random.nextFloat() * 10 - 5;
+                y += random.nextFloat() * 10 - 5;
+            }
+        }
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+        StrokeEraser eraser = new StrokeEraser();
+        float[] path = new float[4];
+
+        int entries = 0;
+        // a gesture across the canvas, delivered in small batches like touch events
+        for (int i = 0; i < 200; i++) {
+            path[0] = i * 10;
+            path[1] = i * 10;
+            path[2] = i * 10 + 10;
+            path[3] = i * 10 + 10;
+            entries += eraser.erase(store, grid, path, 2, 20, entries > 0);
+            grid.addAll(store);
+        }
+        assertTrue(entries > 0);
+        // the whole gesture is one action
+        assertEquals(4000, store.getActionStart(store.size() - 1));
+    }
+}
@@ -0,0 +1,121 @@
+package ua.roma.multicolor.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StrokeGridTest {
+
+    private static final float CANVAS = 8192;
+
+    @Test
+    public void query_matchesLinearScan() {
+        StrokeStore store = randomStrokes(5000, new Random(7));
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+        IntList hits = new IntList();
+        Random random = new Random(11);
+        for (int q = 0; q < 200; q++) {
+            float left = random.nextFloat() * CANVAS;
+            float top = random.nextFloat() * CANVAS;
+            float right = left + random.nextFloat() * 1024;
+            float bottom = top + random.nextFloat() * 1024;
+            int limit = random.nextInt(store.size() + 1);
+            grid.query(store, left, top, right, bottom, limit, hits);
+
+            IntList expected = new IntList();
+            for (int i = 0; i < limit; i++) {
+                if (store.intersects(i, left, top, right, bottom)) {
+                    expected.add(i);
+                }
+            }
+            assertEquals(expected.size(), hits.size());
+            for (int i = 0; i < hits.size(); i++) {
+                assertEquals(expected.get(i), hits.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void query_findsStrokesSpanningTheCanvas() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0, 4);
+        store.addPoint(0, 0);
+        store.addPoint(CANVAS, CANVAS);
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+
+        IntList hits = new IntList();
+        grid.query(store, 4000, 4000, 4010, 4010, 1, hits);
+        assertEquals(1, hits.size());
+        assertEquals(0, hits.get(0));
+    }
+
+    @Test
+    public void truncate_forgetsRemovedStrokes() {
+        StrokeStore store = randomStrokes(1000, new Random(3));
+        StrokeGrid grid = new StrokeGrid();
+        grid.addAll(store);
+        grid.truncate(store, 400);
+        store.truncate(400);
+        assertEquals(400, grid.size());
+
+        IntList hits = new IntList();
+        grid.query(store, 0, 0, CANVAS, CANVAS, Integer.MAX_VALUE, hits);
+        assertEquals(400, hits.size());
+        assertEquals(399, hits.last());
+
+        store.beginStroke(0, 2);
+        store.addPoint(10, 10);
+        grid.add(store, 400);
+        grid.query(store, 0, 0, 20, 20, Integer.MAX_VALUE, hits);
+        assertEquals(400, hits.last());
+    }
+
+    @Test
+    public void query_matchesLinearScanAsTheDrawingGrows() {
+        Random random = new Random(5);
+        StrokeStore store = new StrokeStore();
+        StrokeGrid grid = new StrokeGrid();
+        IntList hits = new IntList();
+        for (int size = 10000; size <= 1000000; size *= 10) {
+            addRandomStrokes(store, size - store.size(), random);
+            grid.addAll(store);
+
+            for (int q = 0; q < 10; q++) {
+                float x = (q * 797) % (int) CANVAS;
+                float y = (q * 463) % (int) CANVAS;
+                grid.query(store, x, y, x + 256, y + 256, size, hits);
+                int scanned = 0;
+                for (int i = 0; i < size; i++) {
+                    if (store.intersects(i, x, y, x + 256, y + 256)) {
+                        scanned++;
+                    }
+                }
+                assertEquals(scanned, hits.size());
+            }
+        }
+    }
+
+    private static StrokeStore randomStrokes(int count, Random random) {
+        StrokeStore store = new StrokeStore();
+        addRandomStrokes(store, count, random);
+        return store;
+    }
+
+    private static void addRandomStrokes(StrokeStore store, int count, Random random) {
+        for (int s = 0; s < count; s++) {
+            store.beginStroke(0xFF000000, 1 + random.nextInt(20));
+            float x = random.nextFloat() * CANVAS;
+            float y = random.nextFloat() * CANVAS;
+            int points = 2 + random.nextInt(6);
+            for (int p = 0; p < points; p++) {
+                store.addPoint(x, y);
+                x += random.nextFloat() * 40 - 20;
+                y += random.nextFloat() * 40 - 20;
+            }
+        }
+    }
+}
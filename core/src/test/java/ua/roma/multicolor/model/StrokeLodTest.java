@@ -0,0 +1,149 @@
+package ua.roma.multicolor.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class StrokeLodTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void levels_shrinkAndStayWithinTolerance() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0xFF000000, 4);
+        for (int i = 0; i < 2000; i++) {
+            store.addPoint(i * 0.5f, 300 + 200 * (float) Math.sin(i / 40.0));
+        }
+        StrokeLod lod = new StrokeLod(store, DIRECT, DIRECT);
+        lod.submit(0);
+
+        int previous = store.getLength(0);
+        for (int level = 1; level <= StrokeLod.LEVELS; level++) {
+            int length = lod.getLength(0, level);
+            assertTrue("level " + level + " keeps " + length, length > 1 && length <= previous);
+            float deviation = maxDeviation(store, lod, level);
+            assertTrue("level " + level + " deviates " + deviation,
+                    deviation <= StrokeLod.TOLERANCE * (1 << level));
+            previous = length;
+        }
+        assertTrue(previous * 20 < store.getLength(0));
+        assertEquals(0, lod.getLength(0, 0));
+    }
+
+    @Test
+    public void pendingLevels_followDroppedStrokesAndIgnoreTruncatedOnes() {
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 3; i++) {
+            store.beginStroke(0xFF000000, 2);
+            for (int j = 0; j < 50; j++) {
+                store.addPoint(j, i * 100 + (j % 2));
+            }
+        }
+        final List<Runnable> results = new ArrayList<>();
+        StrokeLod lod = new StrokeLod(store, DIRECT, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                results.add(command);
+            }
+        });
+        lod.submit(1);
+        lod.submit(2);
+        store.dropFirst(1);
+        lod.dropFirst(1);
+        for (Runnable result : results) {
+            result.run();
+        }
+        // stroke 1 became stroke 0
+        assertTrue(lod.getLength(0, 1) > 0);
+        int offset = lod.getOffset(0, 1);
+        assertEquals(100, lod.getCoords()[offset * 2 + 1], 1);
+
+        results.clear();
+        lod.submit(1);
+        lod.truncate(1);
+        store.truncate(1);
+        for (Runnable result : results) {
+            result.run();
+        }
+        assertEquals(0, lod.getLength(1, 1));
+    }
+
+    @Test
+    public void truncate_keepsPendingLevelsOfTheStrokesBelow() {
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 2; i++) {
+            store.beginStroke(0xFF000000, 2);
+            for (int j = 0; j < 50; j++) {
+                store.addPoint(j, i * 100 + (j % 2));
+            }
+        }
+        final List<Runnable> results = new ArrayList<>();
+        StrokeLod lod = new StrokeLod(store, DIRECT, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                results.add(command);
+            }
+        });
+        lod.submit(0);
+        lod.submit(1);
+        lod.truncate(1);
+        store.truncate(1);
+        for (Runnable result : results) {
+            result.run();
+        }
+        assertTrue(lod.getLength(0, 1) > 0);
+        assertEquals(0, lod.getLength(1, 1));
+    }
+
+    @Test
+    public void levelFor_picksTheCoarsestLevelThatStillFits() {
+        assertEquals(0, StrokeLod.levelFor(2));
+        assertEquals(0, StrokeLod.levelFor(1));
+        assertEquals(0, StrokeLod.levelFor(0.6f));
+        assertEquals(1, StrokeLod.levelFor(0.5f));
+        assertEquals(1, StrokeLod.levelFor(0.3f));
+        assertEquals(2, StrokeLod.levelFor(0.25f));
+        assertEquals(StrokeLod.LEVELS, StrokeLod.levelFor(0.001f));
+    }
+
+    /**
+     * Largest distance from a point of the stroke to the polyline of its level.
+     */
+    private static float maxDeviation(StrokeStore store, StrokeLod lod, int level) {
+        float[] coords = lod.getCoords();
+        int first = lod.getOffset(0, level);
+        int length = lod.getLength(0, level);
+        float worst = 0;
+        for (int p = 0; p < store.getLength(0); p++) {
+            float x = store.getX(p);
+            float y = store.getY(p);
+            float best = Float.MAX_VALUE;
+            for (int i = first; i < first + length - 1; i++) {
+                best = Math.min(best, distance(x, y, coords[i * 2], coords[i * 2 + 1],
+                        coords[i * 2 + 2], coords[i * 2 + 3]));
+            }
+            worst = Math.max(worst, best);
+        }
+        return worst;
+    }
+
+    private static float distance(float x, float y, float ax, float ay, float bx, float by) {
+        float sx = bx - ax;
+        float sy = by - ay;
+        float length2 = sx * sx + sy * sy;
+        float t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * sx + (y - ay) * sy) / length2));
+        float dx = ax + sx * t - x;
+        float dy = ay + sy * t - y;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
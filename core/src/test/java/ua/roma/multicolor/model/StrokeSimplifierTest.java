@@ -0,0 +1,143 @@
+package ua.roma.multicolor.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class StrokeSimplifierTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void simplify_reducesStraightLineToItsEnds() {
+        float[] points = new float[200];
+        for (int i = 0; i < 100; i++) {
+            points[i * 2] = i * 3;
+            points[i * 2 + 1] = i * 2;
+        }
+        assertEquals(2, new StrokeSimplifier().simplify(points, 100, 0.5f));
+        assertEquals(0, points[0], 0);
+        assertEquals(297, points[2], 0);
+        assertEquals(198, points[3], 0);
+    }
+
+    @Test
+    public void simplify_staysWithinTolerance() {
+        int count = 2000;
+        float[] original = new float[count * 2];
+        for (int i = 0; i < count; i++) {
+            double angle = i * Math.PI * 4 / count;
+            original[i * 2] = (float) (300 + (100 + i / 20f) * Math.cos(angle));
+            original[i * 2 + 1] = (float) (300 + (100 + i / 20f) * Math.sin(angle));
+        }
+        float[] points = original.clone();
+        int kept = new StrokeSimplifier().simplify(points, count, 0.5f);
+
+        assertTrue("kept " + kept, kept * 10 < count);
+        for (int i = 0; i < count; i++) {
+            float best = Float.MAX_VALUE;
+            for (int p = 0; p < kept - 1; p++) {
+                best = Math.min(best, distance(original[i * 2], original[i * 2 + 1], points, p));
+            }
+            assertTrue("point " + i + " off by " + best, best <= 0.5f + 1e-3f);
+        }
+    }
+
+    @Test
+    public void background_shrinksSessionAndCompacts() {
+        StrokeStore store = new StrokeStore();
+        BackgroundSimplifier simplifier = new BackgroundSimplifier(store, DIRECT, DIRECT);
+        int raw = 0;
+        for (int s = 0; s < 500; s++) {
+            store.beginStroke(0xFF000000, 6);
+            // a finger sampled every pixel along a gentle curve
+            for (int i = 0; i < 400; i++) {
+                store.addPoint(s + i, (float) (s * 3 + 40 * Math.sin(i / 60.0)));
+                raw++;
+            }
+            simplifier.submit(s);
+        }
+        assertTrue(store.getPointCount() * 5 < raw);
+        assertTrue(store.getSlack() <= store.getPointCount());
+        assertEquals(raw - store.getPointCount(), simplifier.getPointsSaved());
+        // strokes keep their ends
+        assertEquals(499, store.getX(store.getOffset(499)), 0);
+        assertEquals(499 + 399, store.getX(store.getOffset(499) + store.getLength(499) - 1), 0);
+    }
+
+    @Test
+    public void background_ignoresStrokesDroppedMeanwhile() {
+        StrokeStore store = new StrokeStore();
+        final List<Runnable> queued = new ArrayList<>();
+        BackgroundSimplifier simplifier = new BackgroundSimplifier(store, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        }, DIRECT);
+        store.beginStroke(0, 2);
+        for (int i = 0; i < 50; i++) {
+            store.addPoint(i, 0);
+        }
+        simplifier.submit(0);
+        // undone and replaced by a stroke with as many points
+        simplifier.invalidate();
+        store.truncate(0);
+        store.beginStroke(0, 2);
+        for (int i = 0; i < 50; i++) {
+            store.addPoint(i, i % 2 * 10);
+        }
+        queued.get(0).run();
+        assertEquals(50, store.getLength(0));
+    }
+
+    @Test
+    public void background_truncateKeepsResultsOfTheStrokesBelow() {
+        StrokeStore store = new StrokeStore();
+        final List<Runnable> queued = new ArrayList<>();
+        BackgroundSimplifier simplifier = new BackgroundSimplifier(store, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        }, DIRECT);
+        for (int s = 0; s < 2; s++) {
+            store.beginStroke(0, 2);
+            for (int i = 0; i < 50; i++) {
+                store.addPoint(i, s * 100);
+            }
+            simplifier.submit(s);
+        }
+        // the second one undone and replaced by a stroke with as many points
+        simplifier.truncate(1);
+        store.truncate(1);
+        store.beginStroke(0, 2);
+        for (int i = 0; i < 50; i++) {
+            store.addPoint(i, i % 2 * 10);
+        }
+        for (Runnable task : queued) {
+            task.run();
+        }
+        assertEquals(2, store.getLength(0));
+        assertEquals(50, store.getLength(1));
+    }
+
+    private static float distance(float x, float y, float[] points, int segment) {
+        float ax = points[segment * 2], ay = points[segment * 2 + 1];
+        float sx = points[segment * 2 + 2] - ax, sy = points[segment * 2 + 3] - ay;
+        float length2 = sx * sx + sy * sy;
+        float t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * sx + (y - ay) * sy) / length2));
+        float dx = ax + sx * t - x;
+        float dy = ay + sy * t - y;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
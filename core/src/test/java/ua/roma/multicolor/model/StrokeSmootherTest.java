@@ -0,0 +1,159 @@
+package ua.roma.multicolor.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StrokeSmootherTest {
+
+    /**
+     * Touch trace of a finger moving along {@code shape} at a varying speed, sampled at
+     * 120 Hz and reported in whole pixels like most touch screens do.
+     */
+    static float[] trace(Shape shape, float length, long seed) {
+        Random random = new Random(seed);
+        float[] samples = new float[4096];
+        int count = 0;
+        float t = 0;
+        while (t <= length && count < samples.length) {
+            samples[count++] = Math.round(shape.x(t) + random.nextGaussian() * 0.3);
+            samples[count++] = Math.round(shape.y(t) + random.nextGaussian() * 0.3);
+            // 0.5 to 8 px per sample, slower in the middle of the stroke
+            t += 0.5f + 7.5f * Math.abs((float) Math.cos(Math.PI * t / length));
+        }
+        return java.util.Arrays.copyOf(samples, count);
+    }
+
+    interface Shape {
+        float x(float t);
+
+        float y(float t);
+    }
+
+    private static final Shape LINE = new Shape() {
+        public float x(float t) {
+            return 100 + t * 0.8f;
+        }
+
+        public float y(float t) {
+            return 200 + t * 0.6f;
+        }
+    };
+
+    private static final Shape CIRCLE = new Shape() {
+        public float x(float t) {
+            return 400 + 150 * (float) Math.cos(t / 150);
+        }
+
+        public float y(float t) {
+            return 400 + 150 * (float) Math.sin(t / 150);
+        }
+    };
+
+    private static final Shape ZIGZAG = new Shape() {
+        public float x(float t) {
+            return 50 + t * 0.5f;
+        }
+
+        public float y(float t) {
+            float phase = t % 200;
+            return 300 + (phase < 100 ? phase : 200 - phase) * 0.9f;
+        }
+    };
+
+    private static final Shape HANDWRITING = new Shape() {
+        public float x(float t) {
+            return 100 + t * 0.3f + 40 * (float) Math.sin(t / 25);
+        }
+
+        public float y(float t) {
+            return 500 + 60 * (float) Math.sin(t / 17) * (float) Math.cos(t / 61);
+        }
+    };
+
+    @Test
+    public void traces_keepShapeWithFewerPoints() {
+        check("line", trace(LINE, 1200, 1), 10);
+        check("circle", trace(CIRCLE, 940, 2), 3);
+        check("zigzag", trace(ZIGZAG, 1000, 3), 3);
+        check("handwriting", trace(HANDWRITING, 1500, 4), 2);
+    }
+
+    @Test
+    public void zeroTolerance_keepsEverySample() {
+        float[] samples = trace(HANDWRITING, 600, 5);
+        StrokeSmoother smoother = new StrokeSmoother();
+        smoother.setTolerance(0, 0);
+        StrokeStore store = smooth(smoother, samples);
+        // repeated samples only, which a zero length segment cannot turn at
+        assertTrue(store.getLength(0) > samples.length / 2 * 9 / 10);
+    }
+
+    @Test
+    public void finish_endsWhereTheFingerLifted() {
+        StrokeStore store = new StrokeStore();
+        StrokeSmoother smoother = new StrokeSmoother();
+        store.beginStroke(0, 4);
+        store.addPoint(0, 0);
+        smoother.begin(0, 0);
+        smoother.add(store, 10, 0);
+        smoother.add(store, 11, 0);
+        assertEquals(10, store.getX(store.getPointCount() - 1), 0);
+        smoother.finish(store);
+        assertEquals(11, store.getX(store.getPointCount() - 1), 0);
+        assertEquals(2, store.getLength(0));
+    }
+
+    private static void check(String name, float[] samples, int minReduction) {
+        StrokeStore store = smooth(new StrokeSmoother(), samples);
+        int raw = samples.length / 2;
+        int kept = store.getLength(0);
+        float deviation = maxDeviation(samples, store);
+        assertTrue(name + " kept " + kept + " of " + raw, kept * minReduction <= raw);
+        assertTrue(name + " deviates " + deviation, deviation <= StrokeSmoother.DEFAULT_MIN_DISTANCE);
+        // the stroke ends at the last sample
+        assertEquals(samples[samples.length - 2], store.getX(kept - 1), 0);
+        assertEquals(samples[samples.length - 1], store.getY(kept - 1), 0);
+    }
+
+    private static StrokeStore smooth(StrokeSmoother smoother, float[] samples) {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0xFF000000, 4);
+        store.addPoint(samples[0], samples[1]);
+        smoother.begin(samples[0], samples[1]);
+        for (int i = 2; i < samples.length; i += 2) {
+            smoother.add(store, samples[i], samples[i + 1]);
+        }
+        smoother.finish(store);
+        return store;
+    }
+
+    /**
+     * Largest distance from a raw sample to the kept polyline.
+     */
+    private static float maxDeviation(float[] samples, StrokeStore store) {
+        float worst = 0;
+        int length = store.getLength(0);
+        for (int i = 0; i < samples.length; i += 2) {
+            float best = Float.MAX_VALUE;
+            for (int p = 0; p < length - 1; p++) {
+                best = Math.min(best, distance(samples[i], samples[i + 1], store.getX(p),
+                        store.getY(p), store.getX(p + 1), store.getY(p + 1)));
+            }
+            worst = Math.max(worst, best);
+        }
+        return worst;
+    }
+
+    private static float distance(float x, float y, float ax, float ay, float bx, float by) {
+        float sx = bx - ax;
+        float sy = by - ay;
+        float length2 = sx * sx + sy * sy;
+        float t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * sx + (y - ay) * sy) / length2));
+        float dx = ax + sx * t - x;
+        float dy = ay + sy * t - y;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
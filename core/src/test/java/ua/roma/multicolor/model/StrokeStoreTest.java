@@ -0,0 +1,249 @@
+package ua.roma.multicolor.model;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StrokeStoreTest {
+
+    private static final int STROKES = 10000;
+    private static final int POINTS_PER_STROKE = 50;
+
+    @Test
+    public void addPoint_packsStrokesContiguously() {
+        StrokeStore store = new StrokeStore(1, 1);
+        store.beginStroke(0xFFFF0000, 5);
+        store.addPoint(1, 2);
+        store.addPoint(3, 4);
+        store.beginStroke(0xFF00FF00, 7);
+        store.addPoint(5, 6);
+
+        assertEquals(2, store.size());
+        assertEquals(3, store.getPointCount());
+        assertEquals(0xFF00FF00, store.getColor(1));
+        assertEquals(7, store.getWidth(1));
+        assertEquals(2, store.getOffset(1));
+        assertEquals(1, store.getLength(1));
+        assertEquals(3, store.getX(1), 0);
+        assertEquals(6, store.getY(2), 0);
+    }
+
+    @Test
+    public void truncate_dropsTrailingStrokesAndTheirPoints() {
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 3; i++) {
+            store.beginStroke(i, i);
+            store.addPoint(i, i);
+            store.addPoint(i, i);
+        }
+        store.truncate(1);
+        assertEquals(1, store.size());
+        assertEquals(2, store.getPointCount());
+
+        store.beginStroke(9, 9);
+        store.addPoint(9, 9);
+        assertEquals(2, store.getOffset(1));
+        assertEquals(9, store.getX(2), 0);
+    }
+
+    @Test
+    public void replacePoints_leavesSlackUntilCompacted() {
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 3; i++) {
+            store.beginStroke(i, 1);
+            for (int j = 0; j < 4; j++) {
+                store.addPoint(i * 10 + j, j);
+            }
+        }
+        store.replacePoints(0, new float[]{0, 0, 3, 3}, 2);
+        assertEquals(10, store.getPointCount());
+        assertEquals(2, store.getSlack());
+        assertEquals(4, store.getOffset(1));
+
+        StrokeStore copy = store.copyOf(2);
+        assertEquals(0, copy.getSlack());
+        assertEquals(2, copy.getOffset(1));
+        assertEquals(10, copy.getX(2), 0);
+
+        store.compact();
+        assertEquals(0, store.getSlack());
+        assertEquals(2, store.getOffset(1));
+        assertEquals(6, store.getOffset(2));
+        assertEquals(20, store.getX(6), 0);
+        assertEquals(3, store.getX(1), 0);
+        store.beginStroke(9, 9);
+        store.addPoint(1, 1);
+        assertEquals(10, store.getOffset(3));
+    }
+
+    @Test
+    public void times_moveWithTheirPoints() {
+        StrokeStore store = new StrokeStore(2, 4);
+        for (int i = 0; i < 3; i++) {
+            store.beginStroke(i, 1);
+            for (int j = 0; j < 4; j++) {
+                store.addPoint(i * 10 + j, j, i * 100 + j);
+            }
+        }
+        store.replacePoints(0, new float[]{0, 0, 3, 3}, new int[]{0, 3}, 2);
+        store.replacePoints(1, new float[]{10, 0, 13, 3}, 2);
+        assertTrue(store.isTimed(0));
+        assertFalse(store.isTimed(1));
+
+        store.compact();
+        assertEquals(3, store.getTime(1));
+        assertEquals(203, store.getTime(store.getOffset(2) + 3));
+        assertEquals(203, store.copyOf(3).getTime(7));
+        store.dropFirst(2);
+        assertEquals(200, store.getTime(0));
+        // untimed points of a timed stroke take the time before them
+        store.addPoint(1, 1);
+        assertEquals(203, store.getTime(4));
+    }
+
+    @Test
+    public void clear_hidesEarlierEntriesUntilUndone() {
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 3; i++) {
+            store.beginStroke(i, 1);
+            store.addPoint(i, 0);
+        }
+        store.beginErase();
+        store.addErased(1);
+        assertEquals(4, store.beginClear());
+        store.beginStroke(5, 1);
+        store.addPoint(5, 0);
+
+        assertTrue(store.isClear(4));
+        assertTrue(store.isErase(4));
+        assertEquals(0, store.getVisibleStart(4));
+        assertEquals(5, store.getVisibleStart(6));
+        assertTrue(store.isVisible(0, 4));
+        assertFalse(store.isVisible(1, 4));
+        assertFalse(store.isVisible(0, 5));
+        assertTrue(store.isVisible(5, 6));
+        assertEquals(5, store.copyOf(6).getVisibleStart(6));
+        // a clear erases nothing an older stroke needs, the horizon passes it
+        assertEquals(5, store.findHorizon(5));
+
+        store.truncate(4);
+        store.beginStroke(6, 1);
+        assertEquals(0, store.getVisibleStart(5));
+        assertTrue(store.isVisible(0, 5));
+    }
+
+    @Test
+    public void findHorizon_waitsForErasesOfOlderStrokes() {
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 4; i++) {
+            store.beginStroke(i, 1);
+            store.addPoint(i, 0);
+        }
+        store.beginErase();
+        store.addErased(1);
+        store.beginStroke(5, 1);
+        store.addPoint(5, 0);
+        store.markContinued();
+
+        // the erase at 4 removes stroke 1, and the piece at 5 belongs to the erase
+        assertEquals(1, store.findHorizon(3));
+        assertEquals(1, store.findHorizon(5));
+        assertEquals(6, store.findHorizon(6));
+        try {
+            store.dropFirst(3);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void dropFirst_renumbersEntriesAndErases() {
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 4; i++) {
+            store.beginStroke(i, 1);
+            store.addPoint(i, 0);
+            store.addPoint(i, 1);
+        }
+        store.replacePoints(2, new float[]{7, 7}, 1);
+        store.beginErase();
+        store.addErased(2);
+        store.beginStroke(5, 1);
+        store.addPoint(5, 0);
+
+        store.dropFirst(1);
+        assertEquals(5, store.size());
+        assertEquals(0, store.getSlack());
+        assertEquals(6, store.getPointCount());
+        assertEquals(2, store.getColor(1));
+        assertEquals(2, store.getOffset(1));
+        assertEquals(3, store.getOffset(2));
+        assertEquals(7, store.getX(2), 0);
+        assertEquals(1, store.getErased(3, 0));
+        assertFalse(store.isVisible(1, 5));
+        assertTrue(store.isVisible(1, 3));
+        assertEquals(5, store.getX(store.getOffset(4)), 0);
+
+        store.beginErase();
+        store.addErased(0);
+        assertEquals(0, store.getErased(5, 0));
+        assertEquals(6, store.findHorizon(6));
+        assertEquals(0, store.findHorizon(5));
+    }
+
+    @Test
+    public void footprint_againstBoxedLists() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long start = bean.getThreadAllocatedBytes(threadId);
+        List<float[]> pathList = new ArrayList<>();
+        List<Integer> colorList = new ArrayList<>();
+        List<Integer> strokeWidthList = new ArrayList<>();
+        for (int i = 0; i < STROKES; i++) {
+            // one object per stroke stands in for the Path, whose points live in native memory
+            pathList.add(new float[0]);
+            colorList.add(0xFF000000 | i);
+            strokeWidthList.add(1000 + i);
+        }
+        long lists = bean.getThreadAllocatedBytes(threadId) - start;
+
+        // the store also keeps the bounds of every stroke for the tiles and the eraser, for
+        // which the lists would have needed a RectF each from Path.computeBounds
+        start = bean.getThreadAllocatedBytes(threadId);
+        List<float[]> boundsList = new ArrayList<>();
+        for (int i = 0; i < STROKES; i++) {
+            boundsList.add(new float[4]);
+        }
+        long rects = bean.getThreadAllocatedBytes(threadId) - start;
+
+        start = bean.getThreadAllocatedBytes(threadId);
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < STROKES; i++) {
+            store.beginStroke(0xFF000000 | i, 1000 + i);
+        }
+        long packed = bean.getThreadAllocatedBytes(threadId) - start;
+
+        start = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < STROKES; i++) {
+            for (int j = 0; j < POINTS_PER_STROKE; j++) {
+                store.addPoint(i, j);
+            }
+        }
+        long points = bean.getThreadAllocatedBytes(threadId) - start;
+
+        // no per-stroke objects, and layers, erasures and clears cost nothing until used
+        assertTrue(packed < lists + rects);
+        // points cost 8 bytes each plus the same doubling garbage
+        assertTrue(points < STROKES * POINTS_PER_STROKE * 8 * 3);
+        assertEquals(STROKES * POINTS_PER_STROKE, store.getPointCount());
+        assertEquals(STROKES, pathList.size());
+        assertEquals(STROKES, colorList.size());
+        assertEquals(STROKES, strokeWidthList.size());
+        assertEquals(STROKES, boundsList.size());
+    }
+}
@@ -0,0 +1,138 @@
+package ua.roma.multicolor.raster;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+public class SoftwareRasterizerTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int RED = 0xFFFF0000;
+
+    @Test
+    public void render_coversStrokeWithRoundCapsAndSoftEdges() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(RED, 11);
+        store.addPoint(20, 30);
+        store.addPoint(60, 30);
+        int[] pixels = new SoftwareRasterizer(new ForkJoinPool(2), 16)
+                .render(store, 1, 1, 100, 60, WHITE);
+
+        assertEquals(RED, pixels[30 * 100 + 40]);
+        assertEquals(RED, pixels[26 * 100 + 40]);
+        assertEquals(WHITE, pixels[36 * 100 + 40]);
+        // the cap reaches 5.5 px past the end, the square corner beyond it does not
+        assertEquals(RED, pixels[30 * 100 + 63]);
+        assertEquals(WHITE, pixels[25 * 100 + 65]);
+        assertEquals(WHITE, pixels[30 * 100 + 67]);
+        // the edge pixel row is half covered
+        int edge = pixels[35 * 100 + 40];
+        assertEquals(0xFF, edge >> 16 & 0xFF);
+        assertTrue(Integer.toHexString(edge), (edge & 0xFF) > 0x60 && (edge & 0xFF) < 0xA0);
+    }
+
+    @Test
+    public void render_skipsErasedStrokesAndScales() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(RED, 4);
+        store.addPoint(10, 10);
+        store.addPoint(40, 10);
+        store.beginStroke(0xFF0000FF, 4);
+        store.addPoint(10, 30);
+        store.addPoint(40, 30);
+        store.beginErase();
+        store.addErased(0);
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(new ForkJoinPool(1));
+
+        int[] pixels = rasterizer.render(store, 3, 2, 100, 100, WHITE);
+        assertEquals(WHITE, pixels[20 * 100 + 50]);
+        assertEquals(0xFF0000FF, pixels[60 * 100 + 50]);
+        // before the erase the stroke shows
+        pixels = rasterizer.render(store, 2, 2, 100, 100, WHITE);
+        assertEquals(RED, pixels[20 * 100 + 50]);
+    }
+
+    @Test
+    public void render_blendsTranslucentStrokeOnce() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0x80000000, 20);
+        // a sharp turn overlaps the stroke with itself
+        store.addPoint(10, 50);
+        store.addPoint(80, 50);
+        store.addPoint(12, 54);
+        int[] pixels = new SoftwareRasterizer(new ForkJoinPool(1))
+                .render(store, 1, 1, 100, 100, WHITE);
+        int gray = pixels[52 * 100 + 50] & 0xFF;
+        assertEquals(0x7F, gray, 1);
+    }
+
+    @Test
+    public void render_tilesMatchSingleTile() {
+        Random random = new Random(7);
+        StrokeStore store = new StrokeStore();
+        for (int i = 0; i < 200; i++) {
+            store.beginStroke(random.nextInt(), 1 + random.nextInt(30));
+            float x = random.nextFloat() * 300;
+            float y = random.nextFloat() * 200;
+            for (int j = 0; j < 20; j++) {
+                x += random.nextFloat() * 30 - 15;
+                y += random.nextFloat() * 30 - 15;
+                store.addPoint(x, y);
+            }
+        }
+        int[] single = new SoftwareRasterizer(new ForkJoinPool(1), 512)
+                .render(store, store.size(), 1, 300, 200, 0);
+        int[] tiled = new SoftwareRasterizer(new ForkJoinPool(4), 16)
+                .render(store, store.size(), 1, 300, 200, 0);
+        assertTrue(Arrays.equals(single, tiled));
+    }
+
+    @Test
+    public void render_matchesDistanceToSegment() {
+        Random random = new Random(11);
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(new ForkJoinPool(1), 32);
+        for (int i = 0; i < 50; i++) {
+            StrokeStore store = new StrokeStore();
+            float width = 1 + random.nextInt(40);
+            store.beginStroke(0xFF000000, (int) width);
+            float ax = random.nextFloat() * 100, ay = random.nextFloat() * 100;
+            float bx = random.nextFloat() * 100, by = random.nextFloat() * 100;
+            store.addPoint(ax, ay);
+            store.addPoint(bx, by);
+            int[] pixels = rasterizer.render(store, 1, 1, 100, 100, WHITE);
+            for (int y = 0; y < 100; y++) {
+                for (int x = 0; x < 100; x++) {
+                    float coverage = width / 2 + 0.5f
+                            - distance(x + 0.5f, y + 0.5f, ax, ay, bx, by);
+                    int expected = coverage <= 0 ? 0 : coverage >= 1 ? 255
+                            : (int) (coverage * 255 + 0.5f);
+                    assertEquals(x + "," + y, 255 - expected, pixels[y * 100 + x] & 0xFF, 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void blend_composesOntoTransparent() {
+        assertEquals(0x80FF0000, SoftwareRasterizer.blend(0, 0x80FF0000, 255));
+        int over = SoftwareRasterizer.blend(0x800000FF, 0x80FF0000, 255);
+        assertEquals(0xC0, over >>> 24, 1);
+        assertEquals(0xAA, over >> 16 & 0xFF, 1);
+        assertEquals(0x55, over & 0xFF, 1);
+    }
+
+    private static float distance(float x, float y, float ax, float ay, float bx, float by) {
+        float sx = bx - ax, sy = by - ay;
+        float length2 = sx * sx + sy * sy;
+        float t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * sx + (y - ay) * sy) / length2));
+        float dx = ax + sx * t - x;
+        float dy = ay + sy * t - y;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,231 @@
+package ua.roma.multicolor.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ua.roma.multicolor.io.VarintOutput;
+import ua.roma.multicolor.model.StrokeStore;
+
+import static org.junit.Assert.*;
+
+public class StrokeSyncTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private SyncRelay relay;
+    private Peer a, b;
+
+    @Before
+    public void setUp() throws Exception {
+        relay = new SyncRelay();
+        a = new Peer(relay.getPort());
+        b = new Peer(relay.getPort());
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (relay.getPeerCount() < 2) {
+            assertTrue("peers did not connect", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        a.client.close();
+        b.client.close();
+        relay.close();
+    }
+
+    @Test
+    public void stroke_streamsToTheOtherPeerWhileDrawn() throws Exception {
+        StrokeStore buffer = new StrokeStore(1, 256);
+        buffer.beginStroke(0xFF00FF00, 6);
+        buffer.setLayer(1);
+        buffer.addPoint(10.03f, 20, 1000);
+        int stroke = a.sync.begin(buffer);
+        // input arrives in batches of five samples, each sent as one message
+        for (int i = 1; i <= 200; i++) {
+            buffer.addPoint(10 + i * 1.5f, 20 + (float) Math.sin(i / 10.0) * 30, 1000 + i * 8);
+            if (i % 5 == 0) {
+                a.sync.update(stroke, buffer);
+                a.send();
+            }
+        }
+        b.drainPoints(200);
+        assertEquals(1, b.sync.size());
+        StrokeStore live = b.sync.getBuffer(0);
+        // the tail may still move and waits for the next batch
+        assertEquals(200, live.getLength(0));
+        assertEquals(1, live.getLayer(0));
+
+        a.sync.end(stroke, buffer);
+        a.send();
+        // finished here, but not committed before the relay ordered it
+        assertEquals(1, a.sync.size());
+        assertEquals(0, a.strokes.size());
+        b.drain(1, 0);
+        a.drain(1, 0);
+
+        for (StrokeStore strokes : new StrokeStore[]{a.strokes, b.strokes}) {
+            assertEquals(201, strokes.getLength(0));
+            assertEquals(0xFF00FF00, strokes.getColor(0));
+            assertEquals(6, strokes.getWidth(0));
+            assertEquals(1, strokes.getLayer(0));
+            for (int i = 0; i < 201; i++) {
+                int point = strokes.getOffset(0) + i;
+                assertEquals(buffer.getX(i), strokes.getX(point), 0.5f / SyncProtocol.SCALE);
+                assertEquals(buffer.getY(i), strokes.getY(point), 0.5f / SyncProtocol.SCALE);
+                assertEquals(buffer.getTime(i), strokes.getTime(point));
+            }
+        }
+        float bytesPerPoint = a.sync.getBytesSent() / (float) a.sync.getPointsSent();
+        assertEquals(201, b.sync.getPointsReceived());
+        assertTrue(bytesPerPoint + " bytes per point", bytesPerPoint < 4);
+        assertEquals(1, a.sync.getRoundTrip().getCount());
+    }
+
+    @Test
+    public void concurrentStrokes_commitInTheSameOrderOnEveryPeer() throws Exception {
+        StrokeStore bufferA = new StrokeStore(1, 16);
+        StrokeStore bufferB = new StrokeStore(1, 16);
+        for (int i = 0; i < 20; i++) {
+            draw(a, bufferA, 0xFFAA0000 | i);
+            draw(b, bufferB, 0xFF00BB00 | i);
+        }
+        a.drain(40, 0);
+        b.drain(40, 0);
+
+        for (int i = 0; i < 40; i++) {
+            assertEquals(a.strokes.getColor(i), b.strokes.getColor(i));
+        }
+    }
+
+    @Test
+    public void leavingPeer_hasItsUnfinishedStrokesCancelled() throws Exception {
+        StrokeStore buffer = new StrokeStore(1, 16);
+        buffer.beginStroke(0xFF000000, 4);
+        buffer.addPoint(0, 0, 0);
+        a.sync.begin(buffer);
+        a.send();
+        b.drain(0, 1);
+
+        a.client.close();
+        b.drain(0, 0);
+    }
+
+    @Test
+    public void begin_onALayerBeyondTheLimitIsRejected() throws IOException {
+        StrokeSync sync = new StrokeSync();
+        sync.setLayerLimit(4);
+        for (byte[] frame : new byte[][]{begin(4, 4), begin(300, 4), begin(-1, 4), begin(0, -1),
+                begin(0, SyncProtocol.MAX_WIDTH + 1)}) {
+            try {
+                sync.receive(frame);
+                fail("accepted a malformed begin");
+            } catch (IOException expected) {
+            }
+        }
+        assertEquals(0, sync.size());
+        sync.receive(begin(3, 4));
+        assertEquals(3, sync.getBuffer(0).getLayer(0));
+    }
+
+    /**
+     * A begin from peer 2 as the relay forwards it.
+     */
+    private static byte[] begin(int layer, int width) {
+        VarintOutput frame = new VarintOutput(32);
+        frame.writeVarint(2);
+        frame.writeByte(SyncProtocol.BEGIN);
+        frame.writeVarint(0);
+        frame.writeInt(0xFF000000);
+        frame.writeVarint(width);
+        frame.writeVarint(layer);
+        frame.writeSignedVarint(0);
+        frame.writeSignedVarint(0);
+        frame.writeSignedVarint(0);
+        return frame.toByteArray();
+    }
+
+    private static void draw(Peer peer, StrokeStore buffer, int color) {
+        buffer.clear();
+        buffer.beginStroke(color, 4);
+        buffer.addPoint(0, 0, 0);
+        int stroke = peer.sync.begin(buffer);
+        buffer.addPoint(5, 5, 10);
+        buffer.addPoint(10, 0, 20);
+        peer.sync.end(stroke, buffer);
+        peer.send();
+    }
+
+    /**
+     * A peer whose owner thread is the test thread, running what the client posts while
+     * it drains.
+     */
+    private static class Peer {
+        final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+        final StrokeSync sync = new StrokeSync();
+        final StrokeStore strokes = new StrokeStore();
+        final SyncClient client;
+
+        Peer(int port) {
+            client = new SyncClient(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    tasks.add(command);
+                }
+            }, new SyncClient.Listener() {
+                @Override
+                public void onFrame(byte[] payload) {
+                    try {
+                        sync.receive(payload);
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                    sync.commit(strokes);
+                }
+
+                @Override
+                public void onDisconnected(IOException e) {
+                    throw new AssertionError("disconnected: " + e);
+                }
+            });
+            client.connect("127.0.0.1", port);
+        }
+
+        void send() {
+            client.send(sync.takeOutgoing());
+        }
+
+        /**
+         * Runs posted frames until {@code committed} strokes are in and {@code shown} are
+         * being drawn.
+         */
+        void drain(int committed, int shown) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (strokes.size() != committed || sync.size() != shown) {
+                runNext(deadline);
+            }
+        }
+
+        void drainPoints(int points) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (sync.getPointsReceived() < points) {
+                runNext(deadline);
+            }
+        }
+
+        private void runNext(long deadline) throws InterruptedException {
+            Runnable task = tasks.poll(deadline - System.currentTimeMillis(),
+                    TimeUnit.MILLISECONDS);
+            assertTrue("timed out with " + strokes.size() + " strokes, " + sync.size()
+                    + " shown and " + sync.getPointsReceived() + " points", task != null);
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package ua.roma.multicolor.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ua.roma.multicolor.io.VarintInput;
+import ua.roma.multicolor.io.VarintOutput;
+
+/**
+ * Stand-in relay server for co-drawing, for tests and sessions on one machine or network.
+ * It is not part of the app. Run on its own from the core test classes it listens on every
+ * interface, on port 7070 unless told otherwise, until accepting fails:
+ * <pre>
+ * java ua.roma.multicolor.sync.SyncRelay [port]
+ * </pre>
+ * Every peer is served by a thread of its own, and a message is written to every peer
+ * before the next one is forwarded, which gives all of them the same order of ends, see
+ * {@link SyncProtocol}. A peer that leaves has its unfinished strokes cancelled. A peer
+ * that stops reading holds up everyone, which a real server would have to avoid.
+ */
+public class SyncRelay implements Closeable {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private final List<Peer> peers = new ArrayList<>();
+    private final VarintOutput header = new VarintOutput(8);
+    private int nextPeer = 1;
+    private volatile IOException error;
+
+    /**
+     * Listens on a free port of the loopback interface.
+     */
+    public SyncRelay() throws IOException {
+        this(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    public SyncRelay(InetAddress address, int port) throws IOException {
+        server = new ServerSocket(port, 50, address);
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "sync-relay");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        SyncRelay relay = new SyncRelay(null, port);
+        relay.acceptor.join();
+        if (relay.error != null) {
+            throw relay.error;
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * The error that stopped the relay accepting peers, null if there was none.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Peers connected now.
+     */
+    public synchronized int getPeerCount() {
+        return peers.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        List<Peer> left;
+        synchronized (this) {
+            left = new ArrayList<>(peers);
+        }
+        for (Peer peer : left) {
+            peer.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                final Peer peer;
+                synchronized (this) {
+                    peer = new Peer(nextPeer++, socket);
+                    peers.add(peer);
+                    send(peer, peer.id, new byte[]{SyncProtocol.WELCOME}, 1);
+                }
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(peer);
+                    }
+                }, "sync-relay-" + peer.id);
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (SocketException e) {
+            // closed
+        } catch (IOException e) {
+            error = e;
+            try {
+                close();
+            } catch (IOException ignored) {
+                // the error above is the one to report
+            }
+        }
+    }
+
+    private void serve(Peer peer) {
+        try {
+            InputStream in = new BufferedInputStream(peer.socket.getInputStream(), BUFFER_SIZE);
+            for (byte[] message = SyncProtocol.readFrame(in); message != null;
+                 message = SyncProtocol.readFrame(in)) {
+                if (message.length < 2) {
+                    throw new IOException("empty message");
+                }
+                int type = message[0];
+                int stroke = new VarintInput(message, 1, message.length - 1).readVarint();
+                if (type == SyncProtocol.BEGIN) {
+                    peer.open.add(stroke);
+                } else if (type == SyncProtocol.END || type == SyncProtocol.CANCEL) {
+                    peer.finish(stroke);
+                }
+                forward(peer, message, message.length,
+                        type == SyncProtocol.END || type == SyncProtocol.CANCEL);
+            }
+        } catch (IOException e) {
+            // the peer is gone either way
+        }
+        leave(peer);
+    }
+
+    private synchronized void leave(Peer peer) {
+        if (!peers.remove(peer)) {
+            return;
+        }
+        peer.close();
+        VarintOutput cancel = new VarintOutput(8);
+        for (int i = 0; i < peer.open.size(); i++) {
+            cancel.reset();
+            cancel.writeByte(SyncProtocol.CANCEL);
+            cancel.writeVarint(peer.open.get(i));
+            forward(peer, cancel.getBuffer(), cancel.size(), false);
+        }
+    }
+
+    private synchronized void forward(Peer from, byte[] message, int length, boolean echo) {
+        for (int i = 0; i < peers.size(); i++) {
+            Peer peer = peers.get(i);
+            if (peer != from || echo) {
+                send(peer, from.id, message, length);
+            }
+        }
+    }
+
+    private void send(Peer to, int from, byte[] message, int length) {
+        header.reset();
+        header.writeVarint(from);
+        try {
+            SyncProtocol.writeFrame(to.out, header.getBuffer(), header.size(), message, 0,
+                    length);
+            to.out.flush();
+        } catch (IOException e) {
+            // its reader notices and lets it leave
+            to.close();
+        }
+    }
+
+    private static class Peer {
+        final int id;
+        final Socket socket;
+        final OutputStream out;
+        // strokes begun and not finished yet, cancelled for the others if it leaves
+        final List<Integer> open = new ArrayList<>();
+
+        Peer(int id, Socket socket) throws IOException {
+            this.id = id;
+            this.socket = socket;
+            out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        }
+
+        void finish(int stroke) {
+            open.remove(Integer.valueOf(stroke));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+        }
+    }
+}